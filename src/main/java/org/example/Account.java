@@ -0,0 +1,171 @@
+package org.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Balances are in minor units (e.g. cents), so every amount is exact
+class Account {
+  private static final VarHandle COMMITTED_TRANSFERS = counter("committedTransfers");
+  private static final VarHandle INSUFFICIENT_FUNDS_TRANSFERS = counter("insufficientFundsTransfers");
+  private static final VarHandle ROLLED_BACK_TRANSFERS = counter("rolledBackTransfers");
+  private static final VarHandle CONTENDED_LOCKS = counter("contendedLocks");
+  private static final VarHandle LOCK_WAIT_NANOS = counter("lockWaitNanos");
+
+  private final String accountId;
+  // Single-account operations update these with CAS and need no lock
+  private final AtomicLong balance;
+  // Sum of the reservations below; that much of the balance cannot be spent by anyone else
+  private final AtomicLong reservedAmount = new AtomicLong();
+  // Debits held by prepared 2PC transactions, by transaction id
+  private final Map<Long, Long> reservations = new ConcurrentHashMap<>();
+  // Only serializes multi-account operations such as a transfer
+  private final Lock lock = new ReentrantLock();
+  // Metrics, all written with the lock held and read without it. Outcomes are of the transfers
+  // this account sent, and lock waits only count times the lock was busy when asked for. The lock
+  // holder is the only writer, so an increment is a release store rather than a full fence.
+  private volatile long committedTransfers;
+  private volatile long insufficientFundsTransfers;
+  private volatile long rolledBackTransfers;
+  private volatile long contendedLocks;
+  private volatile long lockWaitNanos;
+
+  public Account(String accountId, long balance) {
+    this.accountId = accountId;
+    this.balance = new AtomicLong(balance);
+  }
+
+  void lock() {
+    lock(false);
+  }
+
+  // Held by BankTransferSystem across a whole transfer. Only a lock that was busy is timed, and only when asked.
+  void lock(boolean timed) {
+    if (!timed) {
+      lock.lock();
+    } else if (!lock.tryLock()) {
+      long start = System.nanoTime();
+      lock.lock();
+      LOCK_WAIT_NANOS.setRelease(this, lockWaitNanos + System.nanoTime() - start);
+      CONTENDED_LOCKS.setRelease(this, contendedLocks + 1);
+    }
+  }
+
+  void unlock() {
+    lock.unlock();
+  }
+
+  // Prepare phase for debit - take the amount if it is not reserved by a pending transaction
+  public boolean prepareDebit(long amount) {
+    long current;
+    do {
+      current = balance.get();
+      if (current - reservedAmount.get() < amount) return false;
+    } while (!balance.compareAndSet(current, current - amount));
+    return true;
+  }
+
+  // Commit phase for credit - add amount to balance
+  public boolean commitCredit(long amount) {
+    balance.addAndGet(amount);
+    return true;
+  }
+
+  // Rollback phase for debit - give back what prepareDebit took
+  public void rollbackDebit(long amount) {
+    balance.addAndGet(amount);
+  }
+
+  // Holds amount for the transaction without changing the balance; caller holds the lock
+  boolean reserve(long transactionId, long amount) {
+    if (balance.get() - reservedAmount.get() < amount || reservations.putIfAbsent(transactionId, amount) != null) {
+      return false;
+    }
+    reservedAmount.addAndGet(amount);
+    return true;
+  }
+
+  // Debits the transaction's reservation; caller holds the lock
+  void commitReservation(long transactionId) {
+    Long amount = reservations.remove(transactionId);
+    if (amount != null) {
+      balance.addAndGet(-amount);
+      reservedAmount.addAndGet(-amount);
+    }
+  }
+
+  // Drops the transaction's reservation, if it has one
+  void releaseReservation(long transactionId) {
+    Long amount = reservations.remove(transactionId);
+    if (amount != null) {
+      reservedAmount.addAndGet(-amount);
+    }
+  }
+
+  private static VarHandle counter(String name) {
+    try {
+      return MethodHandles.lookup().findVarHandle(Account.class, name, long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Account{" + "accountId='" + accountId + '\'' + ", balance=" + balance + ", reserved=" + reservedAmount + '}';
+  }
+
+  public long getBalance() {
+    return balance.get();
+  }
+
+  String getAccountId() {
+    return accountId;
+  }
+
+  // Caller holds the lock
+  void recordOutcome(TransferResult result) {
+    if (result == TransferResult.COMMITTED) {
+      COMMITTED_TRANSFERS.setRelease(this, committedTransfers + 1);
+    } else if (result == TransferResult.INSUFFICIENT_FUNDS) {
+      INSUFFICIENT_FUNDS_TRANSFERS.setRelease(this, insufficientFundsTransfers + 1);
+    } else {
+      ROLLED_BACK_TRANSFERS.setRelease(this, rolledBackTransfers + 1);
+    }
+  }
+
+  long getOutcomeCount(TransferResult result) {
+    switch (result) {
+      case COMMITTED:
+        return committedTransfers;
+      case INSUFFICIENT_FUNDS:
+        return insufficientFundsTransfers;
+      case ROLLED_BACK:
+        return rolledBackTransfers;
+      default:
+        return 0;
+    }
+  }
+
+  // All outcomes so far, read without the lock
+  long getSentTransferCount() {
+    return committedTransfers + insufficientFundsTransfers + rolledBackTransfers;
+  }
+
+  long getContendedLockCount() {
+    return contendedLocks;
+  }
+
+  long getLockWaitNanos() {
+    return lockWaitNanos;
+  }
+
+  // Balance minus what prepared transactions hold
+  public long getAvailableBalance() {
+    return balance.get() - reservedAmount.get();
+  }
+}
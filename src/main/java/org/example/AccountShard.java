@@ -0,0 +1,160 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process {@link Participant} owning a set of accounts. A prepared debit is held as a
+ * reservation on its account, so other transactions cannot spend it, and account locks are only
+ * held for the duration of one call. An optional simulated latency is added to every call, to
+ * stand in for a remote shard in tests and benchmarks.
+ */
+public class AccountShard implements Participant {
+
+  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+  // Accounts touched by each prepared transaction, sorted for locking, with their deltas
+  private final ConcurrentMap<Long, Prepared> prepared = new ConcurrentHashMap<>();
+  private final long latencyNanos;
+  private final LongAdder roundTrips = new LongAdder();
+
+  public AccountShard(Map<String, Long> balances) {
+    this(balances, Duration.ZERO);
+  }
+
+  public AccountShard(Map<String, Long> balances, Duration latency) {
+    balances.forEach((accountId, balance) -> accounts.put(accountId, new Account(accountId, balance)));
+    this.latencyNanos = latency.toNanos();
+  }
+
+  @Override
+  public boolean hasAccount(String accountId) {
+    return accounts.containsKey(accountId);
+  }
+
+  @Override
+  public boolean prepare(long transactionId, Map<String, Long> deltas) {
+    roundTrip();
+    String[] accountIds = deltas.keySet().toArray(new String[0]);
+    Arrays.sort(accountIds);
+    Account[] locked = new Account[accountIds.length];
+    long[] amounts = new long[accountIds.length];
+    for (int i = 0; i < accountIds.length; i++) {
+      locked[i] = accounts.get(accountIds[i]);
+      amounts[i] = deltas.get(accountIds[i]);
+      if (locked[i] == null) {
+        return false;
+      }
+    }
+    Prepared transaction = new Prepared(locked, amounts);
+    if (prepared.putIfAbsent(transactionId, transaction) != null) {
+      return false; // Transaction ids are never reused
+    }
+
+    lockAll(locked);
+    try {
+      for (int i = 0; i < locked.length; i++) {
+        if (amounts[i] < 0 && !locked[i].reserve(transactionId, -amounts[i])) {
+          for (int j = 0; j < i; j++) {
+            locked[j].releaseReservation(transactionId);
+          }
+          prepared.remove(transactionId);
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      unlockAll(locked);
+    }
+  }
+
+  @Override
+  public void commit(long transactionId) {
+    roundTrip();
+    Prepared transaction = prepared.remove(transactionId);
+    if (transaction == null) {
+      return;
+    }
+    lockAll(transaction.accounts);
+    try {
+      for (int i = 0; i < transaction.accounts.length; i++) {
+        if (transaction.amounts[i] < 0) {
+          transaction.accounts[i].commitReservation(transactionId);
+        } else {
+          transaction.accounts[i].commitCredit(transaction.amounts[i]);
+        }
+      }
+    } finally {
+      unlockAll(transaction.accounts);
+    }
+  }
+
+  @Override
+  public void abort(long transactionId) {
+    roundTrip();
+    Prepared transaction = prepared.remove(transactionId);
+    if (transaction != null) {
+      for (Account account : transaction.accounts) {
+        account.releaseReservation(transactionId);
+      }
+    }
+  }
+
+  @Override
+  public Set<Long> inDoubt() {
+    roundTrip();
+    return new HashSet<>(prepared.keySet());
+  }
+
+  public Account getAccount(String accountId) {
+    return accounts.get(accountId);
+  }
+
+  // Sum of committed balances; reservations are still part of them
+  public long getTotalBalance() {
+    long total = 0;
+    for (Account account : accounts.values()) {
+      total += account.getBalance();
+    }
+    return total;
+  }
+
+  public long getRoundTripCount() {
+    return roundTrips.sum();
+  }
+
+  private void roundTrip() {
+    roundTrips.increment();
+    if (latencyNanos > 0) {
+      LockSupport.parkNanos(latencyNanos);
+    }
+  }
+
+  private static void lockAll(Account[] accounts) {
+    for (Account account : accounts) {
+      account.lock();
+    }
+  }
+
+  private static void unlockAll(Account[] accounts) {
+    for (int i = accounts.length - 1; i >= 0; i--) {
+      accounts[i].unlock();
+    }
+  }
+
+  private static class Prepared {
+    final Account[] accounts;
+    final long[] amounts;
+
+    Prepared(Account[] accounts, long[] amounts) {
+      this.accounts = accounts;
+      this.amounts = amounts;
+    }
+  }
+}
@@ -1,55 +1,394 @@
 package org.example;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 public class ApiRateLimiter {
-  private static final int MAX_CALLS_PER_MINUTE = 15;
-  private static final long ONE_MINUTE = 60 * 1000L;
-  private static final long PENALTY_TIME = 2 * ONE_MINUTE; // 1 minute wait + 1 penalty minute
 
-  // Map to store call timestamps for each client
-  private Map<String, ClientInfo> clientMap;
+  // How client state is guarded against concurrent callers
+  public enum Mode {
+    // One monitor for all clients (the original behaviour)
+    SYNCHRONIZED,
+    // One monitor per client, unrelated clients never contend
+    CONCURRENT
+  }
+
+  // What happens when a new client arrives while maxClients clients are tracked
+  public enum OverflowPolicy {
+    // Reject calls from new clients until idle ones expire
+    REJECT_NEW_CLIENTS,
+    // Make room by dropping the least recently seen of a few sampled clients, idle or not
+    EVICT_LEAST_RECENT
+  }
+
+  // Entries looked at by the incremental sweep for each new client
+  private static final int SWEEP_BATCH = 4;
+  // Entries sampled when choosing a victim for EVICT_LEAST_RECENT
+  private static final int EVICTION_SAMPLE = 8;
+
+  // Map to store rate limit state for each client
+  private final ConcurrentMap<String, ClientInfo> clientMap;
+  // Non-null only in SYNCHRONIZED mode
+  private final Object globalLock;
+  private final RateLimitAlgorithm<Object> algorithm;
+  private final Function<String, RateLimitTier> tierResolver;
+  private final int maxClients;
+  private final OverflowPolicy overflowPolicy;
+  private final TimeSource timeSource;
+  private final long reconcileIntervalNanos;
+  // When the algorithm's deferred work is next due, claimed by the first caller to find it passed
+  private final AtomicLong nextReconcile;
+
+  private final AtomicInteger liveClients = new AtomicInteger();
+  private final LongAdder evictedClients = new LongAdder();
+  // Resumable position of the incremental sweep, advanced only by the thread holding sweepLock
+  private final ReentrantLock sweepLock = new ReentrantLock();
+  private Iterator<Map.Entry<String, ClientInfo>> sweepCursor;
 
   public ApiRateLimiter() {
-    clientMap = new HashMap<>();
+    this(Mode.CONCURRENT);
+  }
+
+  public ApiRateLimiter(Mode mode) {
+    this(builder().mode(mode));
   }
 
-  public synchronized String safeCall(String clientId, String input) {
-    long currentTime = System.currentTimeMillis();
-    ClientInfo clientInfo = clientMap.getOrDefault(clientId, new ClientInfo());
+  @SuppressWarnings("unchecked")
+  ApiRateLimiter(Builder builder) {
+    clientMap = new ConcurrentHashMap<>();
+    globalLock = builder.mode == Mode.SYNCHRONIZED ? new Object() : null;
+    algorithm = (RateLimitAlgorithm<Object>) builder.algorithm;
+    tierResolver = builder.tierResolver;
+    maxClients = builder.maxClients;
+    overflowPolicy = builder.overflowPolicy;
+    timeSource = builder.timeSource;
+    reconcileIntervalNanos = builder.reconcileInterval.toNanos();
+    nextReconcile = new AtomicLong(timeSource.nanoTime() + reconcileIntervalNanos);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public String safeCall(String clientId, String input) {
+    RateLimitResult result = tryAcquire(clientId, 1);
+    if (!result.isAllowed()) {
+      throw rejection(clientId, result);
+    }
+    return call_me(input); // Make the API call safely, outside the limiter lock
+  }
+
+  // Admits the call and runs call_me on the executor; a rejected call fails the future with IllegalStateException
+  public CompletableFuture<String> callAsync(String clientId, String input, Executor executor) {
+    RateLimitResult result = tryAcquire(clientId, 1);
+    if (!result.isAllowed()) {
+      return CompletableFuture.failedFuture(rejection(clientId, result));
+    }
+    return CompletableFuture.supplyAsync(() -> call_me(input), executor);
+  }
+
+  // Same as above on the common ForkJoinPool
+  public CompletableFuture<String> callAsync(String clientId, String input) {
+    RateLimitResult result = tryAcquire(clientId, 1);
+    if (!result.isAllowed()) {
+      return CompletableFuture.failedFuture(rejection(clientId, result));
+    }
+    return CompletableFuture.supplyAsync(() -> call_me(input));
+  }
+
+  // Takes permits for the client without calling the API, with the same penalty rules as safeCall
+  public RateLimitResult tryAcquire(String clientId, int permits) {
+    if (permits <= 0) {
+      throw new IllegalArgumentException("Permits must be positive.");
+    }
+    RateLimitResult result = acquire(clientId, permits);
+    reconcileIfDue(timeSource.nanoTime());
+    return result;
+  }
+
+  private RateLimitResult acquire(String clientId, int permits) {
+    while (true) {
+      ClientInfo clientInfo = clientInfo(clientId);
+      if (clientInfo == null) {
+        return RateLimitResult.TOO_MANY_CLIENTS;
+      }
+      algorithm.prepare(clientInfo.state, clientInfo.tier, timeSource.nanoTime(), permits);
+      synchronized (lockFor(clientInfo)) {
+        if (!clientInfo.evicted) { // Otherwise it was dropped while we waited, look it up again
+          return admit(clientInfo, timeSource.nanoTime(), permits);
+        }
+      }
+    }
+  }
+
+  /**
+   * Admits clientIds[i] for permits[i] into results[i] for every i, reading the clock once. In
+   * SYNCHRONIZED mode the global lock is taken once for the whole batch.
+   */
+  public void tryAcquireAll(String[] clientIds, int[] permits, RateLimitResult[] results) {
+    if (clientIds.length != permits.length || clientIds.length != results.length) {
+      throw new IllegalArgumentException("Batch arrays must have the same length.");
+    }
+    ClientInfo[] clientInfos = new ClientInfo[clientIds.length];
+    for (int i = 0; i < clientIds.length; i++) {
+      if (permits[i] <= 0) {
+        throw new IllegalArgumentException("Permits must be positive.");
+      }
+      // Looked up before locking, the sweep done for new clients must not run under the global lock
+      clientInfos[i] = clientInfo(clientIds[i]);
+    }
+    long currentTime = timeSource.nanoTime();
+    for (int i = 0; i < clientInfos.length; i++) {
+      if (clientInfos[i] != null) {
+        algorithm.prepare(clientInfos[i].state, clientInfos[i].tier, currentTime, permits[i]);
+      }
+    }
+
+    if (globalLock != null) {
+      synchronized (globalLock) {
+        admitAll(clientInfos, permits, results);
+      }
+    } else {
+      admitAll(clientInfos, permits, results);
+    }
+
+    for (int i = 0; i < clientIds.length; i++) {
+      if (results[i] == null) {
+        results[i] = acquire(clientIds[i], permits[i]); // Evicted after lookup
+      }
+    }
+    reconcileIfDue(timeSource.nanoTime());
+  }
+
+  private void admitAll(ClientInfo[] clientInfos, int[] permits, RateLimitResult[] results) {
+    long currentTime = timeSource.nanoTime();
+    for (int i = 0; i < clientInfos.length; i++) {
+      ClientInfo clientInfo = clientInfos[i];
+      if (clientInfo == null) {
+        results[i] = RateLimitResult.TOO_MANY_CLIENTS;
+        continue;
+      }
+      synchronized (lockFor(clientInfo)) {
+        results[i] = clientInfo.evicted ? null : admit(clientInfo, currentTime, permits[i]);
+      }
+    }
+  }
+
+  // Time left on the client's penalty, zero if it is not penalized
+  public Duration getPenaltyRemaining(String clientId) {
+    ClientInfo clientInfo = clientMap.get(clientId);
+    if (clientInfo == null) {
+      return Duration.ZERO;
+    }
+    synchronized (lockFor(clientInfo)) {
+      long remaining = clientInfo.penaltyEndTime - timeSource.nanoTime();
+      return clientInfo.isPenalized && remaining > 0 ? Duration.ofNanos(remaining) : Duration.ZERO;
+    }
+  }
+
+  private IllegalStateException rejection(String clientId, RateLimitResult result) {
+    switch (result) {
+      case PENALIZED:
+        return new IllegalStateException("API is under penalty for client " + clientId + ". Please try after " + getPenaltyRemaining(clientId).toSeconds() + " seconds.");
+      case RATE_LIMITED:
+        return new IllegalStateException("Rate limit exceeded for client " + clientId + ". Penalty applied for " + penaltyText(tierOf(clientId)) + ".");
+      default:
+        return new IllegalStateException("Too many active clients, cannot track client " + clientId + ". Please try again later.");
+    }
+  }
+
+  // The tier the client was tracked with, or the one it would get now that it has been dropped
+  private RateLimitTier tierOf(String clientId) {
+    ClientInfo clientInfo = clientMap.get(clientId);
+    return clientInfo != null ? clientInfo.tier : tierResolver.apply(clientId);
+  }
+
+  // The default tier keeps its original wording: its 2 minutes are 1 minute of waiting plus 1 penalty minute
+  private static String penaltyText(RateLimitTier tier) {
+    return tier.equals(RateLimitTier.DEFAULT) ? "1 minute" : describe(tier.penalty());
+  }
+
+  // Whole minutes as "1 minute" or "2 minutes", anything else in seconds or milliseconds
+  private static String describe(Duration duration) {
+    if (!duration.isZero() && duration.toSecondsPart() == 0 && duration.toNanosPart() == 0) {
+      return plural(duration.toMinutes(), "minute");
+    }
+    if (duration.toSeconds() == 0) {
+      return plural(duration.toMillis(), "millisecond");
+    }
+    return plural(duration.toSeconds(), "second");
+  }
+
+  private static String plural(long count, String unit) {
+    return count + " " + unit + (count == 1 ? "" : "s");
+  }
+
+  public int getLiveClientCount() {
+    return liveClients.get();
+  }
+
+  // Total number of clients dropped so far; sample it periodically for an eviction rate
+  public long getEvictedClientCount() {
+    return evictedClients.sum();
+  }
+
+  // Drops every client whose state has gone back to fresh, reconciles the algorithm and returns how many were dropped
+  public int evictIdleClients() {
+    long currentTime = timeSource.nanoTime();
+    int evicted = 0;
+    for (ClientInfo clientInfo : clientMap.values()) {
+      if (tryEvict(clientInfo, currentTime, false)) {
+        evicted++;
+      }
+    }
+    algorithm.reconcile();
+    return evicted;
+  }
+
+  // Runs the algorithm's deferred work once per reconcile interval, outside every lock, on whichever caller finds it due
+  private void reconcileIfDue(long currentTime) {
+    long due = nextReconcile.get();
+    if (currentTime - due >= 0 && nextReconcile.compareAndSet(due, currentTime + reconcileIntervalNanos)) {
+      algorithm.reconcile();
+    }
+  }
+
+  // Runs evictIdleClients in the background, in addition to the sweep done as new clients arrive
+  public ScheduledFuture<?> scheduleEviction(ScheduledExecutorService executor, Duration period) {
+    long periodMillis = period.toMillis();
+    return executor.scheduleAtFixedRate(this::evictIdleClients, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private Object lockFor(ClientInfo clientInfo) {
+    return globalLock != null ? globalLock : clientInfo;
+  }
+
+  // Null when the client is new and there is no room to track it
+  private ClientInfo clientInfo(String clientId) {
+    ClientInfo clientInfo = clientMap.get(clientId);
+    if (clientInfo != null) {
+      return clientInfo;
+    }
+
+    long currentTime = timeSource.nanoTime();
+    // New clients pay for expiring old ones, so the map stays bounded without a background thread
+    sweep(currentTime, SWEEP_BATCH, false);
+    if (!reserveSlot(currentTime)) {
+      return null;
+    }
+
+    RateLimitTier tier = tierResolver.apply(clientId);
+    clientInfo = new ClientInfo(clientId, tier, algorithm.newState(clientId, tier, currentTime), currentTime);
+    ClientInfo existing = clientMap.putIfAbsent(clientId, clientInfo);
+    if (existing != null) {
+      liveClients.decrementAndGet(); // Another thread added it first
+      return existing;
+    }
+    return clientInfo;
+  }
+
+  private boolean reserveSlot(long currentTime) {
+    while (liveClients.incrementAndGet() > maxClients) {
+      liveClients.decrementAndGet();
+      if (overflowPolicy == OverflowPolicy.REJECT_NEW_CLIENTS || !sweep(currentTime, EVICTION_SAMPLE, true)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Looks at the next few entries, evicting idle ones; with forceOne also drops the least recent of them
+  private boolean sweep(long currentTime, int entries, boolean forceOne) {
+    if (forceOne) {
+      sweepLock.lock();
+    } else if (!sweepLock.tryLock()) {
+      return false; // Someone else is sweeping
+    }
+    try {
+      boolean evicted = false;
+      ClientInfo leastRecent = null;
+      for (int i = 0; i < entries; i++) {
+        if (sweepCursor == null || !sweepCursor.hasNext()) {
+          sweepCursor = clientMap.entrySet().iterator();
+          if (!sweepCursor.hasNext()) {
+            break;
+          }
+        }
+        ClientInfo clientInfo = sweepCursor.next().getValue();
+        if (tryEvict(clientInfo, currentTime, false)) {
+          evicted = true;
+        } else if (leastRecent == null || clientInfo.lastAccessTime < leastRecent.lastAccessTime) {
+          leastRecent = clientInfo;
+        }
+      }
+      if (forceOne && !evicted && leastRecent != null) {
+        evicted = tryEvict(leastRecent, currentTime, true);
+      }
+      return evicted;
+    } finally {
+      sweepLock.unlock();
+    }
+  }
+
+  private boolean tryEvict(ClientInfo clientInfo, long currentTime, boolean evenIfActive) {
+    synchronized (lockFor(clientInfo)) {
+      if (clientInfo.evicted || !(evenIfActive || isIdle(clientInfo, currentTime))) {
+        return false;
+      }
+      clientInfo.evicted = true;
+      clientMap.remove(clientInfo.clientId, clientInfo);
+      algorithm.evict(clientInfo.state, clientInfo.tier);
+    }
+    liveClients.decrementAndGet();
+    evictedClients.increment();
+    return true;
+  }
+
+  private boolean isIdle(ClientInfo clientInfo, long currentTime) {
+    if (clientInfo.isPenalized && currentTime - clientInfo.penaltyEndTime < 0) {
+      return false;
+    }
+    return currentTime - clientInfo.lastAccessTime > algorithm.idleTimeout(clientInfo.tier);
+  }
+
+  // Must be called while holding the lock that guards clientInfo
+  private RateLimitResult admit(ClientInfo clientInfo, long currentTime, int permits) {
+    clientInfo.lastAccessTime = currentTime;
 
     if (clientInfo.isPenalized) {
-      if (currentTime < clientInfo.penaltyEndTime) {
-        throw new IllegalStateException("API is under penalty for client " + clientId + ". Please try after " + (clientInfo.penaltyEndTime - currentTime) / 1000 + " seconds.");
+      if (currentTime - clientInfo.penaltyEndTime < 0) {
+        return RateLimitResult.PENALIZED;
       } else {
         clientInfo.isPenalized = false; // Penalty period has ended
       }
     }
 
-    // Remove timestamps older than one minute
-    while (!clientInfo.callTimestamps.isEmpty() && currentTime - clientInfo.callTimestamps.peek() > ONE_MINUTE) {
-      clientInfo.callTimestamps.poll();
-    }
-
     // Check if we can make a call
-    if (clientInfo.callTimestamps.size() < MAX_CALLS_PER_MINUTE) {
-      clientInfo.callTimestamps.add(currentTime);
-      clientMap.put(clientId, clientInfo); // Update the client state
-      return call_me(input); // Make the API call safely
-    } else {
+    if (!algorithm.tryAcquire(clientInfo.state, clientInfo.tier, currentTime, permits)) {
       // Trigger penalty
-      triggerPenalty(clientInfo);
-      throw new IllegalStateException("Rate limit exceeded for client " + clientId + ". Penalty applied for 1 minute.");
+      triggerPenalty(clientInfo, currentTime);
+      return RateLimitResult.RATE_LIMITED;
     }
+    return RateLimitResult.ALLOWED;
   }
 
-  private void triggerPenalty(ClientInfo clientInfo) {
+  private void triggerPenalty(ClientInfo clientInfo, long currentTime) {
     clientInfo.isPenalized = true;
-    clientInfo.penaltyEndTime = System.currentTimeMillis() + PENALTY_TIME;
-    clientInfo.callTimestamps.clear(); // Clear calls to reset after penalty
+    clientInfo.penaltyEndTime = currentTime + clientInfo.tier.penalty().toNanos();
+    algorithm.reset(clientInfo.state, clientInfo.tier, currentTime); // Clear calls to reset after penalty
   }
 
   // Mock API function for demonstration
@@ -57,15 +396,88 @@ public class ApiRateLimiter {
     return "API Response for input: " + input;
   }
 
+  // Guarded by its own monitor in CONCURRENT mode, by the global lock otherwise
   private static class ClientInfo {
-    Queue<Long> callTimestamps;
+    final String clientId;
+    final RateLimitTier tier;
+    final Object state;
     boolean isPenalized;
     long penaltyEndTime;
+    long lastAccessTime;
+    // Set once the entry has left clientMap; callers holding a stale reference must look up again
+    boolean evicted;
 
-    ClientInfo() {
-      callTimestamps = new LinkedList<>();
+    ClientInfo(String clientId, RateLimitTier tier, Object state, long createdTime) {
+      this.clientId = clientId;
+      this.tier = tier;
+      this.state = state;
       isPenalized = false;
       penaltyEndTime = 0;
+      lastAccessTime = createdTime;
+    }
+  }
+
+  public static class Builder {
+    private Mode mode = Mode.CONCURRENT;
+    private RateLimitAlgorithm<?> algorithm = new SlidingLogAlgorithm();
+    private Function<String, RateLimitTier> tierResolver = clientId -> RateLimitTier.DEFAULT;
+    private int maxClients = Integer.MAX_VALUE;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT_NEW_CLIENTS;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+    private Duration reconcileInterval = Duration.ofSeconds(1);
+
+    private Builder() {
+    }
+
+    public Builder mode(Mode mode) {
+      this.mode = mode;
+      return this;
+    }
+
+    // Defaults to the exact SlidingLogAlgorithm
+    public Builder algorithm(RateLimitAlgorithm<?> algorithm) {
+      this.algorithm = algorithm;
+      return this;
+    }
+
+    // Same limits for every client
+    public Builder tier(RateLimitTier tier) {
+      return tiers(clientId -> tier);
+    }
+
+    // Resolved once, when a client is first seen
+    public Builder tiers(Function<String, RateLimitTier> tierResolver) {
+      this.tierResolver = tierResolver;
+      return this;
+    }
+
+    // Hard cap on tracked clients; unlimited by default
+    public Builder maxClients(int maxClients, OverflowPolicy overflowPolicy) {
+      if (maxClients <= 0) {
+        throw new IllegalArgumentException("maxClients must be positive.");
+      }
+      this.maxClients = maxClients;
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    // Defaults to System.nanoTime(); use a ManualTimeSource to simulate time
+    public Builder timeSource(TimeSource timeSource) {
+      this.timeSource = timeSource;
+      return this;
+    }
+
+    // How often calls hand the algorithm's deferred work, such as unused leases, back to it; every second by default
+    public Builder reconcileInterval(Duration reconcileInterval) {
+      if (reconcileInterval.isNegative() || reconcileInterval.isZero()) {
+        throw new IllegalArgumentException("reconcileInterval must be positive.");
+      }
+      this.reconcileInterval = reconcileInterval;
+      return this;
+    }
+
+    public ApiRateLimiter build() {
+      return new ApiRateLimiter(this);
     }
   }
 
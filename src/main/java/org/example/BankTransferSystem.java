@@ -1,121 +1,284 @@
 package org.example;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class BankTransferSystem {
 
-  private final Map<String, Account> accounts = new HashMap<>();
+  private static final int[] NO_FAILURES = new int[0];
+
+  private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+  // Null when transfers are kept in memory only
+  private final TransferLog log;
+  // Null until enableMetrics
+  private volatile TransferMetrics metrics;
 
   public BankTransferSystem() {
     // Create accounts for testing
-      accounts.put("A", new Account("A", 1000.0));
-    accounts.put("B", new Account("B", 500.0));
+    accounts.put("A", new Account("A", 1000));
+    accounts.put("B", new Account("B", 500));
+    log = null;
   }
 
   public BankTransferSystem(Map<String, Account> accounts) {
     this.accounts.putAll(accounts);
+    log = null;
+  }
+
+  private BankTransferSystem(TransferLog log, Map<String, Long> balances) {
+    balances.forEach((accountId, balance) -> accounts.put(accountId, new Account(accountId, balance)));
+    this.log = log;
   }
 
-  // Transfer money using 2PC protocol simulation
-  public boolean transfer(String fromAccount, String toAccount, double amount) {
+  /**
+   * Durable system backed by the log: accounts are rebuilt from its latest snapshot plus the
+   * committed tail, or created from initialBalances (and checkpointed) if the log is new.
+   * Transfers only return once their commit record is on disk.
+   */
+  public static BankTransferSystem open(TransferLog log, Map<String, Long> initialBalances) {
+    Map<String, Long> recovered = log.recoveredBalances();
+    if (recovered != null) {
+      return new BankTransferSystem(log, recovered);
+    }
+    BankTransferSystem system = new BankTransferSystem(log, initialBalances);
+    system.checkpoint();
+    return system;
+  }
+
+  // Transfer money using 2PC protocol simulation (TransactionCoordinator does real 2PC across shards)
+  // Amounts are in minor units (e.g. cents)
+  public boolean transfer(String fromAccount, String toAccount, long amount) {
+    TransferMetrics metrics = this.metrics;
     Account sender = accounts.get(fromAccount);
     Account receiver = accounts.get(toAccount);
 
     if (sender == null || receiver == null) {
+      if (metrics != null) {
+        metrics.record(TransferResult.ACCOUNT_NOT_FOUND);
+      }
       throw new IllegalArgumentException("Account not found.");
     }
 
     if(amount <= 0) {
+      if (metrics != null) {
+        metrics.record(TransferResult.INVALID_AMOUNT);
+      }
       throw new IllegalArgumentException("Amount must be positive.");
     }
+    long start = metrics != null && TransferMetrics.sampleLatency(sender) ? System.nanoTime() : 0;
 
-    // Step 1: Prepare phase
-    if (!sender.prepareDebit(amount)) {
-      System.out.println("Insufficient funds or preparation failed for " + fromAccount);
-      return false;
+    // Both accounts stay locked for the whole transfer, so debit and credit are seen together.
+    // Locks are always taken in account id order, so two opposite transfers cannot deadlock.
+    boolean senderFirst = fromAccount.compareTo(toAccount) <= 0;
+    Account first = senderFirst ? sender : receiver;
+    Account second = senderFirst ? receiver : sender;
+    boolean timed = metrics != null;
+    first.lock(timed);
+    if (second != first) {
+      second.lock(timed);
     }
-
-    // Step 2: Commit phase - In a real system, this would involve distributed communication
-    if (!receiver.commitCredit(amount)) {
-      sender.rollbackDebit(amount); // Rollback if commit fails
-      System.out.println("Transfer failed. Rolled back transaction.");
-      return false;
+    TransferResult result;
+    long commitPosition = -1;
+    try {
+      long transactionId = log == null ? 0 : log.prepare(List.of(new Transfer(fromAccount, toAccount, amount)));
+      result = apply(sender, receiver, amount);
+      if (metrics != null) {
+        sender.recordOutcome(result);
+      }
+      if (log != null) {
+        if (result == TransferResult.COMMITTED) {
+          commitPosition = log.commit(transactionId, NO_FAILURES, 0);
+        } else {
+          log.rollback(transactionId);
+        }
+      }
+    } finally {
+      if (second != first) {
+        second.unlock();
+      }
+      first.unlock();
+    }
+    if (commitPosition >= 0) {
+      log.sync(commitPosition); // Outside the locks, so concurrent transfers can share one fsync
     }
 
-//    System.out.println("Transfer completed successfully from " + fromAccount + " to " + toAccount);
-    return true;
+    if (start != 0) {
+      metrics.recordLatency(System.nanoTime() - start);
+    }
+    return result == TransferResult.COMMITTED;
   }
 
-  public static void main(String[] args) {
-    BankTransferSystem system = new BankTransferSystem();
+  /**
+   * Applies many transfers as one group: every item is validated first, every account involved is
+   * locked once (in id order) for the whole batch, and the items are applied in list order. Other
+   * threads see either none or all of the batch. Items fail individually; a failed item changes
+   * nothing and does not stop the rest.
+   */
+  public TransferResult[] transferBatch(List<Transfer> transfers) {
+    TransferResult[] results = new TransferResult[transfers.size()];
+    Account[] senders = new Account[results.length];
+    Account[] receivers = new Account[results.length];
+    Map<String, Account> involved = new HashMap<>();
 
-    // Test transfer - success
-    system.transfer("A", "B", 200);
+    for (int i = 0; i < results.length; i++) {
+      Transfer transfer = transfers.get(i);
+      senders[i] = accounts.get(transfer.fromAccount());
+      receivers[i] = accounts.get(transfer.toAccount());
+      if (senders[i] == null || receivers[i] == null) {
+        results[i] = TransferResult.ACCOUNT_NOT_FOUND;
+      } else if (transfer.amount() <= 0) {
+        results[i] = TransferResult.INVALID_AMOUNT;
+      } else {
+        involved.put(transfer.fromAccount(), senders[i]);
+        involved.put(transfer.toAccount(), receivers[i]);
+      }
+    }
 
-    // Test transfer - insufficient funds
-    system.transfer("A", "B", 1200);
+    String[] lockOrder = involved.keySet().toArray(new String[0]);
+    Arrays.sort(lockOrder);
+    int locked = 0;
+    long commitPosition = -1;
+    TransferMetrics metrics = this.metrics;
+    try {
+      for (String accountId : lockOrder) {
+        involved.get(accountId).lock(metrics != null);
+        locked++;
+      }
+      long transactionId = log == null ? 0 : log.prepare(transfers);
+      for (int i = 0; i < results.length; i++) {
+        if (results[i] == null) {
+          results[i] = apply(senders[i], receivers[i], transfers.get(i).amount());
+          if (metrics != null) {
+            senders[i].recordOutcome(results[i]);
+          }
+        } else if (metrics != null) {
+          metrics.record(results[i]);
+        }
+      }
+      if (log != null) {
+        commitPosition = logBatchCommit(transactionId, results);
+      }
+    } finally {
+      for (int i = locked - 1; i >= 0; i--) {
+        involved.get(lockOrder[i]).unlock();
+      }
+    }
+    if (commitPosition >= 0) {
+      log.sync(commitPosition); // One fsync for the whole batch
+    }
+    return results;
   }
 
-  public Account getAccount(String account) {
-    return this.accounts.get(account);
+  private long logBatchCommit(long transactionId, TransferResult[] results) {
+    int[] failed = new int[results.length];
+    int failedCount = 0;
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] != TransferResult.COMMITTED) {
+        failed[failedCount++] = i;
+      }
+    }
+    return log.commit(transactionId, failed, failedCount);
   }
-}
 
-class Account {
-  private final String accountId;
-  private double balance;
-  private final Lock lock = new ReentrantLock();
-  private double reservedAmount = 0; // Reserved for 2PC prepare phase
+  /**
+   * Starts collecting transfer counts, latency and lock contention, and returns the metrics. Calling
+   * it again returns the same instance.
+   */
+  public synchronized TransferMetrics enableMetrics() {
+    if (metrics == null) {
+      metrics = new TransferMetrics(accounts.values());
+    }
+    return metrics;
+  }
 
-  public Account(String accountId, double balance) {
-    this.accountId = accountId;
-    this.balance = balance;
+  // Null unless enableMetrics was called
+  public TransferMetrics getMetrics() {
+    return metrics;
   }
 
-  // Prepare phase for debit - reserve the amount
-  public boolean prepareDebit(double amount) {
-    lock.lock();
+  /**
+   * Writes a snapshot of every balance to the log directory and empties the log, so recovery
+   * replays only what came after. Transfers wait while the snapshot is taken.
+   */
+  public void checkpoint() {
+    if (log == null) {
+      throw new IllegalStateException("Transfer log is not enabled.");
+    }
+    Map<String, Account> ordered = new TreeMap<>(accounts);
+    for (Account account : ordered.values()) {
+      account.lock();
+    }
     try {
-      if (balance < amount) return false;
-      balance -= amount;
-      reservedAmount = amount; // Reserve amount for transaction
-      return true;
+      Map<String, Long> balances = new LinkedHashMap<>();
+      ordered.forEach((accountId, account) -> balances.put(accountId, account.getBalance()));
+      log.checkpoint(balances);
     } finally {
-      lock.unlock();
+      for (Account account : ordered.values()) {
+        account.unlock();
+      }
     }
   }
 
-  // Commit phase for credit - add amount to balance
-  public boolean commitCredit(double amount) {
-    lock.lock();
-    try {
-      balance += amount;
-      return true;
-    } finally {
-      lock.unlock();
+  // Runs checkpoint periodically on the executor
+  public ScheduledFuture<?> scheduleCheckpoints(ScheduledExecutorService executor, Duration period) {
+    long periodMillis = period.toMillis();
+    return executor.scheduleAtFixedRate(this::checkpoint, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // Caller holds the locks of both accounts
+  private static TransferResult apply(Account sender, Account receiver, long amount) {
+    // Step 1: Prepare phase
+    if (!sender.prepareDebit(amount)) {
+      return TransferResult.INSUFFICIENT_FUNDS;
+    }
+
+    // Step 2: Commit phase - In a real system, this would involve distributed communication
+    if (!receiver.commitCredit(amount)) {
+      sender.rollbackDebit(amount); // Rollback if commit fails
+      return TransferResult.ROLLED_BACK;
     }
+    return TransferResult.COMMITTED;
   }
 
-  // Rollback phase for debit - release reserved amount
-  public void rollbackDebit(double amount) {
-    lock.lock();
+  // Sum of all balances as of one instant: every account is locked, in id order, while summing
+  public long getTotalBalance() {
+    Map<String, Account> ordered = new TreeMap<>(accounts);
+    for (Account account : ordered.values()) {
+      account.lock();
+    }
     try {
-      balance += reservedAmount;
-      reservedAmount = 0; // Clear reservation
+      long total = 0;
+      for (Account account : ordered.values()) {
+        total += account.getBalance();
+      }
+      return total;
     } finally {
-      lock.unlock();
+      for (Account account : ordered.values()) {
+        account.unlock();
+      }
     }
   }
 
-  @Override
-  public String toString() {
-    return "Account{" + "accountId='" + accountId + '\'' + ", balance=" + balance + '}';
+  public static void main(String[] args) {
+    BankTransferSystem system = new BankTransferSystem();
+
+    // Test transfer - success
+    System.out.println("Transfer of 200: " + system.transfer("A", "B", 200));
+
+    // Test transfer - insufficient funds
+    System.out.println("Transfer of 1200: " + system.transfer("A", "B", 1200));
   }
 
-  public double getBalance() {
-    return balance;
+  public Account getAccount(String account) {
+    return this.accounts.get(account);
   }
 }
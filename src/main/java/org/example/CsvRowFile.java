@@ -0,0 +1,104 @@
+package org.example;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+// A CSV export with a header line, see MappedRowFile
+class CsvRowFile extends MappedRowFile {
+
+  private final String[] columns;
+  // Column indexes in sorted name order, the order RowHasher hashes them in
+  private final int[] sortedColumns;
+
+  CsvRowFile(Path path, int window) {
+    super(path, window);
+    CsvCursor header = new CsvCursor(this, 0, size(), null, null);
+    if (header.next()) {
+      columns = new String[header.fields];
+      for (int field = 0; field < columns.length; field++) {
+        columns[field] = header.value(field);
+      }
+      dataStart = header.position();
+    } else {
+      columns = new String[0];
+    }
+    sortedColumns = IntStream.range(0, columns.length).boxed()
+        .sorted(Comparator.comparing(field -> columns[field])).mapToInt(Integer::intValue).toArray();
+  }
+
+  @Override
+  Cursor newCursor(long from, long to) {
+    return new CsvCursor(this, from, to, columns, sortedColumns);
+  }
+
+  private static class CsvCursor extends Cursor {
+    private final String[] columns;
+
+    CsvCursor(CsvRowFile file, long from, long to, String[] columns, int[] sortedColumns) {
+      super(file, from, to);
+      this.columns = columns;
+      this.names = columns;
+      this.order = sortedColumns;
+    }
+
+    @Override
+    void parse(int from, int to, long rowPosition) {
+      int i = from;
+      while (true) {
+        if (i < to && buffer.get(i) == '"') {
+          // Quoted: runs to the next quote that is not doubled
+          int start = ++i;
+          byte kind = PLAIN;
+          while (true) {
+            if (i >= to) {
+              throw new IllegalArgumentException("Unterminated quote in the row at byte " + rowPosition);
+            }
+            if (buffer.get(i) == '"') {
+              if (i + 1 < to && buffer.get(i + 1) == '"') {
+                kind = ESCAPED;
+                i += 2;
+                continue;
+              }
+              break;
+            }
+            i++;
+          }
+          addField(start, i - start, kind);
+          i++;
+          if (i < to && buffer.get(i) != ',') {
+            throw new IllegalArgumentException("Expected a comma after a quoted field in the row at byte " + rowPosition);
+          }
+        } else {
+          int start = i;
+          while (i < to && buffer.get(i) != ',') {
+            i++;
+          }
+          addField(start, i - start, PLAIN);
+        }
+        if (i >= to) {
+          break;
+        }
+        i++; // The comma
+      }
+      if (columns != null && fields != columns.length) {
+        throw new IllegalArgumentException("The row at byte " + rowPosition + " has " + fields + " fields, expected "
+            + columns.length);
+      }
+    }
+
+    @Override
+    int unescape(int field) {
+      ensureScratch(lengths[field]);
+      int length = 0;
+      for (int i = starts[field], end = i + lengths[field]; i < end; i++) {
+        byte b = buffer.get(i);
+        scratch[length++] = b;
+        if (b == '"') {
+          i++; // Skips the second quote of ""
+        }
+      }
+      return length;
+    }
+  }
+}
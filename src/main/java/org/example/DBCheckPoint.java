@@ -1,13 +1,22 @@
 package org.example;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 public class DBCheckPoint {
 
+  // Rows per parallel hashing task
+  private static final int CHUNK_ROWS = 1024;
+
   public static void main(String[] args) {
     // Sample data for original and migrated datasets
     List<Map<String, String>> originalData = Arrays.asList(
@@ -36,43 +45,315 @@ public class DBCheckPoint {
     }
 
     // Row-by-Row Hash Check
-    for (int i = 0; i < originalData.size(); i++) {
-      String originalHash = hashRow(originalData.get(i));
-      String migratedHash = hashRow(migratedData.get(i));
-
-      if (!originalHash.equals(migratedHash)) {
-        System.out.println("Data mismatch found in row " + (i + 1));
-        System.out.println("Original Row: " + originalData.get(i));
-        System.out.println("Migrated Row: " + migratedData.get(i));
-        return false;
+    ValidationResult result = validate(originalData.iterator(), migratedData.iterator());
+    if (result.status() == ValidationResult.Status.ROW_MISMATCH) {
+      System.out.println("Data mismatch found in row " + (result.rowOffset() + 1));
+      System.out.println("Original Row: " + result.originalRow());
+      System.out.println("Migrated Row: " + result.migratedRow());
+    }
+    return result.isPassed();
+  }
+
+  // Streaming validation of two cursors from their current position, in constant memory
+  public static ValidationResult validate(Iterator<? extends Map<String, String>> originalData,
+      Iterator<? extends Map<String, String>> migratedData) {
+    return compare(originalData, migratedData, 0, Long.MAX_VALUE, offset -> { });
+  }
+
+  /**
+   * Compares both sides row by row from {@code startOffset}, holding only the current pair of rows,
+   * so tables of any size can be validated. Every {@code progressInterval} rows, and at the end of a
+   * passed validation, {@code progress} is given the offset of the next row to compare; after a crash, passing the last reported
+   * offset back as {@code startOffset} resumes the validation there.
+   */
+  public static ValidationResult validate(RowSource originalData, RowSource migratedData, long startOffset,
+      long progressInterval, LongConsumer progress) {
+    if (startOffset < 0 || progressInterval <= 0) {
+      throw new IllegalArgumentException("Start offset must not be negative and progress interval must be positive.");
+    }
+    return compare(originalData.openAt(startOffset), migratedData.openAt(startOffset), startOffset,
+        progressInterval, progress);
+  }
+
+  private static ValidationResult compare(Iterator<? extends Map<String, String>> originalData,
+      Iterator<? extends Map<String, String>> migratedData, long offset, long progressInterval, LongConsumer progress) {
+    long nextReport = offset + progressInterval;
+    while (originalData.hasNext() && migratedData.hasNext()) {
+      Map<String, String> originalRow = originalData.next();
+      Map<String, String> migratedRow = migratedData.next();
+      if (!RowHasher.forCurrentThread().sameHash(originalRow, migratedRow)) {
+        return new ValidationResult(ValidationResult.Status.ROW_MISMATCH, offset, originalRow, migratedRow);
+      }
+      offset++;
+      if (offset == nextReport) {
+        progress.accept(offset);
+        nextReport += progressInterval;
+      }
+    }
+    if (originalData.hasNext() || migratedData.hasNext()) {
+      return new ValidationResult(ValidationResult.Status.ROW_COUNT_MISMATCH, offset, null, null);
+    }
+    if (offset != nextReport - progressInterval) {
+      progress.accept(offset); // The end, unless it was just reported
+    }
+    return new ValidationResult(ValidationResult.Status.PASSED, offset, null, null);
+  }
+
+  // Row by row validation of two exports on disk, hashing straight from the mapped files
+  public static ValidationResult validate(MappedRowFile originalData, MappedRowFile migratedData) {
+    MappedRowFile.Cursor original = originalData.cursor();
+    MappedRowFile.Cursor migrated = migratedData.cursor();
+    RowHasher hasher = RowHasher.forCurrentThread();
+    byte[] hashes = new byte[2 * RowHasher.HASH_LENGTH];
+    for (long row = 0; ; row++) {
+      boolean hasOriginal = original.next();
+      boolean hasMigrated = migrated.next();
+      if (!hasOriginal || !hasMigrated) {
+        return new ValidationResult(hasOriginal == hasMigrated ? ValidationResult.Status.PASSED
+            : ValidationResult.Status.ROW_COUNT_MISMATCH, row, null, null);
+      }
+      if (!sameRow(original, migrated, hasher, hashes)) {
+        return new ValidationResult(ValidationResult.Status.ROW_MISMATCH, row, original.row(), migrated.row());
       }
     }
-    return true;
   }
 
-  private static String hashRow(Map<String, String> rowData) {
-    // Concatenate values in sorted order to ensure consistent hashing
-    StringBuilder concatenatedValues = new StringBuilder();
-    rowData.keySet().stream().sorted().forEach(key -> {
-      concatenatedValues.append(key);
-      concatenatedValues.append(rowData.get(key));
-    });
+  /**
+   * Same result as {@link #validate(MappedRowFile, MappedRowFile)}, with the files read in parallel
+   * ranges. The rows of each range are counted first (a plain scan for line breaks), so the migrated
+   * file can be cut at the same rows as the original; each pair of ranges is then hashed and compared
+   * on its own worker, and the earliest mismatch wins.
+   */
+  public static ValidationResult validateParallel(MappedRowFile originalData, MappedRowFile migratedData,
+      ForkJoinPool pool) {
+    int parts = 4 * pool.getParallelism();
+    long[] originalBounds = originalData.split(parts);
+    long[] originalRows = firstRows(originalData, originalBounds, pool);
+    long[] migratedBounds = migratedData.split(parts);
+    long[] migratedRows = firstRows(migratedData, migratedBounds, pool);
 
-    return generateHash(concatenatedValues.toString());
+    // The migrated file cut at the original's range boundaries; whatever is left over goes with the last range
+    List<ForkJoinTask<Long>> cuts = new ArrayList<>();
+    for (long row : originalRows) {
+      cuts.add(pool.submit(() -> positionOfRow(migratedData, migratedBounds, migratedRows, row)));
+    }
+    long[] alignedBounds = cuts.stream().mapToLong(ForkJoinTask::join).toArray();
+    alignedBounds[alignedBounds.length - 1] = migratedData.size();
+
+    AtomicLong earliestMismatch = new AtomicLong(Long.MAX_VALUE);
+    List<ForkJoinTask<ValidationResult>> ranges = new ArrayList<>();
+    for (int i = 0; i + 1 < originalBounds.length; i++) {
+      MappedRowFile.Cursor original = originalData.cursor(originalBounds[i], originalBounds[i + 1]);
+      MappedRowFile.Cursor migrated = migratedData.cursor(alignedBounds[i], alignedBounds[i + 1]);
+      long firstRow = originalRows[i];
+      ranges.add(pool.submit(() -> compare(original, migrated, firstRow, earliestMismatch)));
+    }
+    ValidationResult mismatch = null;
+    for (ForkJoinTask<ValidationResult> range : ranges) {
+      ValidationResult result = range.join();
+      if (mismatch == null) {
+        mismatch = result; // Ranges are in row order, so the first one found is the earliest
+      }
+    }
+    if (mismatch != null) {
+      return mismatch;
+    }
+    long originalTotal = originalRows[originalRows.length - 1];
+    long migratedTotal = migratedRows[migratedRows.length - 1];
+    if (originalTotal != migratedTotal) {
+      return new ValidationResult(ValidationResult.Status.ROW_COUNT_MISMATCH, Math.min(originalTotal, migratedTotal),
+          null, null);
+    }
+    return new ValidationResult(ValidationResult.Status.PASSED, originalTotal, null, null);
   }
 
-  private static String generateHash(String input) {
+  // Row number at each range boundary, counted in parallel; the last entry is the total
+  private static long[] firstRows(MappedRowFile file, long[] bounds, ForkJoinPool pool) {
+    List<ForkJoinTask<Long>> counts = new ArrayList<>();
+    for (int i = 0; i + 1 < bounds.length; i++) {
+      long from = bounds[i];
+      long to = bounds[i + 1];
+      counts.add(pool.submit(() -> file.countRows(from, to)));
+    }
+    long[] rows = new long[bounds.length];
+    for (int i = 0; i < counts.size(); i++) {
+      rows[i + 1] = rows[i] + counts.get(i).join();
+    }
+    return rows;
+  }
+
+  private static long positionOfRow(MappedRowFile file, long[] bounds, long[] rows, long row) {
+    int range = 0;
+    while (range + 2 < bounds.length && rows[range + 1] <= row) {
+      range++;
+    }
+    return file.skipRows(bounds[range], row - rows[range]);
+  }
+
+  // First mismatch of the cursors' rows, numbered from firstRow; null if the shorter one runs out first
+  private static ValidationResult compare(MappedRowFile.Cursor original, MappedRowFile.Cursor migrated,
+      long firstRow, AtomicLong earliestMismatch) {
+    RowHasher hasher = RowHasher.forCurrentThread();
+    byte[] hashes = new byte[2 * RowHasher.HASH_LENGTH];
+    for (long row = firstRow; row < earliestMismatch.get() && original.next() && migrated.next(); row++) {
+      if (!sameRow(original, migrated, hasher, hashes)) {
+        earliestMismatch.accumulateAndGet(row, Math::min);
+        return new ValidationResult(ValidationResult.Status.ROW_MISMATCH, row, original.row(), migrated.row());
+      }
+    }
+    return null;
+  }
+
+  private static boolean sameRow(MappedRowFile.Cursor original, MappedRowFile.Cursor migrated, RowHasher hasher,
+      byte[] hashes) {
+    original.hash(hasher, hashes, 0);
+    migrated.hash(hasher, hashes, RowHasher.HASH_LENGTH);
+    return Arrays.equals(hashes, 0, RowHasher.HASH_LENGTH, hashes, RowHasher.HASH_LENGTH, hashes.length);
+  }
+
+  // Builds a Merkle checkpoint of rows sorted by keyColumn and saves it to file, see MerkleTree
+  public static MerkleTree checkpoint(Iterator<? extends Map<String, String>> rowsByKey, String keyColumn, Path file) {
+    MerkleTree tree = MerkleTree.build(rowsByKey, keyColumn);
+    tree.save(file);
+    return tree;
+  }
+
+  // Key ranges where two saved checkpoints differ; empty if the tables match
+  public static List<KeyRange> findMismatchedRanges(Path originalCheckpoint, Path migratedCheckpoint) {
+    return MerkleTree.diff(MerkleTree.load(originalCheckpoint), MerkleTree.load(migratedCheckpoint));
+  }
+
+  // Order-independent diff of two tables by keyColumn, streamed to reportFile; see RowDiff
+  public static DiffReport diffByKey(Iterator<? extends Map<String, String>> originalData,
+      Iterator<? extends Map<String, String>> migratedData, String keyColumn, Path reportFile, Path spillDirectory,
+      int rowsInMemory) {
+    try (DiffReport report = DiffReport.open(reportFile)) {
+      return RowDiff.hashJoin(originalData, migratedData, keyColumn, report, spillDirectory, rowsInMemory);
+    }
+  }
+
+  // Same for inputs that are both sorted by keyColumn: a single merge pass without spilling; unsorted input throws
+  public static DiffReport diffSortedByKey(Iterator<? extends Map<String, String>> originalData,
+      Iterator<? extends Map<String, String>> migratedData, String keyColumn, Path reportFile) {
+    try (DiffReport report = DiffReport.open(reportFile)) {
+      return RowDiff.sortMerge(originalData, migratedData, keyColumn, report);
+    }
+  }
+
+  // Parallel validation of two in-memory tables on the pool
+  public static ValidationResult validateParallel(List<Map<String, String>> originalData,
+      List<Map<String, String>> migratedData, ForkJoinPool pool) {
+    return validateParallel(RowSource.of(originalData), RowSource.of(migratedData), 0, Long.MAX_VALUE, offset -> { }, pool);
+  }
+
+  /**
+   * Same result as {@link #validate(RowSource, RowSource, long, long, LongConsumer)}, with the
+   * hashing spread over the pool. The calling thread reads both sides in chunks and hands each
+   * chunk to a worker, keeping at most two chunks per worker in memory. Chunks are retired in order,
+   * so the first mismatch reported is the earliest one; once a mismatch is known, chunks after it
+   * are skipped. Progress is reported at chunk boundaries, roughly every {@code progressInterval}
+   * rows.
+   */
+  public static ValidationResult validateParallel(RowSource originalData, RowSource migratedData, long startOffset,
+      long progressInterval, LongConsumer progress, ForkJoinPool pool) {
+    return validateParallel(originalData, migratedData, startOffset, progressInterval, progress, pool, CHUNK_ROWS);
+  }
+
+  static ValidationResult validateParallel(RowSource originalData, RowSource migratedData, long startOffset,
+      long progressInterval, LongConsumer progress, ForkJoinPool pool, int chunkRows) {
+    if (startOffset < 0 || progressInterval <= 0) {
+      throw new IllegalArgumentException("Start offset must not be negative and progress interval must be positive.");
+    }
+    Iterator<? extends Map<String, String>> original = originalData.openAt(startOffset);
+    Iterator<? extends Map<String, String>> migrated = migratedData.openAt(startOffset);
+    AtomicLong earliestMismatch = new AtomicLong(Long.MAX_VALUE);
+    ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+    int maxInFlight = 2 * pool.getParallelism();
+    long offset = startOffset;
+    long validated = startOffset;
+    long nextReport = startOffset + progressInterval;
+
     try {
-      MessageDigest md = MessageDigest.getInstance("SHA-256");
-      byte[] hashBytes = md.digest(input.getBytes());
-      StringBuilder sb = new StringBuilder();
+      while (original.hasNext() && migrated.hasNext() && offset < earliestMismatch.get()) {
+        Chunk chunk = new Chunk(offset, chunkRows);
+        while (chunk.size < chunkRows && original.hasNext() && migrated.hasNext()) {
+          chunk.add(original.next(), migrated.next());
+        }
+        offset += chunk.size;
+        chunk.task = pool.submit(() -> chunk.check(earliestMismatch));
+        inFlight.add(chunk);
+
+        if (inFlight.size() >= maxInFlight) {
+          Chunk done = inFlight.poll();
+          if (done.task.join() >= 0) {
+            return done.mismatch();
+          }
+          validated = done.start + done.size;
+          if (validated >= nextReport) {
+            progress.accept(validated);
+            nextReport = validated + progressInterval;
+          }
+        }
+      }
+      // Only the chunks still in flight can hold a mismatch before the end of the data
+      for (Chunk done = inFlight.poll(); done != null; done = inFlight.poll()) {
+        if (done.task.join() >= 0) {
+          return done.mismatch();
+        }
+        validated = done.start + done.size;
+      }
+    } finally {
+      earliestMismatch.set(Long.MIN_VALUE); // Stops workers still running after an early return
+    }
+
+    if (original.hasNext() || migrated.hasNext()) {
+      return new ValidationResult(ValidationResult.Status.ROW_COUNT_MISMATCH, validated, null, null);
+    }
+    progress.accept(validated);
+    return new ValidationResult(ValidationResult.Status.PASSED, validated, null, null);
+  }
+
+  // Consecutive row pairs hashed by one worker
+  private static class Chunk {
+    final long start;
+    final Map<?, ?>[] originalRows;
+    final Map<?, ?>[] migratedRows;
+    int size;
+    ForkJoinTask<Long> task;
+
+    Chunk(long start, int capacity) {
+      this.start = start;
+      this.originalRows = new Map<?, ?>[capacity];
+      this.migratedRows = new Map<?, ?>[capacity];
+    }
 
-      for (byte b : hashBytes) {
-        sb.append(String.format("%02x", b));
+    void add(Map<String, String> originalRow, Map<String, String> migratedRow) {
+      originalRows[size] = originalRow;
+      migratedRows[size] = migratedRow;
+      size++;
+    }
+
+    // Offset of the first mismatching row in the chunk, or -1. Gives up once an earlier mismatch is known.
+    @SuppressWarnings("unchecked")
+    long check(AtomicLong earliestMismatch) {
+      RowHasher hasher = RowHasher.forCurrentThread();
+      for (int i = 0; i < size; i++) {
+        if (earliestMismatch.get() < start) {
+          return -1;
+        }
+        if (!hasher.sameHash((Map<String, String>) originalRows[i], (Map<String, String>) migratedRows[i])) {
+          earliestMismatch.accumulateAndGet(start + i, Math::min);
+          return start + i;
+        }
       }
-      return sb.toString();
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("Hashing algorithm not found", e);
+      return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    ValidationResult mismatch() {
+      int row = (int) (task.join() - start);
+      return new ValidationResult(ValidationResult.Status.ROW_MISMATCH, start + row,
+          (Map<String, String>) originalRows[row], (Map<String, String>) migratedRows[row]);
     }
   }
-}
\ No newline at end of file
+}
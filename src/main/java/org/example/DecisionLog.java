@@ -0,0 +1,182 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The {@link TransactionCoordinator}'s record of commit decisions. With presumed abort only
+ * commits are logged: a transaction that is not in the log was aborted. A commit is durable
+ * before {@link #commit} returns, and is forgotten once every participant has applied it. The log
+ * also keeps the highest transaction id the coordinator has reserved, so that a restarted
+ * coordinator never hands out an id a participant may still hold, even one that was aborted.
+ *
+ * <p>Kept in memory only, or in a file of fixed size [type][transaction id] records. Once the file
+ * has grown by {@code compactSize} bytes beyond its live records, it is rewritten with only the
+ * reserved id and the commits not yet forgotten, so neither it nor the replay on open grow forever.
+ */
+public class DecisionLog implements Closeable {
+
+  private static final String LOG_FILE = "decisions.log";
+  private static final long COMPACT_SIZE = 64 * 1024;
+  private static final int RECORD_SIZE = 1 + Long.BYTES;
+  private static final byte COMMIT = 1;
+  private static final byte FORGET = 2;
+  private static final byte RESERVE = 3;
+
+  private final Set<Long> committed = new HashSet<>();
+  private long highestTransactionId;
+  // Both null when decisions are kept in memory only
+  private final Path directory;
+  private FileChannel channel;
+  private final long compactSize;
+  // Bytes in the file, live records and forgotten ones
+  private long size;
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+  public DecisionLog() {
+    directory = null;
+    channel = null;
+    compactSize = 0;
+  }
+
+  private DecisionLog(Path directory, long compactSize) throws IOException {
+    this.directory = directory;
+    this.compactSize = compactSize;
+    channel = FileChannel.open(directory.resolve(LOG_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long end = channel.size() - channel.size() % RECORD_SIZE; // A torn record never made it
+    ByteBuffer file = ByteBuffer.allocate((int) end);
+    channel.read(file, 0);
+    file.flip();
+    while (file.hasRemaining()) {
+      byte type = file.get();
+      long transactionId = file.getLong();
+      highestTransactionId = Math.max(highestTransactionId, transactionId);
+      if (type == COMMIT) {
+        committed.add(transactionId);
+      } else if (type == FORGET) {
+        committed.remove(transactionId);
+      }
+    }
+    channel.truncate(end);
+    channel.position(end);
+    size = end;
+  }
+
+  public static DecisionLog open(Path directory) {
+    return open(directory, COMPACT_SIZE);
+  }
+
+  // compactSize is exposed for tests
+  static DecisionLog open(Path directory, long compactSize) {
+    try {
+      Files.createDirectories(directory);
+      return new DecisionLog(directory, compactSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open decision log in " + directory, e);
+    }
+  }
+
+  /** Records the commit decision; the transaction must commit everywhere once this returns. */
+  public synchronized void commit(long transactionId) {
+    write(COMMIT, transactionId, true);
+    committed.add(transactionId);
+    highestTransactionId = Math.max(highestTransactionId, transactionId);
+  }
+
+  /** Every participant applied the commit, so recovery no longer needs it. Not forced: replaying it is harmless. */
+  public synchronized void forget(long transactionId) {
+    if (committed.remove(transactionId)) {
+      write(FORGET, transactionId, false);
+      if (channel != null && size >= compactSize + (committed.size() + 1L) * RECORD_SIZE) {
+        compact();
+      }
+    }
+  }
+
+  /** Durably records that ids up to {@code transactionId} may be in use, before any of them is handed out. */
+  public synchronized void reserve(long transactionId) {
+    write(RESERVE, transactionId, true);
+    highestTransactionId = Math.max(highestTransactionId, transactionId);
+  }
+
+  public synchronized boolean isCommitted(long transactionId) {
+    return committed.contains(transactionId);
+  }
+
+  // Highest id ever reserved or logged, so a restarted coordinator does not hand it out again
+  public synchronized long highestTransactionId() {
+    return highestTransactionId;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (channel != null) {
+      try {
+        channel.force(false);
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // Caller holds the monitor
+  private void write(byte type, long transactionId, boolean force) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      record.clear();
+      record.put(type).putLong(transactionId).flip();
+      while (record.hasRemaining()) {
+        channel.write(record);
+      }
+      if (force) {
+        channel.force(false);
+      }
+      size += RECORD_SIZE;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write decision log", e);
+    }
+  }
+
+  // Caller holds the monitor; swaps in a file holding only the reserved id and the live commits
+  private void compact() {
+    ByteBuffer live = ByteBuffer.allocate((committed.size() + 1) * RECORD_SIZE);
+    live.put(RESERVE).putLong(highestTransactionId);
+    for (long transactionId : committed) {
+      live.put(COMMIT).putLong(transactionId);
+    }
+    live.flip();
+    Path temporary = directory.resolve(LOG_FILE + ".tmp");
+    try {
+      FileChannel rewritten = FileChannel.open(temporary, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        while (live.hasRemaining()) {
+          rewritten.write(live);
+        }
+        rewritten.force(false);
+        Files.move(temporary, directory.resolve(LOG_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        rewritten.close();
+        throw e;
+      }
+      channel.close();
+      channel = rewritten; // Still open on the moved file, positioned at its end
+      size = live.limit();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot compact decision log in " + directory, e);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Streams the outcome of a {@link RowDiff} to a writer, one line per differing row, so the report
+ * never has to fit in memory:
+ *
+ * <pre>
+ * MISSING  key                  (in the original only)
+ * EXTRA    key                  (in the migrated data only)
+ * CHANGED  key  column,column   (in both, with these columns different)
+ * </pre>
+ *
+ * Fields are tab separated; tabs, line breaks, commas and backslashes inside keys and column names
+ * are escaped with a backslash. The counts are kept as well.
+ */
+public class DiffReport implements Closeable {
+
+  private final Writer out;
+  private long matchingRows;
+  private long missingRows;
+  private long extraRows;
+  private long changedRows;
+
+  public DiffReport(Writer out) {
+    this.out = out;
+  }
+
+  public static DiffReport open(Path file) {
+    try {
+      return new DiffReport(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write diff report to " + file, e);
+    }
+  }
+
+  void matching() {
+    matchingRows++;
+  }
+
+  void missing(String key) {
+    missingRows++;
+    write("MISSING", key, null);
+  }
+
+  void extra(String key) {
+    extraRows++;
+    write("EXTRA", key, null);
+  }
+
+  void changed(String key, List<String> columns) {
+    changedRows++;
+    write("CHANGED", key, columns);
+  }
+
+  public long getMatchingRows() {
+    return matchingRows;
+  }
+
+  public long getMissingRows() {
+    return missingRows;
+  }
+
+  public long getExtraRows() {
+    return extraRows;
+  }
+
+  public long getChangedRows() {
+    return changedRows;
+  }
+
+  public boolean isIdentical() {
+    return missingRows == 0 && extraRows == 0 && changedRows == 0;
+  }
+
+  @Override
+  public void close() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void write(String type, String key, List<String> columns) {
+    try {
+      out.write(type);
+      out.write('\t');
+      writeEscaped(key);
+      if (columns != null) {
+        out.write('\t');
+        for (int i = 0; i < columns.size(); i++) {
+          if (i > 0) {
+            out.write(',');
+          }
+          writeEscaped(columns.get(i));
+        }
+      }
+      out.write('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write diff report", e);
+    }
+  }
+
+  private void writeEscaped(String value) throws IOException {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\t' -> out.write("\\t");
+        case '\n' -> out.write("\\n");
+        case '\r' -> out.write("\\r");
+        case '\\' -> out.write("\\\\");
+        case ',' -> out.write("\\,");
+        default -> out.write(c);
+      }
+    }
+  }
+}
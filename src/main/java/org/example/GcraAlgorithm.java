@@ -0,0 +1,41 @@
+package org.example;
+
+/**
+ * Generic cell rate algorithm. Each call is due one emission interval (window / maxCalls, rounded up
+ * to a whole nanosecond) after the previous one, and a client may run ahead of that schedule by at
+ * most maxCalls intervals, one window. The only state is the theoretical arrival time of the next
+ * call.
+ */
+public class GcraAlgorithm implements RateLimitAlgorithm<GcraAlgorithm.State> {
+
+  @Override
+  public State newState(String clientId, RateLimitTier tier, long now) {
+    State state = new State();
+    state.theoreticalArrival = now;
+    return state;
+  }
+
+  @Override
+  public boolean tryAcquire(State state, RateLimitTier tier, long now, int permits) {
+    long emissionInterval = tier.emissionIntervalNanos();
+    // The window rounded up to whole intervals, so a full burst of maxCalls still fits
+    long burst = tier.maxCalls() * emissionInterval;
+    long arrival = Math.max(state.theoreticalArrival, now) + permits * emissionInterval;
+
+    if (arrival - now > burst) {
+      return false;
+    }
+    state.theoreticalArrival = arrival;
+    return true;
+  }
+
+  @Override
+  public void reset(State state, RateLimitTier tier, long now) {
+    // A penalized client starts over with an empty schedule, like a cleared log
+    state.theoreticalArrival = now;
+  }
+
+  public static class State {
+    private long theoreticalArrival;
+  }
+}
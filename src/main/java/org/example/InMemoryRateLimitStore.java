@@ -0,0 +1,73 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for a shared store such as Redis: one token bucket per client, plus a
+ * round trip counter and optional simulated network latency. Used by tests and benchmarks.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+  private final TokenBucketAlgorithm buckets = new TokenBucketAlgorithm();
+  private final ConcurrentMap<String, Bucket> clients = new ConcurrentHashMap<>();
+  private final TimeSource timeSource;
+  private final long latencyNanos;
+  private final LongAdder roundTrips = new LongAdder();
+
+  public InMemoryRateLimitStore(TimeSource timeSource) {
+    this(timeSource, Duration.ZERO);
+  }
+
+  public InMemoryRateLimitStore(TimeSource timeSource, Duration latency) {
+    this.timeSource = timeSource;
+    this.latencyNanos = latency.toNanos();
+  }
+
+  @Override
+  public int acquire(String clientId, RateLimitTier tier, int permits) {
+    roundTrip();
+    Bucket bucket = clients.computeIfAbsent(clientId, id -> new Bucket(tier, buckets.newState(id, tier, timeSource.nanoTime())));
+    synchronized (bucket) {
+      return buckets.acquireUpTo(bucket.state, bucket.tier, timeSource.nanoTime(), permits);
+    }
+  }
+
+  @Override
+  public void release(Map<String, Integer> unusedPermits) {
+    roundTrip();
+    unusedPermits.forEach((clientId, permits) -> {
+      Bucket bucket = clients.get(clientId);
+      if (bucket != null) {
+        synchronized (bucket) {
+          buckets.refund(bucket.state, bucket.tier, permits);
+        }
+      }
+    });
+  }
+
+  public long getRoundTripCount() {
+    return roundTrips.sum();
+  }
+
+  private void roundTrip() {
+    roundTrips.increment();
+    if (latencyNanos > 0) {
+      LockSupport.parkNanos(latencyNanos);
+    }
+  }
+
+  private static class Bucket {
+    final RateLimitTier tier;
+    final TokenBucketAlgorithm.State state;
+
+    Bucket(RateLimitTier tier, TokenBucketAlgorithm.State state) {
+      this.tier = tier;
+      this.state = state;
+    }
+  }
+}
@@ -0,0 +1,528 @@
+package org.example;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Binds JSON straight into Java types from {@link Utf8JsonParser} events, without building the map
+ * tree first. The plan for a class is made once and cached in a ClassValue: a record is built
+ * through its canonical constructor, any other class through its no-argument constructor and a
+ * VarHandle per field, and each field gets a decoder for its declared type. Fields the type does
+ * not have are skipped without being decoded.
+ *
+ * <p>Besides records and classes, fields can be String, primitives and their boxes, BigInteger,
+ * BigDecimal, Number, enums (by name), arrays, List, Collection, Set, Map with String keys, and
+ * Object, which gets the tree SimpleJsonParser builds. Missing fields keep their default, and JSON
+ * null is refused for primitives. Static, transient and final fields of classes are left alone.
+ */
+final class JsonBinding {
+
+  // Decodes the non-null value at the parser's current event, leaving the parser on its last event
+  interface Decoder {
+    Object decode(Utf8JsonParser parser);
+  }
+
+  private static final ClassValue<Decoder> DECODERS = new ClassValue<>() {
+    @Override
+    protected Decoder computeValue(Class<?> type) {
+      return create(type);
+    }
+  };
+
+  private static final Decoder STRING = parser -> {
+    check(parser, JsonEvent.VALUE_STRING, String.class);
+    return parser.getText();
+  };
+  private static final Decoder BOOLEAN = parser -> {
+    if (parser.currentEvent() != JsonEvent.VALUE_TRUE && parser.currentEvent() != JsonEvent.VALUE_FALSE) {
+      throw mismatch(parser, boolean.class);
+    }
+    return parser.getBoolean();
+  };
+  private static final Decoder LONG = parser -> integer(parser, Long.MIN_VALUE, Long.MAX_VALUE, long.class);
+  private static final Decoder INT = parser -> (int) integer(parser, Integer.MIN_VALUE, Integer.MAX_VALUE, int.class);
+  private static final Decoder SHORT = parser -> (short) integer(parser, Short.MIN_VALUE, Short.MAX_VALUE, short.class);
+  private static final Decoder BYTE = parser -> (byte) integer(parser, Byte.MIN_VALUE, Byte.MAX_VALUE, byte.class);
+  private static final Decoder DOUBLE = parser -> {
+    check(parser, JsonEvent.VALUE_NUMBER, double.class);
+    return parser.getDouble();
+  };
+  private static final Decoder FLOAT = parser -> {
+    check(parser, JsonEvent.VALUE_NUMBER, float.class);
+    return (float) parser.getDouble();
+  };
+  private static final Decoder CHAR = parser -> {
+    check(parser, JsonEvent.VALUE_STRING, char.class);
+    String text = parser.getText();
+    if (text.length() != 1) {
+      throw new IllegalArgumentException("Expected a single character but got \"" + text + "\"");
+    }
+    return text.charAt(0);
+  };
+  private static final Decoder BIG_INTEGER = parser -> {
+    check(parser, JsonEvent.VALUE_NUMBER, BigInteger.class);
+    try {
+      return new BigDecimal(parser.getText()).toBigIntegerExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Cannot bind " + parser.getText() + " to " + BigInteger.class.getName(), e);
+    }
+  };
+  private static final Decoder BIG_DECIMAL = parser -> {
+    check(parser, JsonEvent.VALUE_NUMBER, BigDecimal.class);
+    return new BigDecimal(parser.getText());
+  };
+  private static final Decoder NUMBER = parser -> {
+    check(parser, JsonEvent.VALUE_NUMBER, Number.class);
+    return parser.getNumber();
+  };
+  private static final Decoder TREE = Utf8JsonParser::readValue;
+
+  private JsonBinding() {
+  }
+
+  /** The value at the parser's current event as the type; null for JSON null unless the type is primitive. */
+  static Object bind(Utf8JsonParser parser, Class<?> type) {
+    if (parser.currentEvent() == JsonEvent.VALUE_NULL && !type.isPrimitive()) {
+      return null;
+    }
+    return DECODERS.get(type).decode(parser);
+  }
+
+  private static Decoder decoder(Type type) {
+    if (type instanceof Class) {
+      return DECODERS.get((Class<?>) type);
+    }
+    if (type instanceof ParameterizedType) {
+      Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+      Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+      if (raw == Map.class || raw == LinkedHashMap.class) {
+        if (arguments[0] != String.class) {
+          throw new IllegalArgumentException("Cannot bind " + type + ": JSON object keys are strings");
+        }
+        return map(decoder(arguments[1]));
+      }
+      Supplier<Collection<Object>> collection = collection(raw);
+      if (collection != null) {
+        return collection(decoder(arguments[0]), collection);
+      }
+      throw new IllegalArgumentException("Cannot bind " + type);
+    }
+    if (type instanceof GenericArrayType) {
+      Type component = ((GenericArrayType) type).getGenericComponentType();
+      return array(rawClass(component), decoder(component));
+    }
+    if (type instanceof WildcardType) {
+      return decoder(((WildcardType) type).getUpperBounds()[0]);
+    }
+    if (type instanceof TypeVariable) {
+      return TREE; // Unresolved type parameters get the tree
+    }
+    throw new IllegalArgumentException("Cannot bind " + type);
+  }
+
+  private static Decoder create(Class<?> type) {
+    if (type == String.class) {
+      return STRING;
+    } else if (type == boolean.class || type == Boolean.class) {
+      return BOOLEAN;
+    } else if (type == long.class || type == Long.class) {
+      return LONG;
+    } else if (type == int.class || type == Integer.class) {
+      return INT;
+    } else if (type == short.class || type == Short.class) {
+      return SHORT;
+    } else if (type == byte.class || type == Byte.class) {
+      return BYTE;
+    } else if (type == double.class || type == Double.class) {
+      return DOUBLE;
+    } else if (type == float.class || type == Float.class) {
+      return FLOAT;
+    } else if (type == char.class || type == Character.class) {
+      return CHAR;
+    } else if (type == BigInteger.class) {
+      return BIG_INTEGER;
+    } else if (type == BigDecimal.class) {
+      return BIG_DECIMAL;
+    } else if (type == Number.class) {
+      return NUMBER;
+    } else if (type == Object.class) {
+      return TREE;
+    } else if (type.isEnum()) {
+      return enumeration(type);
+    } else if (type.isArray()) {
+      return array(type.getComponentType(), decoder(type.getComponentType()));
+    } else if (type == Map.class || type == LinkedHashMap.class) {
+      return map(TREE);
+    } else if (collection(type) != null) {
+      return collection(TREE, collection(type));
+    } else if (type.isRecord()) {
+      return new RecordPlan(type);
+    } else if (type.isPrimitive() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+        || type.getName().startsWith("java.")) {
+      throw new IllegalArgumentException("Cannot bind " + type.getName());
+    }
+    return new ClassPlan(type);
+  }
+
+  private static Supplier<Collection<Object>> collection(Class<?> type) {
+    if (type == List.class || type == Collection.class || type == Iterable.class || type == ArrayList.class) {
+      return ArrayList::new;
+    } else if (type == Set.class || type == LinkedHashSet.class) {
+      return LinkedHashSet::new;
+    }
+    return null;
+  }
+
+  private static Decoder collection(Decoder elements, Supplier<Collection<Object>> factory) {
+    return parser -> {
+      check(parser, JsonEvent.START_ARRAY, Collection.class);
+      Collection<Object> collection = factory.get();
+      while (parser.next() != JsonEvent.END_ARRAY) {
+        collection.add(parser.currentEvent() == JsonEvent.VALUE_NULL ? null : elements.decode(parser));
+      }
+      return collection;
+    };
+  }
+
+  private static Decoder map(Decoder values) {
+    return parser -> {
+      check(parser, JsonEvent.START_OBJECT, Map.class);
+      Map<String, Object> map = new LinkedHashMap<>();
+      while (parser.next() == JsonEvent.FIELD_NAME) {
+        String key = parser.getText();
+        parser.next();
+        map.put(key, parser.currentEvent() == JsonEvent.VALUE_NULL ? null : values.decode(parser));
+      }
+      return map;
+    };
+  }
+
+  private static Decoder array(Class<?> component, Decoder elements) {
+    return parser -> {
+      check(parser, JsonEvent.START_ARRAY, component.arrayType());
+      List<Object> list = new ArrayList<>();
+      while (parser.next() != JsonEvent.END_ARRAY) {
+        if (parser.currentEvent() == JsonEvent.VALUE_NULL) {
+          if (component.isPrimitive()) {
+            throw new IllegalArgumentException("Cannot bind null to an element of " + component.getName() + "[]");
+          }
+          list.add(null);
+        } else {
+          list.add(elements.decode(parser));
+        }
+      }
+      Object array = Array.newInstance(component, list.size());
+      for (int i = 0; i < list.size(); i++) {
+        Array.set(array, i, list.get(i));
+      }
+      return array;
+    };
+  }
+
+  private static Decoder enumeration(Class<?> type) {
+    Map<String, Object> constants = new HashMap<>();
+    for (Object constant : type.getEnumConstants()) {
+      constants.put(((Enum<?>) constant).name(), constant);
+    }
+    return parser -> {
+      check(parser, JsonEvent.VALUE_STRING, type);
+      String name = parser.getText();
+      Object constant = constants.get(name);
+      if (constant == null) {
+        throw new IllegalArgumentException("No constant " + name + " in " + type.getName());
+      }
+      return constant;
+    };
+  }
+
+  private static long integer(Utf8JsonParser parser, long min, long max, Class<?> type) {
+    check(parser, JsonEvent.VALUE_NUMBER, type);
+    long value;
+    try {
+      value = parser.getLong();
+    } catch (IllegalStateException e) {
+      throw new IllegalArgumentException("Cannot bind " + parser.getText() + " to " + type.getName(), e);
+    }
+    if (value < min || value > max) {
+      throw new IllegalArgumentException(value + " does not fit " + type.getName());
+    }
+    return value;
+  }
+
+  private static void check(Utf8JsonParser parser, JsonEvent expected, Class<?> type) {
+    if (parser.currentEvent() != expected) {
+      throw mismatch(parser, type);
+    }
+  }
+
+  private static IllegalArgumentException mismatch(Utf8JsonParser parser, Class<?> type) {
+    return new IllegalArgumentException("Cannot bind " + parser.currentEvent() + " to " + type.getTypeName());
+  }
+
+  private static Class<?> rawClass(Type type) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    } else if (type instanceof ParameterizedType) {
+      return (Class<?>) ((ParameterizedType) type).getRawType();
+    } else if (type instanceof GenericArrayType) {
+      return rawClass(((GenericArrayType) type).getGenericComponentType()).arrayType();
+    }
+    return Object.class;
+  }
+
+  private static MethodHandles.Lookup lookup(Class<?> type) {
+    try {
+      return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Cannot bind " + type.getName() + ": not accessible", e);
+    }
+  }
+
+  /**
+   * Fields by name, decoded in whatever order they come. The field decoders are made on first use,
+   * so that a type can contain itself (a tree node with a list of nodes, say).
+   */
+  private abstract static class ObjectPlan implements Decoder {
+    final Class<?> type;
+    private final String[] names;
+    private final Type[] types;
+    private final boolean[] primitive;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    // Shared across threads through the ClassValue; filled before it is published
+    private volatile Decoder[] decoders;
+
+    ObjectPlan(Class<?> type, String[] names, Type[] types) {
+      this.type = type;
+      this.names = names;
+      this.types = types;
+      this.primitive = new boolean[names.length];
+      for (int field = 0; field < names.length; field++) {
+        indexes.put(names[field], field);
+        primitive[field] = types[field] instanceof Class && ((Class<?>) types[field]).isPrimitive();
+      }
+    }
+
+    // The object under construction, given each field, then finished
+    abstract Object start();
+
+    abstract void set(Object target, int field, Object value);
+
+    abstract Object finish(Object target);
+
+    @Override
+    public Object decode(Utf8JsonParser parser) {
+      check(parser, JsonEvent.START_OBJECT, type);
+      Decoder[] fieldDecoders = decoders();
+      Object target = start();
+      int expected = 0;
+      while (parser.next() == JsonEvent.FIELD_NAME) {
+        int field = indexOf(parser.getText(), expected);
+        parser.next();
+        if (field < 0) {
+          parser.skipChildren();
+          continue;
+        }
+        if (parser.currentEvent() == JsonEvent.VALUE_NULL) {
+          if (primitive[field]) {
+            throw new IllegalArgumentException("Cannot bind null to " + type.getName() + "." + names[field]);
+          }
+          set(target, field, null);
+        } else {
+          set(target, field, fieldDecoders[field].decode(parser));
+        }
+        expected = field + 1;
+      }
+      return finish(target);
+    }
+
+    // Fields usually come in declaration order, so the one after the last is tried first
+    private int indexOf(String name, int expected) {
+      if (expected < names.length && names[expected].equals(name)) {
+        return expected;
+      }
+      Integer field = indexes.get(name);
+      return field == null ? -1 : field;
+    }
+
+    private Decoder[] decoders() {
+      Decoder[] fieldDecoders = decoders;
+      if (fieldDecoders == null) {
+        fieldDecoders = new Decoder[types.length];
+        for (int field = 0; field < types.length; field++) {
+          fieldDecoders[field] = decoder(types[field]);
+        }
+        decoders = fieldDecoders;
+      }
+      return fieldDecoders;
+    }
+  }
+
+  // Gathers the components and calls the canonical constructor once they are all read
+  private static final class RecordPlan extends ObjectPlan {
+    private final MethodHandle constructor;
+    // Missing components: zero for primitives, null otherwise
+    private final Object[] defaults;
+
+    RecordPlan(Class<?> type) {
+      this(type, type.getRecordComponents());
+    }
+
+    private RecordPlan(Class<?> type, RecordComponent[] components) {
+      super(type, names(components), genericTypes(components));
+      Class<?>[] parameters = new Class<?>[components.length];
+      defaults = new Object[components.length];
+      for (int i = 0; i < components.length; i++) {
+        parameters[i] = components[i].getType();
+        if (parameters[i].isPrimitive()) {
+          defaults[i] = Array.get(Array.newInstance(parameters[i], 1), 0);
+        }
+      }
+      try {
+        constructor = lookup(type).findConstructor(type, MethodType.methodType(void.class, parameters))
+            .asSpreader(Object[].class, components.length)
+            .asType(MethodType.methodType(Object.class, Object[].class));
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException("Cannot bind " + type.getName() + ": no canonical constructor", e);
+      }
+    }
+
+    private static String[] names(RecordComponent[] components) {
+      String[] names = new String[components.length];
+      for (int i = 0; i < components.length; i++) {
+        names[i] = components[i].getName();
+      }
+      return names;
+    }
+
+    private static Type[] genericTypes(RecordComponent[] components) {
+      Type[] types = new Type[components.length];
+      for (int i = 0; i < components.length; i++) {
+        types[i] = components[i].getGenericType();
+      }
+      return types;
+    }
+
+    @Override
+    Object start() {
+      return defaults.clone();
+    }
+
+    @Override
+    void set(Object target, int field, Object value) {
+      ((Object[]) target)[field] = value;
+    }
+
+    @Override
+    Object finish(Object target) {
+      try {
+        return constructor.invokeExact((Object[]) target);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException("Cannot construct " + type.getName(), e);
+      }
+    }
+  }
+
+  // Creates the object first and sets each field as it is read
+  private static final class ClassPlan extends ObjectPlan {
+    private final MethodHandle constructor;
+    // (Object target, Object value) void, from each field's VarHandle
+    private final MethodHandle[] setters;
+
+    ClassPlan(Class<?> type) {
+      this(type, fields(type));
+    }
+
+    private ClassPlan(Class<?> type, List<Field> fields) {
+      super(type, fields.stream().map(Field::getName).toArray(String[]::new),
+          fields.stream().map(Field::getGenericType).toArray(Type[]::new));
+      MethodHandles.Lookup lookup = lookup(type);
+      try {
+        constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+            .asType(MethodType.methodType(Object.class));
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException("Cannot bind " + type.getName() + ": no constructor without arguments", e);
+      }
+      setters = new MethodHandle[fields.size()];
+      for (int i = 0; i < setters.length; i++) {
+        try {
+          VarHandle field = lookup(fields.get(i).getDeclaringClass()).unreflectVarHandle(fields.get(i));
+          setters[i] = field.toMethodHandle(VarHandle.AccessMode.SET)
+              .asType(MethodType.methodType(void.class, Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+          throw new IllegalArgumentException("Cannot bind " + fields.get(i), e);
+        }
+      }
+    }
+
+    // Instance fields that can be set, the superclass's first; a name declared twice keeps the subclass's
+    private static List<Field> fields(Class<?> type) {
+      Map<String, Field> fields = new LinkedHashMap<>();
+      List<Class<?>> hierarchy = new ArrayList<>();
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        hierarchy.add(0, c);
+      }
+      for (Class<?> c : hierarchy) {
+        for (Field field : c.getDeclaredFields()) {
+          int modifiers = field.getModifiers();
+          if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !Modifier.isFinal(modifiers)
+              && !field.isSynthetic()) {
+            fields.remove(field.getName());
+            fields.put(field.getName(), field);
+          }
+        }
+      }
+      return new ArrayList<>(fields.values());
+    }
+
+    @Override
+    Object start() {
+      try {
+        return constructor.invokeExact();
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException("Cannot construct " + type.getName(), e);
+      }
+    }
+
+    @Override
+    void set(Object target, int field, Object value) {
+      try {
+        setters[field].invokeExact(target, value);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException("Cannot set a field of " + type.getName(), e);
+      }
+    }
+
+    @Override
+    Object finish(Object target) {
+      return target;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package org.example;
+
+// What JsonPullParser.next() has just read
+public enum JsonEvent {
+  START_OBJECT,
+  END_OBJECT,
+  START_ARRAY,
+  END_ARRAY,
+  FIELD_NAME,
+  VALUE_STRING,
+  VALUE_NUMBER,
+  VALUE_TRUE,
+  VALUE_FALSE,
+  VALUE_NULL
+}
@@ -0,0 +1,219 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What {@link JsonPullParser} and {@link Utf8JsonParser} share: the stack of open objects and
+ * arrays, the comma and colon rules between their elements, skipping and building trees. Subclasses
+ * only tokenize, from characters or from bytes.
+ */
+abstract class JsonEventParser {
+
+  private static final byte OBJECT = 0;
+  private static final byte ARRAY = 1;
+
+  NumberPolicy numberPolicy = NumberPolicy.ALWAYS_BIG;
+  JsonEvent current;
+  // One entry per open object or array
+  private byte[] containers = new byte[16];
+  private boolean[] hasElements = new boolean[16];
+  int depth;
+  // In an object, between a field name and its value
+  private boolean expectingValue;
+
+  /** How getNumber and readValue convert numbers; ALWAYS_BIG by default. */
+  public void setNumberPolicy(NumberPolicy numberPolicy) {
+    this.numberPolicy = numberPolicy;
+  }
+
+  /** Reads the next token; null at the end of the input. */
+  public JsonEvent next() {
+    return current = read(false);
+  }
+
+  public JsonEvent currentEvent() {
+    return current;
+  }
+
+  /** Open objects and arrays around the current position; a START event counts its own. */
+  public int depth() {
+    return depth;
+  }
+
+  /** The field name, string value or number text of the current event; a repeated field name is the same String. */
+  public abstract String getText();
+
+  public abstract Object getNumber();
+
+  /** The current number, which must be an integer that fits a long. */
+  public abstract long getLong();
+
+  /** The current number, correctly rounded to a double. */
+  public abstract double getDouble();
+
+  public boolean getBoolean() {
+    if (current != JsonEvent.VALUE_TRUE && current != JsonEvent.VALUE_FALSE) {
+      throw new IllegalStateException("Not a boolean: " + current);
+    }
+    return current == JsonEvent.VALUE_TRUE;
+  }
+
+  /**
+   * At START_OBJECT or START_ARRAY, moves to the matching END event without keeping anything from in
+   * between; at any other event it does nothing.
+   */
+  public void skipChildren() {
+    if (current != JsonEvent.START_OBJECT && current != JsonEvent.START_ARRAY) {
+      return;
+    }
+    int end = depth - 1;
+    JsonEvent event;
+    do {
+      event = read(true);
+      if (event == null) {
+        throw new IllegalArgumentException("Unexpected end of JSON input.");
+      }
+    } while (depth > end);
+    current = event;
+  }
+
+  /**
+   * The value starting at the current event as a tree of maps, lists and values, as SimpleJsonParser
+   * builds it; the parser is left on the value's last event. At FIELD_NAME, reads the field's value.
+   */
+  public Object readValue() {
+    return readTree(false);
+  }
+
+  // compact is passed down to readObject, for parsers that can build records instead of maps
+  Object readTree(boolean compact) {
+    if (current == JsonEvent.FIELD_NAME) {
+      next();
+    }
+    if (current == null) {
+      throw new IllegalStateException("No value to read");
+    }
+    switch (current) {
+      case START_OBJECT:
+        return readObject(compact);
+      case START_ARRAY: {
+        List<Object> list = new ArrayList<>();
+        while (next() != JsonEvent.END_ARRAY) {
+          list.add(readTree(compact));
+        }
+        return list;
+      }
+      case VALUE_STRING:
+        return getText();
+      case VALUE_NUMBER:
+        return getNumber();
+      case VALUE_TRUE:
+      case VALUE_FALSE:
+        return getBoolean();
+      case VALUE_NULL:
+        return null;
+      default:
+        throw new IllegalStateException("No value starts at " + current);
+    }
+  }
+
+  // From START_OBJECT to its END_OBJECT
+  Object readObject(boolean compact) {
+    Map<String, Object> map = new LinkedHashMap<>();
+    while (next() == JsonEvent.FIELD_NAME) {
+      String key = getText();
+      next();
+      map.put(key, readTree(compact));
+    }
+    return map;
+  }
+
+  // The tokenizer: whitespace, single characters and the tokens that are not containers
+
+  abstract void skipWhitespace();
+
+  // Whether anything but whitespace is left, called between top-level values
+  abstract boolean hasInput();
+
+  // The next character without consuming it; throws at the end of the input
+  abstract int peek();
+
+  abstract void advance();
+
+  abstract void expect(char expected);
+
+  // From the opening quote to just after the closing one; when skipping, the name is checked but need not be kept
+  abstract void readFieldName(boolean skipping);
+
+  // A string, number, true, false or null starting with next, or an exception
+  abstract JsonEvent readScalar(int next, boolean skipping);
+
+  private JsonEvent read(boolean skipping) {
+    skipWhitespace();
+    if (depth == 0) {
+      return hasInput() ? readToken(skipping) : null;
+    }
+    if (containers[depth - 1] == OBJECT) {
+      if (expectingValue) {
+        expectingValue = false;
+        return readToken(skipping);
+      }
+      if (peek() == '}') {
+        advance();
+        depth--;
+        return JsonEvent.END_OBJECT;
+      }
+      startElement();
+      readFieldName(skipping);
+      skipWhitespace();
+      expect(':');
+      expectingValue = true;
+      return JsonEvent.FIELD_NAME;
+    }
+    if (peek() == ']') {
+      advance();
+      depth--;
+      return JsonEvent.END_ARRAY;
+    }
+    startElement();
+    return readToken(skipping);
+  }
+
+  // Every element of an object or array but the first comes after a comma
+  private void startElement() {
+    if (hasElements[depth - 1]) {
+      expect(',');
+      skipWhitespace();
+    }
+    hasElements[depth - 1] = true;
+  }
+
+  private JsonEvent readToken(boolean skipping) {
+    skipWhitespace();
+    int next = peek();
+    if (next == '{') {
+      advance();
+      push(OBJECT);
+      return JsonEvent.START_OBJECT;
+    } else if (next == '[') {
+      advance();
+      push(ARRAY);
+      return JsonEvent.START_ARRAY;
+    }
+    return readScalar(next, skipping);
+  }
+
+  private void push(byte container) {
+    if (depth == containers.length) {
+      containers = Arrays.copyOf(containers, 2 * depth);
+      hasElements = Arrays.copyOf(hasElements, 2 * depth);
+    }
+    containers[depth] = container;
+    hasElements[depth] = false;
+    depth++;
+  }
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+// A JSON lines export, one flat object per line, see MappedRowFile
+class JsonLinesRowFile extends MappedRowFile {
+
+  JsonLinesRowFile(Path path, int window) {
+    super(path, window);
+  }
+
+  @Override
+  Cursor newCursor(long from, long to) {
+    return new JsonCursor(this, from, to);
+  }
+
+  private static class JsonCursor extends Cursor {
+    // Raw key bytes of the current line
+    private int[] keyStarts = new int[16];
+    private int[] keyLengths = new int[16];
+    private boolean[] keysEscaped = new boolean[16];
+    // Keys of the last schema seen, as raw bytes; lines usually repeat it, so names and order are kept
+    private byte[][] schema = new byte[0][];
+
+    JsonCursor(JsonLinesRowFile file, long from, long to) {
+      super(file, from, to);
+    }
+
+    @Override
+    void parse(int from, int to, long rowPosition) {
+      int i = skipWhitespace(from, to);
+      expect(i, to, '{', rowPosition);
+      i = skipWhitespace(i + 1, to);
+      if (i < to && buffer.get(i) == '}') {
+        i++;
+      } else {
+        while (true) {
+          expect(i, to, '"', rowPosition);
+          int keyEnd = endOfString(i + 1, to, rowPosition);
+          addKey(i + 1, keyEnd - i - 1, escapes(i + 1, keyEnd));
+          i = skipWhitespace(keyEnd + 1, to);
+          expect(i, to, ':', rowPosition);
+          i = skipWhitespace(i + 1, to);
+          i = parseValue(i, to, rowPosition);
+          i = skipWhitespace(i, to);
+          if (i < to && buffer.get(i) == ',') {
+            i = skipWhitespace(i + 1, to);
+            continue;
+          }
+          expect(i, to, '}', rowPosition);
+          i++;
+          break;
+        }
+      }
+      if (skipWhitespace(i, to) != to) {
+        throw new IllegalArgumentException("Unexpected characters after the object in the row at byte " + rowPosition);
+      }
+      if (!sameSchema()) {
+        newSchema();
+      }
+    }
+
+    @Override
+    int unescape(int field) {
+      return unescape(starts[field], lengths[field]);
+    }
+
+    private int parseValue(int i, int to, long rowPosition) {
+      if (i >= to) {
+        throw new IllegalArgumentException("Missing value in the row at byte " + rowPosition);
+      }
+      byte first = buffer.get(i);
+      if (first == '"') {
+        int end = endOfString(i + 1, to, rowPosition);
+        addField(i + 1, end - i - 1, escapes(i + 1, end) ? ESCAPED : PLAIN);
+        return end + 1;
+      }
+      if (first == '{' || first == '[') {
+        throw new IllegalArgumentException("Nested values are not supported, in the row at byte " + rowPosition);
+      }
+      // A number, true, false or null: kept as its text
+      int start = i;
+      while (i < to && !isDelimiter(buffer.get(i))) {
+        i++;
+      }
+      if (i == start) {
+        throw new IllegalArgumentException("Missing value in the row at byte " + rowPosition);
+      }
+      boolean isNull = i - start == 4 && buffer.get(start) == 'n' && buffer.get(start + 1) == 'u'
+          && buffer.get(start + 2) == 'l' && buffer.get(start + 3) == 'l';
+      addField(start, i - start, isNull ? NULL : PLAIN);
+      return i;
+    }
+
+    private void addKey(int start, int length, boolean escaped) {
+      int key = fields; // The value's field index, added next
+      if (key == keyStarts.length) {
+        keyStarts = Arrays.copyOf(keyStarts, 2 * key);
+        keyLengths = Arrays.copyOf(keyLengths, 2 * key);
+        keysEscaped = Arrays.copyOf(keysEscaped, 2 * key);
+      }
+      keyStarts[key] = start;
+      keyLengths[key] = length;
+      keysEscaped[key] = escaped;
+    }
+
+    private boolean sameSchema() {
+      if (schema.length != fields) {
+        return false;
+      }
+      for (int field = 0; field < fields; field++) {
+        byte[] key = schema[field];
+        if (key.length != keyLengths[field]) {
+          return false;
+        }
+        for (int i = 0, start = keyStarts[field]; i < key.length; i++) {
+          if (key[i] != buffer.get(start + i)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    private void newSchema() {
+      schema = new byte[fields][];
+      String[] keys = new String[fields];
+      for (int field = 0; field < fields; field++) {
+        schema[field] = new byte[keyLengths[field]];
+        buffer.get(keyStarts[field], schema[field]);
+        keys[field] = keysEscaped[field]
+            ? new String(scratch, 0, unescape(keyStarts[field], keyLengths[field]), StandardCharsets.UTF_8)
+            : new String(schema[field], StandardCharsets.UTF_8);
+      }
+      names = keys;
+      order = IntStream.range(0, fields).boxed()
+          .sorted(Comparator.comparing(field -> keys[field])).mapToInt(Integer::intValue).toArray();
+    }
+
+    // Position of the closing quote of a string starting at from
+    private int endOfString(int from, int to, long rowPosition) {
+      for (int i = from; i < to; i++) {
+        byte b = buffer.get(i);
+        if (b == '"') {
+          return i;
+        }
+        if (b == '\\') {
+          i++;
+        }
+      }
+      throw new IllegalArgumentException("Unterminated string in the row at byte " + rowPosition);
+    }
+
+    private boolean escapes(int from, int to) {
+      for (int i = from; i < to; i++) {
+        if (buffer.get(i) == '\\') {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private int unescape(int start, int length) {
+      ensureScratch(length);
+      return JsonString.unescape(buffer, start, length, scratch);
+    }
+
+    private int skipWhitespace(int i, int to) {
+      while (i < to && isWhitespace(buffer.get(i))) {
+        i++;
+      }
+      return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDelimiter(byte b) {
+      return b == ',' || b == '}' || isWhitespace(b);
+    }
+
+    private void expect(int i, int to, char c, long rowPosition) {
+      if (i >= to || buffer.get(i) != c) {
+        throw new IllegalArgumentException("Expected '" + c + "' in the row at byte " + rowPosition);
+      }
+    }
+  }
+}
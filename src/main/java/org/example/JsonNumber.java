@@ -0,0 +1,169 @@
+package org.example;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * The value of a JSON number, accumulated digit by digit while the parser scans it, so the common
+ * case never builds a String: up to 18 significant digits are kept in a long, and a decimal with a
+ * significand under 2^53 and a power of ten within ±22 converts to a correctly rounded double with
+ * one multiplication or division. Anything else is converted from the number's text.
+ */
+final class JsonNumber {
+
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+  private static final int MAX_DIGITS = 18;
+  // Decimal digits that always read back the same from a double
+  private static final int EXACT_DOUBLE_DIGITS = 15;
+  private static final MathContext EXACT_DOUBLE = new MathContext(EXACT_DOUBLE_DIGITS);
+  private static final int MAX_EXPONENT = 100_000;
+
+  private boolean negative;
+  // Has a fraction or an exponent
+  private boolean decimal;
+  private long significand;
+  private int digits;
+  private boolean overflow;
+  // Digits of the significand after the point
+  private int scale;
+  private int exponent;
+  private boolean negativeExponent;
+
+  void reset() {
+    negative = false;
+    decimal = false;
+    significand = 0;
+    digits = 0;
+    overflow = false;
+    scale = 0;
+    exponent = 0;
+    negativeExponent = false;
+  }
+
+  void negate() {
+    negative = true;
+  }
+
+  void startFraction() {
+    decimal = true;
+  }
+
+  void addDigit(int digit, boolean fraction) {
+    if (significand == 0 && digit == 0) {
+      // Leading zeros only move the point
+      if (fraction) {
+        scale++;
+      }
+      return;
+    }
+    if (digits == MAX_DIGITS) {
+      overflow = true;
+      return;
+    }
+    significand = significand * 10 + digit;
+    digits++;
+    if (fraction) {
+      scale++;
+    }
+  }
+
+  void negateExponent() {
+    negativeExponent = true;
+  }
+
+  void addExponentDigit(int digit) {
+    decimal = true;
+    if (exponent < MAX_EXPONENT) {
+      exponent = exponent * 10 + digit;
+    }
+  }
+
+  /** The number under the policy, or null if it has to be converted from its text by {@link #parse}. */
+  Object toNumber(NumberPolicy policy) {
+    if (overflow || exponent >= MAX_EXPONENT) {
+      return null;
+    }
+    long value = negative ? -significand : significand;
+    if (!decimal) {
+      switch (policy) {
+        case ALWAYS_BIG:
+          return BigInteger.valueOf(value);
+        case LOSSLESS_NARROW:
+          return (int) value == value ? (Object) (int) value : (Object) value;
+        default:
+          return negative && value == 0 ? -0.0 : (double) value;
+      }
+    }
+    if (policy == NumberPolicy.ALWAYS_BIG) {
+      return BigDecimal.valueOf(value, scale - signedExponent());
+    }
+    if (policy == NumberPolicy.LOSSLESS_NARROW && digits > EXACT_DOUBLE_DIGITS) {
+      return null;
+    }
+    double fast = fastDouble();
+    return Double.isNaN(fast) ? null : fast;
+  }
+
+  // A fraction or exponent, or too many digits, leaves the long to parseLong
+  boolean isLong() {
+    return !decimal && !overflow;
+  }
+
+  long longValue() {
+    return negative ? -significand : significand;
+  }
+
+  /** The number as a correctly rounded double, or NaN if it has to be converted from its text. */
+  double doubleValue() {
+    return overflow || exponent >= MAX_EXPONENT ? Double.NaN : fastDouble();
+  }
+
+  static long parseLong(String text) {
+    try {
+      return new BigDecimal(text).longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalStateException("Not a long: " + text, e);
+    }
+  }
+
+  /** Converts a number's text under the policy, for what {@link #toNumber} leaves. */
+  static Object parse(String text, NumberPolicy policy) {
+    boolean integer = text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0;
+    if (policy == NumberPolicy.DOUBLE) {
+      return Double.parseDouble(text);
+    }
+    if (integer) {
+      BigInteger value = new BigInteger(text);
+      if (policy == NumberPolicy.ALWAYS_BIG || value.bitLength() >= Long.SIZE) {
+        return value;
+      }
+      return value.bitLength() < Integer.SIZE ? (Object) value.intValue() : (Object) value.longValue();
+    }
+    BigDecimal value = new BigDecimal(text);
+    if (policy == NumberPolicy.LOSSLESS_NARROW && value.stripTrailingZeros().precision() <= EXACT_DOUBLE_DIGITS) {
+      // Reads back the same unless it overflows or underflows
+      double narrow = value.doubleValue();
+      if (Double.isFinite(narrow) && new BigDecimal(narrow).round(EXACT_DOUBLE).compareTo(value) == 0) {
+        return narrow;
+      }
+    }
+    return value;
+  }
+
+  private int signedExponent() {
+    return negativeExponent ? -exponent : exponent;
+  }
+
+  // Exact significand times an exact power of ten rounds once, so the result is correctly rounded; NaN if out of range
+  private double fastDouble() {
+    int power = signedExponent() - scale;
+    if (significand > 1L << 53 || power < -22 || power > 22) {
+      return Double.NaN;
+    }
+    double value = power < 0 ? significand / POWERS_OF_TEN[-power] : significand * POWERS_OF_TEN[power];
+    return negative ? -value : value;
+  }
+}
@@ -0,0 +1,135 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads JSON as a stream of {@link JsonEvent}s instead of building the whole tree, so a document of
+ * any size is parsed in constant memory: the input goes through a fixed-size buffer, and the parser
+ * keeps only the text of the current token and one entry per open object or array.
+ *
+ * <pre>
+ * parser.next(); // START_ARRAY
+ * while (parser.next() == JsonEvent.START_OBJECT) {
+ *   Map&lt;?, ?&gt; record = (Map&lt;?, ?&gt;) parser.readValue();
+ * }
+ * </pre>
+ *
+ * Values of interest can be built as trees one at a time with {@link #readValue()}, and the rest
+ * passed over with {@link #skipChildren()}. Several top-level values in a row, such as JSON lines,
+ * are read one after the other. Numbers come back as BigInteger or BigDecimal, like
+ * {@link SimpleJsonParser}, unless another {@link NumberPolicy} is set; {@link #getLong()} and
+ * {@link #getDouble()} read them without allocating.
+ */
+public class JsonPullParser extends JsonEventParser implements Closeable {
+
+  private final Reader source;
+  private final JsonReader reader;
+  private final StringBuilder text = new StringBuilder();
+
+  public JsonPullParser(Reader source) {
+    this.source = source;
+    this.reader = new JsonReader(source);
+  }
+
+  public JsonPullParser(InputStream in) {
+    this(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public String getText() {
+    if (current != JsonEvent.FIELD_NAME && current != JsonEvent.VALUE_STRING && current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("No text for " + current);
+    }
+    return current == JsonEvent.FIELD_NAME ? reader.intern(text) : text.toString();
+  }
+
+  @Override
+  public Object getNumber() {
+    if (current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("Not a number: " + current);
+    }
+    return reader.toNumber(numberPolicy, text);
+  }
+
+  @Override
+  public long getLong() {
+    if (current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("Not a number: " + current);
+    }
+    return reader.toLong(text);
+  }
+
+  @Override
+  public double getDouble() {
+    if (current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("Not a number: " + current);
+    }
+    return reader.toDouble(text);
+  }
+
+  @Override
+  public void close() {
+    try {
+      source.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  void skipWhitespace() {
+    reader.skipWhitespace();
+  }
+
+  @Override
+  boolean hasInput() {
+    return reader.hasNext();
+  }
+
+  @Override
+  int peek() {
+    return reader.peek();
+  }
+
+  @Override
+  void advance() {
+    reader.next();
+  }
+
+  @Override
+  void expect(char expected) {
+    reader.expect(expected);
+  }
+
+  // When skipping, string and number text is checked but not kept
+  @Override
+  void readFieldName(boolean skipping) {
+    text.setLength(0);
+    reader.readString(skipping ? null : text);
+  }
+
+  @Override
+  JsonEvent readScalar(int next, boolean skipping) {
+    text.setLength(0);
+    if (next == '"') {
+      reader.readString(skipping ? null : text);
+      return JsonEvent.VALUE_STRING;
+    } else if (Character.isDigit(next) || next == '-') {
+      reader.readNumber(text);
+      return JsonEvent.VALUE_NUMBER;
+    } else if (next == 't' || next == 'f') {
+      return reader.readBoolean() ? JsonEvent.VALUE_TRUE : JsonEvent.VALUE_FALSE;
+    } else if (next == 'n') {
+      reader.readNull();
+      return JsonEvent.VALUE_NULL;
+    } else {
+      throw new IllegalArgumentException("Unexpected character: " + (char) next);
+    }
+  }
+}
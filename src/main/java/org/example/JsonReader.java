@@ -0,0 +1,229 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+
+// Character level reading of JSON from a Reader through a fixed-size buffer
+class JsonReader {
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Reader in;
+  private final JsonSymbolTable symbols = new JsonSymbolTable();
+  private final StringBuilder key = new StringBuilder();
+  private final JsonNumber number = new JsonNumber();
+  private final StringBuilder numberText = new StringBuilder();
+  private final char[] buffer;
+  private int index;
+  private int limit;
+
+  JsonReader(String json) {
+    this(new StringReader(json));
+  }
+
+  JsonReader(Reader in) {
+    this(in, BUFFER_SIZE);
+  }
+
+  JsonReader(Reader in, int bufferSize) {
+    this.in = in;
+    this.buffer = new char[bufferSize];
+  }
+
+  boolean hasNext() {
+    return index < limit || fill();
+  }
+
+  char next() {
+    char c = peek();
+    index++;
+    return c;
+  }
+
+  char peek() {
+    if (!hasNext()) {
+      throw new IllegalArgumentException("Unexpected end of JSON input.");
+    }
+    return buffer[index];
+  }
+
+  void expect(char expected) {
+    char actual = next();
+    if (actual != expected) {
+      throw new IllegalArgumentException("Expected '" + expected + "' but got '" + actual + "'");
+    }
+  }
+
+  void skipWhitespace() {
+    while (hasNext() && Character.isWhitespace(buffer[index])) {
+      index++;
+    }
+  }
+
+  String readString() {
+    StringBuilder sb = new StringBuilder();
+    readString(sb);
+    return sb.toString();
+  }
+
+  // An object key, the same String instance each time the key repeats
+  String readKey() {
+    key.setLength(0);
+    readString(key);
+    return symbols.intern(key);
+  }
+
+  String intern(CharSequence chars) {
+    return symbols.intern(chars);
+  }
+
+  // Appends the string's characters to sb, or only checks them if sb is null
+  void readString(StringBuilder sb) {
+    expect('"');
+    while (hasNext()) {
+      char c = next();
+      if (c == '"') {
+        return;
+      } else if (c == '\\') {
+        char escaped = next();
+        char unescaped;
+        switch (escaped) {
+          case '"': unescaped = '"'; break;
+          case '\\': unescaped = '\\'; break;
+          case '/': unescaped = '/'; break;
+          case 'b': unescaped = '\b'; break;
+          case 'f': unescaped = '\f'; break;
+          case 'n': unescaped = '\n'; break;
+          case 'r': unescaped = '\r'; break;
+          case 't': unescaped = '\t'; break;
+          default: throw new IllegalArgumentException("Invalid escape sequence: \\" + escaped);
+        }
+        if (sb != null) {
+          sb.append(unescaped);
+        }
+      } else if (sb != null) {
+        sb.append(c);
+      }
+    }
+    throw new IllegalArgumentException("Unterminated string.");
+  }
+
+  Object readNumber(NumberPolicy policy) {
+    numberText.setLength(0);
+    readNumber(numberText);
+    return toNumber(policy, numberText);
+  }
+
+  // Reads a number's value into the last number and appends its text to sb
+  void readNumber(StringBuilder sb) {
+    number.reset();
+    if (peek() == '-') {
+      sb.append(next());
+      number.negate();
+    }
+    if (readDigits(sb, false) == 0) {
+      throw invalidNumber(sb);
+    }
+    if (hasNext() && buffer[index] == '.') {
+      sb.append(next());
+      number.startFraction();
+      if (readDigits(sb, true) == 0) {
+        throw invalidNumber(sb);
+      }
+    }
+    if (hasNext() && (buffer[index] == 'e' || buffer[index] == 'E')) {
+      sb.append(next());
+      if (hasNext() && (buffer[index] == '+' || buffer[index] == '-')) {
+        if (next() == '-') {
+          number.negateExponent();
+        }
+        sb.append(buffer[index - 1]);
+      }
+      int digits = 0;
+      while (hasNext() && isDigit(buffer[index])) {
+        char c = next();
+        sb.append(c);
+        number.addExponentDigit(c - '0');
+        digits++;
+      }
+      if (digits == 0) {
+        throw invalidNumber(sb);
+      }
+    }
+  }
+
+  // The last number read, whose text is in text
+  Object toNumber(NumberPolicy policy, CharSequence text) {
+    Object value = number.toNumber(policy);
+    return value != null ? value : JsonNumber.parse(text.toString(), policy);
+  }
+
+  long toLong(CharSequence text) {
+    return number.isLong() ? number.longValue() : JsonNumber.parseLong(text.toString());
+  }
+
+  double toDouble(CharSequence text) {
+    double value = number.doubleValue();
+    return Double.isNaN(value) ? Double.parseDouble(text.toString()) : value;
+  }
+
+  private int readDigits(StringBuilder sb, boolean fraction) {
+    int digits = 0;
+    while (hasNext() && isDigit(buffer[index])) {
+      char c = next();
+      sb.append(c);
+      number.addDigit(c - '0', fraction);
+      digits++;
+    }
+    return digits;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private IllegalArgumentException invalidNumber(StringBuilder sb) {
+    return new IllegalArgumentException("Invalid number: " + sb + (hasNext() ? String.valueOf(buffer[index]) : ""));
+  }
+
+  Boolean readBoolean() {
+    if (peek() == 't' && readWord("true")) {
+      return true;
+    } else if (peek() == 'f' && readWord("false")) {
+      return false;
+    }
+    throw new IllegalArgumentException("Expected boolean value.");
+  }
+
+  Object readNull() {
+    if (readWord("null")) {
+      return null;
+    }
+    throw new IllegalArgumentException("Expected null value.");
+  }
+
+  private boolean readWord(String word) {
+    for (int i = 0; i < word.length(); i++) {
+      if (!hasNext() || buffer[index] != word.charAt(i)) {
+        return false;
+      }
+      index++;
+    }
+    return true;
+  }
+
+  private boolean fill() {
+    try {
+      int read = in.read(buffer, 0, buffer.length);
+      while (read == 0) {
+        read = in.read(buffer, 0, buffer.length);
+      }
+      index = 0;
+      limit = Math.max(read, 0);
+      return read > 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read JSON input", e);
+    }
+  }
+}
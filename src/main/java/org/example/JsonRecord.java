@@ -0,0 +1,96 @@
+package org.example;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A JSON object from a run of objects with the same keys, as parsed by
+ * {@link SimpleJsonParser#parseCompact}: the keys are held once, in a schema shared by all of them,
+ * and each record keeps only an array of its values. Reads like any Map, in key order, and equals
+ * a LinkedHashMap with the same entries; it cannot be changed.
+ */
+public final class JsonRecord extends AbstractMap<String, Object> {
+
+  private final Schema schema;
+  private final Object[] values;
+
+  JsonRecord(Schema schema, Object[] values) {
+    this.schema = schema;
+    this.values = values;
+  }
+
+  @Override
+  public Object get(Object key) {
+    int index = schema.indexOf(key);
+    return index < 0 ? null : values[index];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return schema.indexOf(key) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<>() {
+          private int index;
+
+          @Override
+          public boolean hasNext() {
+            return index < values.length;
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            if (index == values.length) {
+              throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = new SimpleImmutableEntry<>(schema.keys[index], values[index]);
+            index++;
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return values.length;
+      }
+    };
+  }
+
+  // Keys shared by the records of a run, without duplicates
+  static final class Schema {
+    final String[] keys;
+
+    Schema(String[] keys) {
+      this.keys = keys;
+    }
+
+    int indexOf(Object key) {
+      // Parsed keys are interned, so the identity pass usually finds them
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == key) {
+          return i;
+        }
+      }
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i].equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON string left as its UTF-8 bytes in the parser's input: nothing is decoded or copied until
+ * {@link #toString()} is called, and then only once. {@link #contentEquals(String)} compares ASCII
+ * text without decoding at all. The view stays valid as long as the input is not changed.
+ */
+public final class JsonString implements CharSequence {
+
+  private final ByteBuffer buffer;
+  private final int start;
+  private final int byteLength;
+  private final boolean escaped;
+  private String decoded;
+
+  JsonString(ByteBuffer buffer, int start, int byteLength, boolean escaped) {
+    this.buffer = buffer;
+    this.start = start;
+    this.byteLength = byteLength;
+    this.escaped = escaped;
+  }
+
+  /** Length of the string as it appears in the input, escapes included. */
+  public int byteLength() {
+    return byteLength;
+  }
+
+  public boolean contentEquals(String value) {
+    if (decoded != null || escaped) {
+      return toString().equals(value);
+    }
+    if (value.length() != byteLength) {
+      // Only equal if some of the bytes are multi-byte characters
+      return value.length() < byteLength && toString().equals(value);
+    }
+    for (int i = 0; i < byteLength; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        return toString().equals(value);
+      }
+      if (buffer.get(start + i) != c) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int length() {
+    return toString().length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int from, int to) {
+    return toString().subSequence(from, to);
+  }
+
+  @Override
+  public String toString() {
+    if (decoded == null) {
+      decoded = decode(buffer, start, byteLength, escaped);
+    }
+    return decoded;
+  }
+
+  static String decode(ByteBuffer buffer, int start, int length, boolean escaped) {
+    if (escaped) {
+      byte[] bytes = new byte[length];
+      return new String(bytes, 0, unescape(buffer, start, length, bytes), StandardCharsets.UTF_8);
+    }
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(start, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decodes the escapes of a string body in {@code in} to UTF-8 in {@code out}, returning the
+   * length. The result is never longer than the escaped text.
+   */
+  static int unescape(ByteBuffer in, int start, int length, byte[] out) {
+    int n = 0;
+    for (int i = start, end = start + length; i < end; i++) {
+      byte b = in.get(i);
+      if (b != '\\') {
+        out[n++] = b;
+        continue;
+      }
+      byte escape = in.get(++i);
+      switch (escape) {
+        case '"', '\\', '/' -> out[n++] = escape;
+        case 'b' -> out[n++] = '\b';
+        case 'f' -> out[n++] = '\f';
+        case 'n' -> out[n++] = '\n';
+        case 'r' -> out[n++] = '\r';
+        case 't' -> out[n++] = '\t';
+        case 'u' -> {
+          int c = hex(in, i + 1, end);
+          i += 4;
+          if (Character.isHighSurrogate((char) c) && i + 6 < end && in.get(i + 1) == '\\' && in.get(i + 2) == 'u'
+              && Character.isLowSurrogate((char) hex(in, i + 3, end))) {
+            c = Character.toCodePoint((char) c, (char) hex(in, i + 3, end));
+            i += 6;
+          } else if (Character.isSurrogate((char) c)) {
+            c = '?'; // Unpaired, as String.getBytes encodes it
+          }
+          n = encode(c, out, n);
+        }
+        default -> throw new IllegalArgumentException("Invalid escape sequence: \\" + (char) escape);
+      }
+    }
+    return n;
+  }
+
+  private static int hex(ByteBuffer in, int from, int end) {
+    if (from + 4 > end) {
+      throw new IllegalArgumentException("Truncated \\u escape");
+    }
+    int value = 0;
+    for (int i = from; i < from + 4; i++) {
+      int digit = Character.digit(in.get(i), 16);
+      if (digit < 0) {
+        throw new IllegalArgumentException("Invalid \\u escape");
+      }
+      value = value << 4 | digit;
+    }
+    return value;
+  }
+
+  private static int encode(int codePoint, byte[] out, int n) {
+    if (codePoint < 0x80) {
+      out[n++] = (byte) codePoint;
+    } else if (codePoint < 0x800) {
+      out[n++] = (byte) (0xC0 | codePoint >> 6);
+      out[n++] = (byte) (0x80 | codePoint & 0x3F);
+    } else if (codePoint < 0x10000) {
+      out[n++] = (byte) (0xE0 | codePoint >> 12);
+      out[n++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+      out[n++] = (byte) (0x80 | codePoint & 0x3F);
+    } else {
+      out[n++] = (byte) (0xF0 | codePoint >> 18);
+      out[n++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+      out[n++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+      out[n++] = (byte) (0x80 | codePoint & 0x3F);
+    }
+    return n;
+  }
+}
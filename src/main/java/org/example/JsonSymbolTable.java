@@ -0,0 +1,117 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Canonical Strings for object keys. Records in a large array repeat the same few keys, so each
+ * key is looked up by the hash of its bytes or chars, computed while the key is scanned, and the
+ * String made the first time is handed out again; no String is built on a hit. Past
+ * {@link #MAX_SYMBOLS} keys (objects used as maps from ids, say) new keys are no longer kept.
+ *
+ * <p>A table is used by one parser, from either bytes or chars: the hash is 31 * h + unit over
+ * UTF-8 bytes or UTF-16 chars, which agree only for ASCII keys.
+ */
+final class JsonSymbolTable {
+
+  static final int MAX_SYMBOLS = 4096;
+
+  private int[] hashes = new int[64];
+  private String[] symbols = new String[64];
+  private byte[][] utf8 = new byte[64][];
+  private int size;
+
+  /** The key in buffer[start, start + length), whose bytes hash to {@code hash}; null array reads the buffer. */
+  String intern(byte[] array, ByteBuffer buffer, int start, int length, int hash) {
+    int mask = symbols.length - 1;
+    for (int slot = mix(hash) & mask; symbols[slot] != null; slot = (slot + 1) & mask) {
+      if (hashes[slot] == hash && sameBytes(utf8[slot], array, buffer, start, length)) {
+        return symbols[slot];
+      }
+    }
+    byte[] bytes = new byte[length];
+    if (array != null) {
+      System.arraycopy(array, start, bytes, 0, length);
+    } else {
+      buffer.get(start, bytes);
+    }
+    String symbol = new String(bytes, StandardCharsets.UTF_8);
+    add(hash, symbol, bytes);
+    return symbol;
+  }
+
+  /** The key held in {@code chars}, as String.hashCode would hash it. */
+  String intern(CharSequence chars) {
+    int hash = 0;
+    for (int i = 0, n = chars.length(); i < n; i++) {
+      hash = 31 * hash + chars.charAt(i);
+    }
+    int mask = symbols.length - 1;
+    for (int slot = mix(hash) & mask; symbols[slot] != null; slot = (slot + 1) & mask) {
+      if (hashes[slot] == hash && symbols[slot].contentEquals(chars)) {
+        return symbols[slot];
+      }
+    }
+    String symbol = chars.toString();
+    add(hash, symbol, null);
+    return symbol;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void add(int hash, String symbol, byte[] bytes) {
+    if (size == MAX_SYMBOLS) {
+      return;
+    }
+    if (2 * (size + 1) > symbols.length) {
+      grow();
+    }
+    int mask = symbols.length - 1;
+    int slot = mix(hash) & mask;
+    while (symbols[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    hashes[slot] = hash;
+    symbols[slot] = symbol;
+    utf8[slot] = bytes;
+    size++;
+  }
+
+  private void grow() {
+    int[] oldHashes = hashes;
+    String[] oldSymbols = symbols;
+    byte[][] oldUtf8 = utf8;
+    hashes = new int[2 * oldSymbols.length];
+    symbols = new String[2 * oldSymbols.length];
+    utf8 = new byte[2 * oldSymbols.length][];
+    size = 0;
+    for (int i = 0; i < oldSymbols.length; i++) {
+      if (oldSymbols[i] != null) {
+        add(oldHashes[i], oldSymbols[i], oldUtf8[i]);
+      }
+    }
+  }
+
+  private static boolean sameBytes(byte[] key, byte[] array, ByteBuffer buffer, int start, int length) {
+    if (key == null || key.length != length) {
+      return false;
+    }
+    if (array != null) {
+      return Arrays.equals(key, 0, length, array, start, start + length);
+    }
+    for (int i = 0; i < length; i++) {
+      if (key[i] != buffer.get(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Spreads the polynomial hash, whose low bits alone cluster for keys that differ in their last characters
+  private static int mix(int hash) {
+    return hash ^ hash >>> 16;
+  }
+}
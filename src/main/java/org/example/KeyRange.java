@@ -0,0 +1,9 @@
+package org.example;
+
+// Inclusive range of row keys; a null bound is open
+public record KeyRange(String fromKey, String toKey) {
+
+  public boolean contains(String key) {
+    return (fromKey == null || key.compareTo(fromKey) >= 0) && (toKey == null || key.compareTo(toKey) <= 0);
+  }
+}
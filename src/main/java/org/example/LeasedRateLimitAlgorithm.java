@@ -0,0 +1,149 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces a client's limit across every node sharing a {@link RateLimitStore}. Each node leases
+ * permits from the store in blocks of {@code leaseSize} and spends them locally, so only one call
+ * in roughly leaseSize goes to the store. The store is only called from {@link #prepare}, before
+ * the limiter takes its lock, so a slow round trip holds up the calls of that one client and no
+ * others. Leases expire after {@code leaseTtl} so a node cannot sit on budget another node needs;
+ * expired, penalty-cleared and evicted permits are queued and handed back in one batch by
+ * {@link #reconcile()}, which the limiter runs once per reconcile interval and after every eviction
+ * pass.
+ *
+ * <p>Larger leases mean fewer round trips but more permits stranded on idle nodes, so the shared
+ * limit is never exceeded but may be under-used by up to (nodes - 1) * leaseSize. A node the store
+ * turns down backs off for as long as the store takes to refill a lease, so an over-limit client
+ * does not cost a round trip per rejected call. Concurrent calls of one client on one node may
+ * still find the lease spent by each other between prepare and admission, and are then rejected.
+ */
+public class LeasedRateLimitAlgorithm implements RateLimitAlgorithm<LeasedRateLimitAlgorithm.State> {
+
+  private final RateLimitStore store;
+  private final int leaseSize;
+  private final long leaseTtlNanos;
+  // Unused permits waiting for the next reconcile, per client
+  private final ConcurrentMap<String, Integer> pendingRelease = new ConcurrentHashMap<>();
+
+  public LeasedRateLimitAlgorithm(RateLimitStore store, int leaseSize, Duration leaseTtl) {
+    if (leaseSize <= 0) {
+      throw new IllegalArgumentException("leaseSize must be positive.");
+    }
+    this.store = store;
+    this.leaseSize = leaseSize;
+    this.leaseTtlNanos = leaseTtl.toNanos();
+  }
+
+  @Override
+  public State newState(String clientId, RateLimitTier tier, long now) {
+    return new State(clientId, now);
+  }
+
+  @Override
+  public void prepare(State state, RateLimitTier tier, long now, int permits) {
+    if (state.leased + state.fetched.get() >= permits || now - state.retryAfter < 0) {
+      return;
+    }
+    synchronized (state) { // One round trip per client at a time, the others wait here for its lease
+      int stock = state.leased + state.fetched.get();
+      if (stock >= permits || now - state.retryAfter < 0) {
+        return;
+      }
+      int requested = Math.max(leaseSize, permits - stock);
+      int granted = store.acquire(state.clientId, tier, requested);
+      if (granted < requested) {
+        // The store ran dry, don't ask again before it can refill a lease
+        state.retryAfter = now + Math.min(leaseTtlNanos, requested * tier.emissionIntervalNanos());
+      }
+      if (stock + granted < permits) {
+        if (granted > 0) {
+          store.release(Map.of(state.clientId, granted)); // The call is rejected, it must not use up permits
+        }
+        return;
+      }
+      state.fetchedAt = now;
+      state.fetched.addAndGet(granted);
+    }
+  }
+
+  @Override
+  public boolean tryAcquire(State state, RateLimitTier tier, long now, int permits) {
+    int fetched = state.fetched.getAndSet(0);
+    if (fetched > 0) {
+      state.leased += fetched;
+      state.leaseExpiry = state.fetchedAt + leaseTtlNanos;
+    }
+    if (state.leased > 0 && now - state.leaseExpiry >= 0) {
+      returnLease(state);
+    }
+    if (state.leased < permits) {
+      return false;
+    }
+    state.leased -= permits;
+    return true;
+  }
+
+  @Override
+  public void reset(State state, RateLimitTier tier, long now) {
+    returnLease(state);
+    // No leases while the penalty lasts, they would only lapse unused
+    state.retryAfter = now + tier.penalty().toNanos();
+  }
+
+  @Override
+  public long idleTimeout(RateLimitTier tier) {
+    // Once the lease lapses nothing local is worth keeping, evict queues whatever is left of it
+    return leaseTtlNanos;
+  }
+
+  @Override
+  public void evict(State state, RateLimitTier tier) {
+    returnLease(state);
+  }
+
+  /** Hands every queued unused permit back to the store in a single round trip. */
+  @Override
+  public void reconcile() {
+    if (pendingRelease.isEmpty()) {
+      return;
+    }
+    Map<String, Integer> batch = new HashMap<>();
+    for (String clientId : pendingRelease.keySet()) {
+      Integer permits = pendingRelease.remove(clientId);
+      if (permits != null) {
+        batch.put(clientId, permits);
+      }
+    }
+    store.release(batch);
+  }
+
+  private void returnLease(State state) {
+    int unused = state.leased + state.fetched.getAndSet(0);
+    if (unused > 0) {
+      pendingRelease.merge(state.clientId, unused, Integer::sum);
+      state.leased = 0;
+    }
+  }
+
+  public static class State {
+    private final String clientId;
+    // Written under the limiter's lock, read by prepare without it
+    private volatile int leased;
+    private long leaseExpiry;
+    // Fetched by prepare and not yet merged into leased
+    private final AtomicInteger fetched = new AtomicInteger();
+    private volatile long fetchedAt;
+    private volatile long retryAfter;
+
+    State(String clientId, long now) {
+      this.clientId = clientId;
+      this.retryAfter = now;
+    }
+  }
+}
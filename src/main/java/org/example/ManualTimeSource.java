@@ -0,0 +1,36 @@
+package org.example;
+
+import java.time.Duration;
+
+/**
+ * Time source that only moves when told to, so tests and benchmarks can simulate hours of traffic
+ * without sleeping.
+ */
+public class ManualTimeSource implements TimeSource {
+
+  private volatile long nanos;
+
+  public ManualTimeSource() {
+    this(0);
+  }
+
+  public ManualTimeSource(long startNanos) {
+    this.nanos = startNanos;
+  }
+
+  @Override
+  public long nanoTime() {
+    return nanos;
+  }
+
+  public synchronized void advance(Duration duration) {
+    advanceNanos(duration.toNanos());
+  }
+
+  public synchronized void advanceNanos(long delta) {
+    if (delta < 0) {
+      throw new IllegalArgumentException("Time cannot go backwards.");
+    }
+    nanos += delta;
+  }
+}
@@ -0,0 +1,300 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A table export on disk, read through memory-mapped windows of the file. A {@link Cursor} parses
+ * one line at a time into slices of the mapped bytes and hashes them with a {@link RowHasher}
+ * straight from the mapping, so no String or Map is built per row; {@link Cursor#row()} decodes the
+ * current row only when it is needed, e.g. for a mismatch report. Rows hash the same as the
+ * equivalent {@code Map<String, String>}, so an export can be validated against in-memory rows too.
+ *
+ * <p>Every line is one row. {@link #split} cuts the data into byte ranges that start at line
+ * boundaries, each of which can be read by its own cursor on its own thread. Files over 2 GB are
+ * fine: a cursor maps {@code window} bytes at a time and moves the window forward at a line start.
+ */
+public abstract class MappedRowFile implements Closeable {
+
+  // Bytes mapped at once by a cursor; a single line must fit
+  static final int WINDOW = 1 << 28;
+
+  static final byte PLAIN = 0;
+  static final byte ESCAPED = 1;
+  static final byte NULL = 2;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long size;
+  final int window;
+  // Where the rows start, after any header
+  long dataStart;
+
+  MappedRowFile(Path path, int window) {
+    this.path = path;
+    this.window = window;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      size = channel.size();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open " + path, e);
+    }
+  }
+
+  /** A CSV export whose first line names the columns. Quoted fields may hold commas and "" but not line breaks. */
+  public static MappedRowFile csv(Path file) {
+    return new CsvRowFile(file, WINDOW);
+  }
+
+  /** One flat JSON object per line; numbers and booleans are read as their text, null as a null value. */
+  public static MappedRowFile jsonLines(Path file) {
+    return new JsonLinesRowFile(file, WINDOW);
+  }
+
+  public long size() {
+    return size;
+  }
+
+  public long dataStart() {
+    return dataStart;
+  }
+
+  public Cursor cursor() {
+    return cursor(dataStart, size);
+  }
+
+  /** Reads the rows in [from, to); both must be line starts (or the end of the file), e.g. from {@link #split}. */
+  public Cursor cursor(long from, long to) {
+    if (from < dataStart || from > to || to > size) {
+      throw new IllegalArgumentException("Range [" + from + ", " + to + ") is outside the rows of " + path);
+    }
+    return newCursor(from, to);
+  }
+
+  abstract Cursor newCursor(long from, long to);
+
+  /**
+   * Boundaries of up to {@code parts} ranges of about equal size, each starting at a line start:
+   * range i is [bounds[i], bounds[i + 1]). Small files give fewer ranges.
+   */
+  public long[] split(int parts) {
+    long[] bounds = new long[parts + 1];
+    int count = 0;
+    bounds[count++] = dataStart;
+    for (int i = 1; i < parts; i++) {
+      long target = dataStart + (size - dataStart) * i / parts;
+      long newline = target == dataStart || byteAt(target - 1) == '\n' ? target - 1 : nextNewline(target, size);
+      if (newline >= 0 && newline + 1 > bounds[count - 1] && newline + 1 < size) {
+        bounds[count++] = newline + 1;
+      }
+    }
+    bounds[count++] = size;
+    return Arrays.copyOf(bounds, count);
+  }
+
+  /** Rows in [from, to), counting a last line without a line break. */
+  public long countRows(long from, long to) {
+    long rows = 0;
+    for (long start = from; start < to; start += window) {
+      ByteBuffer buffer = map(start, Math.min(window, to - start));
+      for (int i = 0, n = buffer.limit(); i < n; i++) {
+        if (buffer.get(i) == '\n') {
+          rows++;
+        }
+      }
+    }
+    return to > from && byteAt(to - 1) != '\n' ? rows + 1 : rows;
+  }
+
+  /** Start of the row {@code rows} lines after the line starting at {@code from}, or the end of the file. */
+  public long skipRows(long from, long rows) {
+    if (rows == 0) {
+      return from;
+    }
+    long remaining = rows;
+    for (long start = from; start < size; start += window) {
+      ByteBuffer buffer = map(start, Math.min(window, size - start));
+      for (int i = 0, n = buffer.limit(); i < n; i++) {
+        if (buffer.get(i) == '\n' && --remaining == 0) {
+          return start + i + 1;
+        }
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  ByteBuffer map(long position, long length) {
+    try {
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot map " + path + " at " + position, e);
+    }
+  }
+
+  private byte byteAt(long position) {
+    return map(position, 1).get(0);
+  }
+
+  // Position of the first line break in [from, to), or -1
+  private long nextNewline(long from, long to) {
+    for (long start = from; start < to; start += window) {
+      ByteBuffer buffer = map(start, Math.min(window, to - start));
+      for (int i = 0, n = buffer.limit(); i < n; i++) {
+        if (buffer.get(i) == '\n') {
+          return start + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads the rows of one range. After {@link #next()}, the row is held as field slices of the mapped
+   * window, valid until the next call. Not thread safe.
+   */
+  public abstract static class Cursor {
+    private final MappedRowFile file;
+    private final long end;
+    private long position;
+    ByteBuffer buffer;
+    private long bufferStart;
+
+    // The fields of the current row, in the order of the line
+    int fields;
+    int[] starts = new int[16];
+    int[] lengths = new int[16];
+    byte[] kinds = new byte[16];
+    // Set by parse: the field names in line order, and the field indexes in sorted name order
+    String[] names;
+    int[] order;
+    // Unescaped values are decoded here
+    byte[] scratch = new byte[256];
+
+    Cursor(MappedRowFile file, long from, long to) {
+      this.file = file;
+      this.position = from;
+      this.end = to;
+      map(from);
+    }
+
+    /** Moves to the next row; false at the end of the range. */
+    public boolean next() {
+      if (position >= end) {
+        return false;
+      }
+      int lineStart = (int) (position - bufferStart);
+      int newline = indexOfNewline(lineStart);
+      if (newline < 0 && bufferStart + buffer.limit() < end) {
+        map(position); // The line runs past the window
+        lineStart = 0;
+        newline = indexOfNewline(0);
+        if (newline < 0 && bufferStart + buffer.limit() < end) {
+          throw new IllegalArgumentException("Line at byte " + position + " is longer than " + file.window + " bytes");
+        }
+      }
+      int lineEnd = newline < 0 ? buffer.limit() : newline;
+      long rowPosition = position;
+      position = bufferStart + (newline < 0 ? buffer.limit() : newline + 1);
+      if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      fields = 0;
+      parse(lineStart, lineEnd, rowPosition);
+      return true;
+    }
+
+    /** Start of the next row in the file. */
+    public long position() {
+      return position;
+    }
+
+    /** Writes the hash of the current row to {@code out} at {@code offset}, as RowHasher hashes its Map. */
+    public void hash(RowHasher hasher, byte[] out, int offset) {
+      for (int field : order) {
+        switch (kinds[field]) {
+          case NULL -> hasher.addField(names[field], (String) null);
+          case ESCAPED -> hasher.addField(names[field], scratch, 0, unescape(field));
+          default -> hasher.addField(names[field], buffer, starts[field], lengths[field]);
+        }
+      }
+      hasher.finish(out, offset);
+    }
+
+    /** The current row decoded, in the order of the line. */
+    public Map<String, String> row() {
+      Map<String, String> row = new LinkedHashMap<>();
+      for (int field = 0; field < fields; field++) {
+        row.put(names[field], value(field));
+      }
+      return row;
+    }
+
+    String value(int field) {
+      return switch (kinds[field]) {
+        case NULL -> null;
+        case ESCAPED -> new String(scratch, 0, unescape(field), StandardCharsets.UTF_8);
+        default -> {
+          byte[] bytes = new byte[lengths[field]];
+          buffer.get(starts[field], bytes);
+          yield new String(bytes, StandardCharsets.UTF_8);
+        }
+      };
+    }
+
+    // Splits buffer[from, to) into fields and sets names and order; rowPosition is for error messages
+    abstract void parse(int from, int to, long rowPosition);
+
+    // Decodes an ESCAPED field into scratch, returning its length
+    abstract int unescape(int field);
+
+    void addField(int start, int length, byte kind) {
+      if (fields == starts.length) {
+        starts = Arrays.copyOf(starts, 2 * fields);
+        lengths = Arrays.copyOf(lengths, 2 * fields);
+        kinds = Arrays.copyOf(kinds, 2 * fields);
+      }
+      starts[fields] = start;
+      lengths[fields] = length;
+      kinds[fields] = kind;
+      fields++;
+    }
+
+    void ensureScratch(int capacity) {
+      if (capacity > scratch.length) {
+        scratch = Arrays.copyOf(scratch, Math.max(capacity, 2 * scratch.length));
+      }
+    }
+
+    private void map(long from) {
+      bufferStart = from;
+      buffer = file.map(from, Math.min(file.window, end - from));
+    }
+
+    private int indexOfNewline(int from) {
+      for (int i = from, n = buffer.limit(); i < n; i++) {
+        if (buffer.get(i) == '\n') {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,393 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Merkle tree over a table's rows in key order, used as a {@link DBCheckPoint} checkpoint: two
+ * trees with the same root hash hold the same rows, and {@link #diff} finds the key ranges where
+ * two trees differ by descending only into subtrees whose hashes differ.
+ *
+ * <p>Rows are grouped into leaf blocks, and blocks into nodes, at boundaries picked from a hash of
+ * the row key (a row whose key hash ends in enough zero bits closes a block, more zero bits close a
+ * node a level up). Boundaries therefore depend on the keys alone: changing a value never moves
+ * them, and inserting or deleting a row only changes the blocks around it, so trees of two
+ * slightly different tables line up everywhere else. Keys are compared as strings, and rows must
+ * arrive in that order.
+ *
+ * <p>The leaves and nodes are small (key bounds, row count, hash), so a tree can be saved, shipped
+ * to the other side of a migration and compared there instead of the data.
+ */
+public class MerkleTree {
+
+  // About 1024 rows per leaf and 16 children per node
+  private static final int LEAF_BITS = 10;
+  private static final int FANOUT_BITS = 4;
+  private static final int MAX_LEVEL = (32 - LEAF_BITS) / FANOUT_BITS;
+  private static final int FILE_VERSION = 1;
+
+  private final String keyColumn;
+  private final Node root;
+  private final List<Node> leaves;
+
+  private MerkleTree(String keyColumn, List<Node> leaves) {
+    this.keyColumn = keyColumn;
+    this.leaves = leaves;
+    this.root = buildLevels(leaves);
+  }
+
+  /** Builds the tree from rows sorted by {@code keyColumn}, reading each row once. */
+  public static MerkleTree build(Iterator<? extends Map<String, String>> rowsByKey, String keyColumn) {
+    List<Node> leaves = new ArrayList<>();
+    LeafBuilder builder = new LeafBuilder(keyColumn);
+    while (rowsByKey.hasNext()) {
+      Node leaf = builder.add(rowsByKey.next());
+      if (leaf != null) {
+        leaves.add(leaf);
+      }
+    }
+    if (builder.rows > 0 || leaves.isEmpty()) {
+      leaves.add(builder.close());
+    }
+    return new MerkleTree(keyColumn, leaves);
+  }
+
+  public byte[] rootHash() {
+    return root.hash.clone();
+  }
+
+  public long rowCount() {
+    return root.rows;
+  }
+
+  public int leafCount() {
+    return leaves.size();
+  }
+
+  public String keyColumn() {
+    return keyColumn;
+  }
+
+  /**
+   * Key ranges, in order and not overlapping, outside which both trees hold exactly the same rows.
+   * Each range spans at least the differing leaf blocks of both sides, so re-reading those ranges
+   * on both sides finds every missing, extra and changed row.
+   */
+  public static List<KeyRange> diff(MerkleTree original, MerkleTree migrated) {
+    List<KeyRange> ranges = new ArrayList<>();
+    diff(original.root, migrated.root, ranges);
+    ranges.sort(Comparator.comparing(KeyRange::fromKey));
+    List<KeyRange> merged = new ArrayList<>();
+    for (KeyRange range : ranges) {
+      KeyRange last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null && range.fromKey().compareTo(last.toKey()) <= 0) {
+        merged.set(merged.size() - 1, new KeyRange(last.fromKey(), max(last.toKey(), range.toKey())));
+      } else {
+        merged.add(range);
+      }
+    }
+    return merged;
+  }
+
+  private static void diff(Node original, Node migrated, List<KeyRange> ranges) {
+    if (Arrays.equals(original.hash, migrated.hash)) {
+      return;
+    }
+    if (original.rows == 0 || migrated.rows == 0 || original.children == null && migrated.children == null) {
+      ranges.add(span(original, migrated));
+      return;
+    }
+    // Open up the higher node (or both), then pair up the children that are not identical
+    List<Node> left = original.level >= migrated.level && original.children != null ? original.children : List.of(original);
+    List<Node> right = migrated.level >= original.level && migrated.children != null ? migrated.children : List.of(migrated);
+    int i = 0;
+    int j = 0;
+    while (i < left.size() && j < right.size()) {
+      Node a = left.get(i);
+      Node b = right.get(j);
+      if (Arrays.equals(a.hash, b.hash)) {
+        i++;
+        j++;
+      } else if (a.lastKey.compareTo(b.firstKey) < 0) {
+        ranges.add(span(a, a)); // Only on the original side
+        i++;
+      } else if (b.lastKey.compareTo(a.firstKey) < 0) {
+        ranges.add(span(b, b));
+        j++;
+      } else {
+        diff(a, b, ranges);
+        // Move past whichever ends first; the other may still overlap the next node
+        int order = a.lastKey.compareTo(b.lastKey);
+        if (order <= 0) {
+          i++;
+        }
+        if (order >= 0) {
+          j++;
+        }
+      }
+    }
+    for (; i < left.size(); i++) {
+      ranges.add(span(left.get(i), left.get(i)));
+    }
+    for (; j < right.size(); j++) {
+      ranges.add(span(right.get(j), right.get(j)));
+    }
+  }
+
+  /**
+   * Tree for the table after rows in the given key ranges changed, re-reading only the leaf blocks
+   * that cover them. {@code rowsInRange} returns the current rows of a key range, sorted by key.
+   */
+  public MerkleTree update(List<KeyRange> changed, Function<KeyRange, Iterator<? extends Map<String, String>>> rowsInRange) {
+    List<Node> updated = new ArrayList<>(leaves);
+    List<KeyRange> sorted = new ArrayList<>(changed);
+    sorted.sort(Comparator.comparing(KeyRange::fromKey, Comparator.nullsFirst(Comparator.naturalOrder())));
+    // From the last range back, so earlier leaf indexes stay valid
+    for (int r = sorted.size() - 1; r >= 0; r--) {
+      KeyRange range = sorted.get(r);
+      int first = leafFor(updated, range.fromKey());
+      int last = range.toKey() == null ? updated.size() - 1 : leafFor(updated, range.toKey());
+      // Leaf first starts right after the previous leaf's last key, so new keys in the gap are read too
+      String after = first == 0 ? null : updated.get(first - 1).lastKey;
+
+      List<Node> rebuilt = new ArrayList<>();
+      LeafBuilder builder = new LeafBuilder(keyColumn);
+      while (true) {
+        String upTo = last == updated.size() - 1 ? null : updated.get(last).lastKey;
+        Iterator<? extends Map<String, String>> rows = rowsInRange.apply(new KeyRange(after, upTo));
+        while (rows.hasNext()) {
+          Map<String, String> row = rows.next();
+          if (after != null && row.get(keyColumn).compareTo(after) <= 0) {
+            continue; // The range is inclusive, the previous leaf already has this row
+          }
+          Node leaf = builder.add(row);
+          if (leaf != null) {
+            rebuilt.add(leaf);
+          }
+        }
+        if (builder.rows == 0 || upTo == null) {
+          break;
+        }
+        // The block's closing row is gone, so it runs on into the next one
+        after = upTo;
+        last++;
+      }
+      if (builder.rows > 0) {
+        rebuilt.add(builder.close());
+      }
+      updated.subList(first, last + 1).clear();
+      updated.addAll(first, rebuilt);
+    }
+    if (updated.isEmpty()) {
+      updated.add(new LeafBuilder(keyColumn).close());
+    }
+    return new MerkleTree(keyColumn, updated);
+  }
+
+  // Index of the leaf that holds, or would hold, the key
+  private static int leafFor(List<Node> leaves, String key) {
+    if (key == null) {
+      return 0;
+    }
+    int low = 0;
+    int high = leaves.size() - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      Node leaf = leaves.get(middle);
+      if (leaf.rows > 0 && leaf.lastKey.compareTo(key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  public void save(Path file) {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(FILE_VERSION);
+      out.writeUTF(keyColumn);
+      out.writeInt(leaves.size());
+      for (Node leaf : leaves) {
+        out.writeLong(leaf.rows);
+        if (leaf.rows > 0) {
+          out.writeUTF(leaf.firstKey);
+          out.writeUTF(leaf.lastKey);
+        }
+        out.write(leaf.hash);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot save checkpoint to " + file, e);
+    }
+  }
+
+  // Only the leaves are stored; the levels above are rebuilt from them
+  public static MerkleTree load(Path file) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != FILE_VERSION) {
+        throw new IllegalArgumentException("Unsupported checkpoint file " + file);
+      }
+      String keyColumn = in.readUTF();
+      int count = in.readInt();
+      List<Node> leaves = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        long rows = in.readLong();
+        String firstKey = rows > 0 ? in.readUTF() : null;
+        String lastKey = rows > 0 ? in.readUTF() : null;
+        byte[] hash = new byte[RowHasher.HASH_LENGTH];
+        in.readFully(hash);
+        leaves.add(new Node(0, firstKey, lastKey, rows, hash, null));
+      }
+      return new MerkleTree(keyColumn, leaves);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot load checkpoint from " + file, e);
+    }
+  }
+
+  private static Node buildLevels(List<Node> leaves) {
+    List<Node> level = leaves;
+    for (int height = 1; level.size() > 1; height++) {
+      List<Node> parents = new ArrayList<>();
+      int start = 0;
+      for (int i = 0; i < level.size(); i++) {
+        // The last group always closes, and above MAX_LEVEL nothing else does
+        if (i == level.size() - 1 || boundaryLevel(level.get(i).lastKey) >= height) {
+          parents.add(parent(height, level.subList(start, i + 1)));
+          start = i + 1;
+        }
+      }
+      level = parents;
+    }
+    return level.get(0);
+  }
+
+  private static Node parent(int height, List<Node> children) {
+    MessageDigest digest = sha256();
+    long rows = 0;
+    for (Node child : children) {
+      digest.update(child.hash);
+      rows += child.rows;
+    }
+    return new Node(height, children.get(0).firstKey, children.get(children.size() - 1).lastKey, rows, digest.digest(),
+        List.copyOf(children));
+  }
+
+  /**
+   * -1 if the key does not end a leaf block, otherwise the highest tree level its row closes a
+   * node at (0 for just the leaf). Depends only on the key, so both sides of a migration agree.
+   */
+  static int boundaryLevel(String key) {
+    long bits = key.hashCode() * 0x9E3779B97F4A7C15L;
+    bits ^= bits >>> 32;
+    if ((bits & ((1 << LEAF_BITS) - 1)) != 0) {
+      return -1;
+    }
+    bits >>>= LEAF_BITS;
+    int level = 0;
+    while (level < MAX_LEVEL && (bits & ((1 << FANOUT_BITS) - 1)) == 0) {
+      level++;
+      bits >>>= FANOUT_BITS;
+    }
+    return level;
+  }
+
+  private static KeyRange span(Node a, Node b) {
+    if (a.rows == 0) {
+      return new KeyRange(b.firstKey, b.lastKey);
+    }
+    if (b.rows == 0) {
+      return new KeyRange(a.firstKey, a.lastKey);
+    }
+    return new KeyRange(min(a.firstKey, b.firstKey), max(a.lastKey, b.lastKey));
+  }
+
+  private static String min(String a, String b) {
+    return a.compareTo(b) <= 0 ? a : b;
+  }
+
+  private static String max(String a, String b) {
+    return a.compareTo(b) >= 0 ? a : b;
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Hashing algorithm not found", e);
+    }
+  }
+
+  // Hashes rows into leaf blocks, closing a block after every boundary row
+  private static class LeafBuilder {
+    final String keyColumn;
+    final MessageDigest digest = sha256();
+    final byte[] rowHash = new byte[RowHasher.HASH_LENGTH];
+    String firstKey;
+    String lastKey;
+    long rows;
+
+    LeafBuilder(String keyColumn) {
+      this.keyColumn = keyColumn;
+    }
+
+    // The finished leaf if this row closed one, otherwise null
+    Node add(Map<String, String> row) {
+      String key = row.get(keyColumn);
+      if (key == null) {
+        throw new IllegalArgumentException("Row has no " + keyColumn + ": " + row);
+      }
+      if (lastKey != null && key.compareTo(lastKey) <= 0) {
+        throw new IllegalArgumentException("Rows are not in " + keyColumn + " order at " + key);
+      }
+      RowHasher.forCurrentThread().hash(row, rowHash, 0);
+      digest.update(rowHash);
+      if (rows++ == 0) {
+        firstKey = key;
+      }
+      lastKey = key;
+      return boundaryLevel(key) >= 0 ? close() : null;
+    }
+
+    Node close() {
+      Node leaf = new Node(0, firstKey, lastKey, rows, digest.digest(), null);
+      rows = 0;
+      firstKey = null;
+      // lastKey is kept to check the order of the next block
+      return leaf;
+    }
+  }
+
+  private static class Node {
+    final int level;
+    final String firstKey;
+    final String lastKey;
+    final long rows;
+    final byte[] hash;
+    // Null for a leaf block
+    final List<Node> children;
+
+    Node(int level, String firstKey, String lastKey, long rows, byte[] hash, List<Node> children) {
+      this.level = level;
+      this.firstKey = firstKey;
+      this.lastKey = lastKey;
+      this.rows = rows;
+      this.hash = hash;
+      this.children = children;
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package org.example;
+
+// How the parsers turn JSON numbers into Java objects
+public enum NumberPolicy {
+  // BigInteger for integers, BigDecimal for anything with a fraction or exponent, keeping the written scale
+  ALWAYS_BIG,
+  // The narrowest exact type: Integer, Long or BigInteger; Double when the decimal reads back the same, else BigDecimal
+  LOSSLESS_NARROW,
+  // Double for every number, correctly rounded
+  DOUBLE
+}
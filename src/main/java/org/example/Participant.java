@@ -0,0 +1,30 @@
+package org.example;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One resource manager in a {@link TransactionCoordinator} two-phase commit, typically a shard of
+ * accounts. Every method may be a network round trip and may fail; the coordinator calls them from
+ * several threads at once.
+ */
+public interface Participant {
+
+  boolean hasAccount(String accountId);
+
+  /**
+   * Phase one: reserves what the transaction needs and votes. {@code deltas} holds the net change
+   * per account owned by this participant, in minor units. Returns true (yes) only if every debit
+   * is now reserved; after a yes vote the participant must be able to commit until told otherwise.
+   */
+  boolean prepare(long transactionId, Map<String, Long> deltas);
+
+  /** Phase two: applies a prepared transaction. Does nothing for an unknown transaction. */
+  void commit(long transactionId);
+
+  /** Releases whatever the transaction holds. Does nothing for an unknown transaction. */
+  void abort(long transactionId);
+
+  /** Transactions that voted yes and have not been told the outcome yet. */
+  Set<Long> inDoubt();
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+/**
+ * Decides whether a client may make another call. Each client owns one state object created by
+ * {@link #newState}; the limiter serializes all calls on a given state other than
+ * {@link #prepare}, so implementations that leave prepare alone need no synchronization of their own.
+ *
+ * <p>Times are in nanoseconds from the limiter's {@link TimeSource}.
+ *
+ * @param <S> per-client state
+ */
+public interface RateLimitAlgorithm<S> {
+
+  S newState(String clientId, RateLimitTier tier, long now);
+
+  /**
+   * Called before the limiter takes its lock for a call, for slow work such as a round trip to a
+   * shared store. Unlike the other methods it runs concurrently with other calls on the same state.
+   */
+  default void prepare(S state, RateLimitTier tier, long now, int permits) {
+  }
+
+  /** Admits {@code permits} calls and returns true, or changes nothing and returns false. */
+  boolean tryAcquire(S state, RateLimitTier tier, long now, int permits);
+
+  /** Forgets past calls, used when a client is penalized. */
+  void reset(S state, RateLimitTier tier, long now);
+
+  /**
+   * How long after its last call a client's state is indistinguishable from a fresh one, so the
+   * limiter may drop it.
+   */
+  default long idleTimeout(RateLimitTier tier) {
+    return tier.window().toNanos();
+  }
+
+  /** Called once, under the client's lock, when the limiter drops the client's state. */
+  default void evict(S state, RateLimitTier tier) {
+  }
+
+  /**
+   * Finishes work deferred by {@link #reset} and {@link #evict}, run once per reconcile interval by
+   * whichever call finds it due and after every eviction pass, never under a client's lock.
+   */
+  default void reconcile() {
+  }
+}
@@ -0,0 +1,16 @@
+package org.example;
+
+/** Outcome of asking {@link ApiRateLimiter} for permits. Returned instead of throwing, so rejecting is cheap. */
+public enum RateLimitResult {
+  ALLOWED,
+  // This request went over the limit and started a penalty
+  RATE_LIMITED,
+  // The client is serving a penalty from an earlier request
+  PENALIZED,
+  // The client is new and the limiter is already tracking as many clients as it may
+  TOO_MANY_CLIENTS;
+
+  public boolean isAllowed() {
+    return this == ALLOWED;
+  }
+}
@@ -0,0 +1,17 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * Shared rate limit state for limiters running on several nodes. Every method is one round trip
+ * to the backend, so {@link LeasedRateLimitAlgorithm} calls it in bulk and rarely. The store keeps
+ * its own clock, since node clocks are not comparable.
+ */
+public interface RateLimitStore {
+
+  /** Takes up to {@code permits} from the client's shared budget and returns how many were granted. */
+  int acquire(String clientId, RateLimitTier tier, int permits);
+
+  /** Gives back leased permits that were never used, for any number of clients at once. */
+  void release(Map<String, Integer> unusedPermits);
+}
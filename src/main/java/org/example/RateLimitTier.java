@@ -0,0 +1,30 @@
+package org.example;
+
+import java.time.Duration;
+
+/**
+ * Limits applied to one class of clients: at most {@code maxCalls} calls per {@code window}, and a
+ * client that goes over is rejected outright for {@code penalty}.
+ */
+public record RateLimitTier(int maxCalls, Duration window, Duration penalty) {
+
+  // 15 calls per minute, 1 minute wait + 1 penalty minute
+  public static final RateLimitTier DEFAULT = new RateLimitTier(15, Duration.ofMinutes(1), Duration.ofMinutes(2));
+
+  public RateLimitTier {
+    if (maxCalls <= 0) {
+      throw new IllegalArgumentException("maxCalls must be positive.");
+    }
+    if (window.isNegative() || window.isZero()) {
+      throw new IllegalArgumentException("window must be positive.");
+    }
+    if (penalty.isNegative()) {
+      throw new IllegalArgumentException("penalty must not be negative.");
+    }
+  }
+
+  // Time between calls at the sustained rate, rounded up so a window never admits more than maxCalls
+  public long emissionIntervalNanos() {
+    return (window.toNanos() - 1) / maxCalls + 1;
+  }
+}
@@ -0,0 +1,381 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Key-based comparison of two tables: rows are matched by the value of a key column, not by
+ * position, and every missing, extra and changed row goes to a {@link DiffReport}. Keys are
+ * expected to be unique on each side; a repeated key shows up as a missing or extra row.
+ *
+ * <p>Three ways in, by what is known about the inputs:
+ * <ul>
+ *   <li>{@link #sortMerge} for inputs already sorted by key: one pass, two rows in memory;</li>
+ *   <li>{@link #externalSortMerge} sorts each side first, spilling sorted runs of
+ *       {@code rowsInMemory} rows to disk and merging them;</li>
+ *   <li>{@link #hashJoin} for unordered inputs: the original side is loaded into a hash table and
+ *       the migrated side probes it. If the original has more than {@code rowsInMemory} rows, both
+ *       sides are split by key hash into partitions on disk that are joined one at a time.</li>
+ * </ul>
+ */
+public class RowDiff {
+
+  private static final int PARTITIONS = 16;
+
+  private RowDiff() {
+  }
+
+  /** Both inputs must be sorted by key (string order); a key smaller than the one before it throws. */
+  public static DiffReport sortMerge(Iterator<? extends Map<String, String>> original,
+      Iterator<? extends Map<String, String>> migrated, String keyColumn, DiffReport report) {
+    Map<String, String> originalRow = next(original, null, keyColumn);
+    Map<String, String> migratedRow = next(migrated, null, keyColumn);
+    while (originalRow != null || migratedRow != null) {
+      int order = originalRow == null ? 1 : migratedRow == null ? -1
+          : key(originalRow, keyColumn).compareTo(key(migratedRow, keyColumn));
+      if (order < 0) {
+        report.missing(key(originalRow, keyColumn));
+        originalRow = next(original, originalRow, keyColumn);
+      } else if (order > 0) {
+        report.extra(key(migratedRow, keyColumn));
+        migratedRow = next(migrated, migratedRow, keyColumn);
+      } else {
+        compare(originalRow, migratedRow, keyColumn, report);
+        originalRow = next(original, originalRow, keyColumn);
+        migratedRow = next(migrated, migratedRow, keyColumn);
+      }
+    }
+    return report;
+  }
+
+  public static DiffReport externalSortMerge(Iterator<? extends Map<String, String>> original,
+      Iterator<? extends Map<String, String>> migrated, String keyColumn, DiffReport report, Path spillDirectory,
+      int rowsInMemory) {
+    try (SortedRows sortedOriginal = new SortedRows(original, keyColumn, spillDirectory, rowsInMemory);
+        SortedRows sortedMigrated = new SortedRows(migrated, keyColumn, spillDirectory, rowsInMemory)) {
+      return sortMerge(sortedOriginal, sortedMigrated, keyColumn, report);
+    }
+  }
+
+  public static DiffReport hashJoin(Iterator<? extends Map<String, String>> original,
+      Iterator<? extends Map<String, String>> migrated, String keyColumn, DiffReport report, Path spillDirectory,
+      int rowsInMemory) {
+    hashJoin(original, migrated, keyColumn, report, spillDirectory, rowsInMemory, 0);
+    return report;
+  }
+
+  private static void hashJoin(Iterator<? extends Map<String, String>> original,
+      Iterator<? extends Map<String, String>> migrated, String keyColumn, DiffReport report, Path spillDirectory,
+      int rowsInMemory, int depth) {
+    Map<String, Map<String, String>> build = new HashMap<>();
+    while (original.hasNext()) {
+      if (build.size() == rowsInMemory && depth < 8) {
+        joinPartitioned(build.values().iterator(), original, migrated, keyColumn, report, spillDirectory,
+            rowsInMemory, depth);
+        return;
+      }
+      Map<String, String> row = original.next();
+      if (build.putIfAbsent(key(row, keyColumn), row) != null) {
+        report.missing(key(row, keyColumn)); // A second row for the key has no partner
+      }
+    }
+    while (migrated.hasNext()) {
+      Map<String, String> row = migrated.next();
+      Map<String, String> originalRow = build.remove(key(row, keyColumn));
+      if (originalRow == null) {
+        report.extra(key(row, keyColumn));
+      } else {
+        compare(originalRow, row, keyColumn, report);
+      }
+    }
+    for (String key : build.keySet()) {
+      report.missing(key);
+    }
+  }
+
+  // Grace hash join: both sides go to disk by key hash, then each partition pair is joined in memory
+  private static void joinPartitioned(Iterator<Map<String, String>> buffered,
+      Iterator<? extends Map<String, String>> original, Iterator<? extends Map<String, String>> migrated,
+      String keyColumn, DiffReport report, Path spillDirectory, int rowsInMemory, int depth) {
+    List<Path> originalPartitions = new ArrayList<>();
+    List<Path> migratedPartitions = new ArrayList<>();
+    try {
+      partition(List.of(buffered, original), keyColumn, spillDirectory, depth, originalPartitions);
+      partition(List.of(migrated), keyColumn, spillDirectory, depth, migratedPartitions);
+      for (int p = 0; p < PARTITIONS; p++) {
+        try (RunReader originalRows = new RunReader(originalPartitions.get(p));
+            RunReader migratedRows = new RunReader(migratedPartitions.get(p))) {
+          hashJoin(originalRows, migratedRows, keyColumn, report, spillDirectory, rowsInMemory, depth + 1);
+        }
+      }
+    } finally {
+      deleteAll(originalPartitions);
+      deleteAll(migratedPartitions);
+    }
+  }
+
+  private static void partition(List<Iterator<? extends Map<String, String>>> inputs, String keyColumn,
+      Path spillDirectory, int depth, List<Path> files) {
+    DataOutputStream[] outs = new DataOutputStream[PARTITIONS];
+    try {
+      for (int p = 0; p < PARTITIONS; p++) {
+        files.add(Files.createTempFile(spillDirectory, "partition", ".rows"));
+        outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files.get(p))));
+      }
+      for (Iterator<? extends Map<String, String>> input : inputs) {
+        while (input.hasNext()) {
+          Map<String, String> row = input.next();
+          // Different hash bits at every depth, so a partition that is still too big splits further
+          long hash = key(row, keyColumn).hashCode() * 0x9E3779B97F4A7C15L;
+          writeRow(outs[(int) (hash >>> (60 - 4 * depth)) & (PARTITIONS - 1)], row);
+        }
+      }
+      for (int p = 0; p < PARTITIONS; p++) {
+        outs[p].close();
+        outs[p] = null;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot spill rows to " + spillDirectory, e);
+    } finally {
+      for (DataOutputStream out : outs) {
+        if (out != null) {
+          try {
+            out.close();
+          } catch (IOException e) {
+            // Already failing, the first error is the one worth reporting
+          }
+        }
+      }
+    }
+  }
+
+  private static void compare(Map<String, String> originalRow, Map<String, String> migratedRow, String keyColumn,
+      DiffReport report) {
+    if (originalRow.equals(migratedRow)) {
+      report.matching();
+      return;
+    }
+    TreeSet<String> columns = new TreeSet<>(originalRow.keySet());
+    columns.addAll(migratedRow.keySet());
+    List<String> changed = new ArrayList<>();
+    for (String column : columns) {
+      if (!Objects.equals(originalRow.get(column), migratedRow.get(column))
+          || originalRow.containsKey(column) != migratedRow.containsKey(column)) {
+        changed.add(column);
+      }
+    }
+    report.changed(key(originalRow, keyColumn), changed);
+  }
+
+  private static String key(Map<String, String> row, String keyColumn) {
+    String key = row.get(keyColumn);
+    if (key == null) {
+      throw new IllegalArgumentException("Row has no " + keyColumn + ": " + row);
+    }
+    return key;
+  }
+
+  // The row after previous, which must not have a smaller key; null at the end
+  private static Map<String, String> next(Iterator<? extends Map<String, String>> rows, Map<String, String> previous,
+      String keyColumn) {
+    if (!rows.hasNext()) {
+      return null;
+    }
+    Map<String, String> row = rows.next();
+    if (previous != null && key(row, keyColumn).compareTo(key(previous, keyColumn)) < 0) {
+      throw new IllegalArgumentException("Rows are not in " + keyColumn + " order at " + key(row, keyColumn));
+    }
+    return row;
+  }
+
+  private static void deleteAll(List<Path> files) {
+    for (Path file : files) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        // A leftover temp file is not worth failing the diff for
+      }
+    }
+  }
+
+  // Rows are stored as [column count] then [name][value] strings of [length][UTF-8]; a null value has length -1
+  private static void writeRow(DataOutputStream out, Map<String, String> row) throws IOException {
+    out.writeInt(row.size());
+    for (Map.Entry<String, String> column : row.entrySet()) {
+      writeString(out, column.getKey());
+      writeString(out, column.getValue());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Reads back a file of rows written by writeRow
+  private static class RunReader implements Iterator<Map<String, String>>, Closeable {
+    private final DataInputStream in;
+    private Map<String, String> next;
+
+    RunReader(Path file) {
+      try {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot read spilled rows from " + file, e);
+      }
+      advance();
+    }
+
+    private void advance() {
+      try {
+        int columns = in.readInt();
+        next = new LinkedHashMap<>();
+        for (int i = 0; i < columns; i++) {
+          next.put(readString(in), readString(in));
+        }
+      } catch (EOFException e) {
+        next = null;
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot read spilled rows", e);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Map<String, String> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Map<String, String> row = next;
+      advance();
+      return row;
+    }
+
+    @Override
+    public void close() {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // External sort: sorted runs of rowsInMemory rows on disk, merged lazily as the rows are read
+  private static class SortedRows implements Iterator<Map<String, String>>, Closeable {
+    private final List<Path> runs = new ArrayList<>();
+    private final List<RunReader> readers = new ArrayList<>();
+    private final PriorityQueue<RunHead> heads;
+    // Set instead of runs when everything fitted in memory
+    private Iterator<Map<String, String>> inMemory;
+
+    SortedRows(Iterator<? extends Map<String, String>> rows, String keyColumn, Path spillDirectory, int rowsInMemory) {
+      Comparator<Map<String, String>> byKey = Comparator.comparing(row -> key(row, keyColumn));
+      heads = new PriorityQueue<>((a, b) -> byKey.compare(a.row, b.row));
+      List<Map<String, String>> run = new ArrayList<>();
+      while (rows.hasNext()) {
+        run.add(rows.next());
+        if (run.size() == rowsInMemory && rows.hasNext()) {
+          spill(run, byKey, spillDirectory);
+          run.clear();
+        }
+      }
+      run.sort(byKey);
+      if (runs.isEmpty()) {
+        inMemory = run.iterator();
+        return;
+      }
+      spill(run, byKey, spillDirectory);
+      for (Path file : runs) {
+        RunReader reader = new RunReader(file);
+        readers.add(reader);
+        if (reader.hasNext()) {
+          heads.add(new RunHead(reader.next(), reader));
+        }
+      }
+    }
+
+    private void spill(List<Map<String, String>> run, Comparator<Map<String, String>> byKey, Path spillDirectory) {
+      run.sort(byKey);
+      try {
+        Path file = Files.createTempFile(spillDirectory, "run", ".rows");
+        runs.add(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+          for (Map<String, String> row : run) {
+            writeRow(out, row);
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot spill rows to " + spillDirectory, e);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return inMemory != null ? inMemory.hasNext() : !heads.isEmpty();
+    }
+
+    @Override
+    public Map<String, String> next() {
+      if (inMemory != null) {
+        return inMemory.next();
+      }
+      RunHead head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException();
+      }
+      if (head.reader.hasNext()) {
+        heads.add(new RunHead(head.reader.next(), head.reader));
+      }
+      return head.row;
+    }
+
+    @Override
+    public void close() {
+      readers.forEach(RunReader::close);
+      deleteAll(runs);
+    }
+  }
+
+  private record RunHead(Map<String, String> row, RunReader reader) {
+  }
+}
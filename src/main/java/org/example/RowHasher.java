@@ -0,0 +1,162 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * SHA-256 of a row that allocates nothing once warmed up. Columns are hashed in sorted name order,
+ * and the sorted order is kept until a row with different columns comes along, so it is computed
+ * once per schema rather than once per row. Every name and value is fed to the digest as
+ * [length][UTF-8 bytes] (a null value has length -1), so field boundaries are part of the hash:
+ * "ab" + "c" and "a" + "bc" differ.
+ *
+ * <p>Not thread safe; {@link #forCurrentThread()} hands out one per thread.
+ */
+public class RowHasher {
+
+  public static final int HASH_LENGTH = 32;
+
+  private static final ThreadLocal<RowHasher> PER_THREAD = ThreadLocal.withInitial(RowHasher::new);
+
+  private final MessageDigest digest;
+  private byte[] buffer = new byte[256];
+  private int length;
+  private String[] columns = new String[0];
+  private final byte[] first = new byte[HASH_LENGTH];
+  private final byte[] second = new byte[HASH_LENGTH];
+
+  public RowHasher() {
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Hashing algorithm not found", e);
+    }
+  }
+
+  public static RowHasher forCurrentThread() {
+    return PER_THREAD.get();
+  }
+
+  /** Writes the row's hash to {@code out} at {@code offset}. */
+  public void hash(Map<String, String> row, byte[] out, int offset) {
+    if (!hashColumns(row)) {
+      columns = row.keySet().toArray(new String[0]); // A new schema
+      Arrays.sort(columns);
+      hashColumns(row);
+    }
+    finish(out, offset);
+  }
+
+  /** Whether both rows have the same hash, compared as raw digest bytes. */
+  public boolean sameHash(Map<String, String> row, Map<String, String> otherRow) {
+    hash(row, first, 0);
+    hash(otherRow, second, 0);
+    return Arrays.equals(first, second);
+  }
+
+  // Field by field hashing, for rows that do not come as maps. Fields must be added in column name order.
+  public void addField(String name, String value) {
+    appendString(name);
+    appendString(value);
+  }
+
+  /** Adds a field whose value is already UTF-8 encoded. */
+  public void addField(String name, byte[] value, int offset, int valueLength) {
+    appendString(name);
+    ensureCapacity(Integer.BYTES + valueLength);
+    appendInt(valueLength);
+    System.arraycopy(value, offset, buffer, length, valueLength);
+    length += valueLength;
+  }
+
+  /** Adds a field whose UTF-8 value is {@code valueLength} bytes of {@code value} from {@code index}, e.g. a mapped file. */
+  public void addField(String name, ByteBuffer value, int index, int valueLength) {
+    appendString(name);
+    ensureCapacity(Integer.BYTES + valueLength);
+    appendInt(valueLength);
+    value.get(index, buffer, length, valueLength);
+    length += valueLength;
+  }
+
+  /** Completes the row built with addField, writing its hash to {@code out} at {@code offset}. */
+  public void finish(byte[] out, int offset) {
+    digest.update(buffer, 0, length);
+    length = 0;
+    try {
+      digest.digest(out, offset, HASH_LENGTH);
+    } catch (DigestException e) {
+      throw new IllegalArgumentException("No room for the hash at offset " + offset, e);
+    }
+  }
+
+  // Buffers the row in the cached column order; false (with nothing buffered) if the row has other columns
+  private boolean hashColumns(Map<String, String> row) {
+    if (row.size() != columns.length) {
+      return false;
+    }
+    for (String column : columns) {
+      String value = row.get(column);
+      if (value == null && !row.containsKey(column)) {
+        length = 0;
+        return false;
+      }
+      addField(column, value);
+    }
+    return true;
+  }
+
+  private void appendString(String value) {
+    if (value == null) {
+      ensureCapacity(Integer.BYTES);
+      appendInt(-1);
+      return;
+    }
+    // Worst case 3 bytes per char: a surrogate pair is 2 chars and 4 bytes
+    ensureCapacity(Integer.BYTES + 3 * value.length());
+    int lengthAt = length;
+    length += Integer.BYTES;
+    for (int i = 0, n = value.length(); i < n; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[length++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[length++] = (byte) (0xC0 | c >> 6);
+        buffer[length++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+        buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+        buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+        buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+      } else if (Character.isSurrogate(c)) {
+        buffer[length++] = '?'; // Unpaired, as String.getBytes encodes it
+      } else {
+        buffer[length++] = (byte) (0xE0 | c >> 12);
+        buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+        buffer[length++] = (byte) (0x80 | c & 0x3F);
+      }
+    }
+    int encoded = length - lengthAt - Integer.BYTES;
+    int end = length;
+    length = lengthAt;
+    appendInt(encoded);
+    length = end;
+  }
+
+  private void appendInt(int value) {
+    buffer[length++] = (byte) (value >>> 24);
+    buffer[length++] = (byte) (value >>> 16);
+    buffer[length++] = (byte) (value >>> 8);
+    buffer[length++] = (byte) value;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(length + extra, 2 * buffer.length));
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package org.example;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * One side of a {@link DBCheckPoint} validation: rows that can be read again from any offset, so an
+ * interrupted validation can resume where it stopped. A database cursor would seek to the offset
+ * (e.g. by key); the adapters here simply read and drop the rows before it.
+ */
+@FunctionalInterface
+public interface RowSource {
+
+  /** Rows from {@code rowOffset} (0-based) onwards, read lazily. */
+  Iterator<? extends Map<String, String>> openAt(long rowOffset);
+
+  static RowSource of(Iterable<? extends Map<String, String>> rows) {
+    return rowOffset -> {
+      Iterator<? extends Map<String, String>> iterator = rows.iterator();
+      for (long skipped = 0; skipped < rowOffset && iterator.hasNext(); skipped++) {
+        iterator.next();
+      }
+      return iterator;
+    };
+  }
+
+  // The supplier is called again for every openAt, so it must produce the same rows each time
+  static RowSource ofStream(Supplier<? extends Stream<? extends Map<String, String>>> rows) {
+    return rowOffset -> rows.get().skip(rowOffset).iterator();
+  }
+}
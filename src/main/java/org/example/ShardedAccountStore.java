@@ -0,0 +1,223 @@
+package org.example;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Balances for millions of accounts, kept in plain long arrays instead of one {@link Account} per
+ * entry. Account numbers are handed out in order and spread round robin over the shards, so
+ * neighbouring accounts do not share a cache line. Every update is a single atomic array operation:
+ * a debit is a compare-and-set that refuses to go below zero, a credit is an atomic add, and no
+ * lock is taken.
+ *
+ * <p>An account that receives most of the traffic can be made hot: its credits then go to one of
+ * several padded sub-balances picked per thread, and reads add them up. A debit that finds the
+ * main balance short first merges the sub-balances into it.
+ *
+ * <p>A transfer is a debit followed by a credit. Each account is always exact on its own, but a
+ * sum over all accounts only includes every transfer once none are in progress.
+ */
+public class ShardedAccountStore {
+
+  private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+  private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[][].class);
+  // One sub-balance per 64 bytes, so concurrent credits to a hot account do not share cache lines
+  private static final int CELL_STRIDE = 8;
+  private static final Integer RESERVED = -1;
+
+  private final int shardShift;
+  private final int shardMask;
+  private final long[][] balances;
+  // Sub-balances of hot accounts, null for the others
+  private final long[][][] cells;
+  private final int cellCount;
+  private final int capacity;
+  private final AtomicInteger size = new AtomicInteger();
+  // Account number per id; RESERVED while the account is being added, which numberOf reports as missing
+  private final Map<String, Integer> numbers = new ConcurrentHashMap<>();
+
+  /** {@code shardCount} is rounded up to a power of two. */
+  public ShardedAccountStore(int shardCount, int capacity) {
+    if (shardCount <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Shard count and capacity must be positive.");
+    }
+    int shards = Integer.highestOneBit(shardCount - 1) << 1;
+    shards = Math.max(1, shards);
+    shardShift = Integer.numberOfTrailingZeros(shards);
+    shardMask = shards - 1;
+    this.capacity = capacity;
+    int perShard = (capacity + shards - 1) >>> shardShift;
+    balances = new long[shards][perShard];
+    cells = new long[shards][perShard][];
+    cellCount = Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1;
+  }
+
+  /** Adds an account without a name and returns its number. */
+  public int addAccount(long balance) {
+    if (balance < 0) {
+      throw new IllegalArgumentException("Balance must not be negative.");
+    }
+    int number = size.getAndIncrement();
+    if (number >= capacity) {
+      size.decrementAndGet();
+      throw new IllegalStateException("Account store is full (" + capacity + " accounts).");
+    }
+    LONGS.setRelease(balances[number & shardMask], number >>> shardShift, balance);
+    return number;
+  }
+
+  /** Adds an account that can also be found by its id, and returns its number. */
+  public int addAccount(String accountId, long balance) {
+    // The id is reserved before the slot is funded, so a caller that loses a race creates no money
+    if (numbers.putIfAbsent(accountId, RESERVED) != null) {
+      throw new IllegalArgumentException("Account already exists: " + accountId);
+    }
+    int number;
+    try {
+      number = addAccount(balance);
+    } catch (RuntimeException e) {
+      numbers.remove(accountId, RESERVED);
+      throw e;
+    }
+    numbers.put(accountId, number);
+    return number;
+  }
+
+  // Account number for an id, or -1
+  public int numberOf(String accountId) {
+    Integer number = numbers.get(accountId);
+    return number == null ? -1 : number;
+  }
+
+  public int size() {
+    return Math.min(size.get(), capacity);
+  }
+
+  public TransferResult transfer(String fromAccount, String toAccount, long amount) {
+    int from = numberOf(fromAccount);
+    int to = numberOf(toAccount);
+    if (from < 0 || to < 0) {
+      return TransferResult.ACCOUNT_NOT_FOUND;
+    }
+    return transfer(from, to, amount);
+  }
+
+  public TransferResult transfer(int fromAccount, int toAccount, long amount) {
+    if (!exists(fromAccount) || !exists(toAccount)) {
+      return TransferResult.ACCOUNT_NOT_FOUND;
+    }
+    if (amount <= 0) {
+      return TransferResult.INVALID_AMOUNT;
+    }
+    if (!debit(fromAccount, amount)) {
+      return TransferResult.INSUFFICIENT_FUNDS;
+    }
+    credit(toAccount, amount);
+    return TransferResult.COMMITTED;
+  }
+
+  /**
+   * Spreads future credits of the account over sub-balances. Worth it for the few accounts that
+   * most transfers pay into; each hot account costs a few hundred bytes.
+   */
+  public void makeHot(int account) {
+    checkExists(account);
+    long[][] shardCells = cells[account & shardMask];
+    CELLS.compareAndSet(shardCells, account >>> shardShift, null, new long[(cellCount + 1) * CELL_STRIDE]);
+  }
+
+  public boolean isHot(int account) {
+    checkExists(account);
+    return CELLS.getAcquire(cells[account & shardMask], account >>> shardShift) != null;
+  }
+
+  public long getBalance(String accountId) {
+    int number = numberOf(accountId);
+    if (number < 0) {
+      throw new IllegalArgumentException("Account not found.");
+    }
+    return getBalance(number);
+  }
+
+  public long getBalance(int account) {
+    checkExists(account);
+    int shard = account & shardMask;
+    int slot = account >>> shardShift;
+    // Main balance first: a concurrent merge moves money from the cells into it, so this order
+    // can only miss money for an instant, never count it twice
+    long balance = (long) LONGS.getVolatile(balances[shard], slot);
+    long[] accountCells = (long[]) CELLS.getAcquire(cells[shard], slot);
+    if (accountCells != null) {
+      for (int i = CELL_STRIDE; i < accountCells.length; i += CELL_STRIDE) {
+        balance += (long) LONGS.getVolatile(accountCells, i);
+      }
+    }
+    return balance;
+  }
+
+  // Exact only while no transfer is in progress
+  public long getTotalBalance() {
+    long total = 0;
+    for (int account = 0, n = size(); account < n; account++) {
+      total += getBalance(account);
+    }
+    return total;
+  }
+
+  private boolean debit(int account, long amount) {
+    int shard = account & shardMask;
+    int slot = account >>> shardShift;
+    long[] shardBalances = balances[shard];
+    if (tryDebit(shardBalances, slot, amount)) {
+      return true;
+    }
+    long[] accountCells = (long[]) CELLS.getAcquire(cells[shard], slot);
+    if (accountCells == null) {
+      return false;
+    }
+    long merged = 0;
+    for (int i = CELL_STRIDE; i < accountCells.length; i += CELL_STRIDE) {
+      merged += (long) LONGS.getAndSet(accountCells, i, 0L);
+    }
+    LONGS.getAndAdd(shardBalances, slot, merged);
+    return tryDebit(shardBalances, slot, amount);
+  }
+
+  private static boolean tryDebit(long[] shardBalances, int slot, long amount) {
+    long current;
+    do {
+      current = (long) LONGS.getVolatile(shardBalances, slot);
+      if (current < amount) {
+        return false;
+      }
+    } while (!LONGS.compareAndSet(shardBalances, slot, current, current - amount));
+    return true;
+  }
+
+  private void credit(int account, long amount) {
+    int shard = account & shardMask;
+    int slot = account >>> shardShift;
+    long[] accountCells = (long[]) CELLS.getAcquire(cells[shard], slot);
+    if (accountCells == null) {
+      LONGS.getAndAdd(balances[shard], slot, amount);
+    } else {
+      // A thread keeps hitting the same sub-balance, so its cache line stays with that core
+      int probe = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 40);
+      int cell = 1 + (probe & (cellCount - 1));
+      LONGS.getAndAdd(accountCells, cell * CELL_STRIDE, amount);
+    }
+  }
+
+  private boolean exists(int account) {
+    return account >= 0 && account < size();
+  }
+
+  private void checkExists(int account) {
+    if (!exists(account)) {
+      throw new IllegalArgumentException("Account not found.");
+    }
+  }
+}
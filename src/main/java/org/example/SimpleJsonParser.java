@@ -1,32 +1,92 @@
 package org.example;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class SimpleJsonParser {
 
   public static Object parse(String json) {
-    json = json.trim();
-    if (json.startsWith("{")) {
-      return parseObject(new JsonReader(json));
-    } else if (json.startsWith("[")) {
-      return parseArray(new JsonReader(json));
+    return parse(json, NumberPolicy.ALWAYS_BIG);
+  }
+
+  // With numbers converted as the policy says
+  public static Object parse(String json, NumberPolicy numbers) {
+    JsonReader reader = new JsonReader(json);
+    reader.skipWhitespace();
+    if (reader.hasNext() && reader.peek() == '{') {
+      return parseObject(reader, numbers);
+    } else if (reader.hasNext() && reader.peek() == '[') {
+      return parseArray(reader, numbers);
     } else {
       throw new IllegalArgumentException("Invalid JSON input.");
     }
   }
 
-  private static Map<String, Object> parseObject(JsonReader reader) {
+  // The same, read straight from UTF-8 bytes, see Utf8JsonParser
+  public static Object parse(byte[] json) {
+    return parse(json, NumberPolicy.ALWAYS_BIG);
+  }
+
+  public static Object parse(byte[] json, NumberPolicy numbers) {
+    Utf8JsonParser parser = new Utf8JsonParser(json);
+    parser.setNumberPolicy(numbers);
+    JsonEvent first = parser.next();
+    if (first != JsonEvent.START_OBJECT && first != JsonEvent.START_ARRAY) {
+      throw new IllegalArgumentException("Invalid JSON input.");
+    }
+    return parser.readValue();
+  }
+
+  /**
+   * Like {@link #parse(byte[])}, with objects as read-only {@link JsonRecord}s: the records of an
+   * array share one key schema and hold only their values, which takes far less heap than a
+   * LinkedHashMap per record.
+   */
+  public static Object parseCompact(byte[] json) {
+    return parseCompact(json, NumberPolicy.ALWAYS_BIG);
+  }
+
+  public static Object parseCompact(byte[] json, NumberPolicy numbers) {
+    Utf8JsonParser parser = new Utf8JsonParser(json);
+    parser.setNumberPolicy(numbers);
+    JsonEvent first = parser.next();
+    if (first != JsonEvent.START_OBJECT && first != JsonEvent.START_ARRAY) {
+      throw new IllegalArgumentException("Invalid JSON input.");
+    }
+    return parser.readCompactValue();
+  }
+
+  /**
+   * The JSON bound straight into the type, such as a record, an array of records or a class with
+   * fields, without building maps first; fields the type lacks are skipped.
+   */
+  public static <T> T parse(byte[] json, Class<T> type) {
+    Utf8JsonParser parser = new Utf8JsonParser(json);
+    if (parser.next() == null) {
+      throw new IllegalArgumentException("Invalid JSON input.");
+    }
+    return parser.readValue(type);
+  }
+
+  public static <T> T parse(String json, Class<T> type) {
+    return parse(json.getBytes(StandardCharsets.UTF_8), type);
+  }
+
+  private static Map<String, Object> parseObject(JsonReader reader, NumberPolicy numbers) {
     reader.expect('{');
     Map<String, Object> map = new LinkedHashMap<>();
+    reader.skipWhitespace();
+    if (reader.peek() == '}') {
+      reader.next();
+      return map;
+    }
 
     while (reader.hasNext()) {
       reader.skipWhitespace();
-      String key = reader.readString();
+      String key = reader.readKey();
       reader.skipWhitespace();
       reader.expect(':');
-      Object value = parseValue(reader);
+      Object value = parseValue(reader, numbers);
       map.put(key, value);
       reader.skipWhitespace();
       if (reader.peek() == '}') {
@@ -39,13 +99,18 @@ public class SimpleJsonParser {
     throw new IllegalArgumentException("Unterminated JSON object.");
   }
 
-  private static List<Object> parseArray(JsonReader reader) {
+  private static List<Object> parseArray(JsonReader reader, NumberPolicy numbers) {
     reader.expect('[');
     List<Object> list = new ArrayList<>();
+    reader.skipWhitespace();
+    if (reader.peek() == ']') {
+      reader.next();
+      return list;
+    }
 
     while (reader.hasNext()) {
       reader.skipWhitespace();
-      list.add(parseValue(reader));
+      list.add(parseValue(reader, numbers));
 
       reader.skipWhitespace();
       if (reader.peek() == ']') {
@@ -58,18 +123,18 @@ public class SimpleJsonParser {
     throw new IllegalArgumentException("Unterminated JSON array.");
   }
 
-  private static Object parseValue(JsonReader reader) {
+  private static Object parseValue(JsonReader reader, NumberPolicy numbers) {
     reader.skipWhitespace();
     char next = reader.peek();
 
     if (next == '"') {
       return reader.readString();
     } else if (next == '{') {
-      return parseObject(reader);
+      return parseObject(reader, numbers);
     } else if (next == '[') {
-      return parseArray(reader);
+      return parseArray(reader, numbers);
     } else if (Character.isDigit(next) || next == '-') {
-      return reader.readNumber();
+      return reader.readNumber(numbers);
     } else if (next == 't' || next == 'f') {
       return reader.readBoolean();
     } else if (next == 'n') {
@@ -79,104 +144,6 @@ public class SimpleJsonParser {
     }
   }
 
-  private static class JsonReader {
-    private final String json;
-    private int index;
-
-    JsonReader(String json) {
-      this.json = json;
-      this.index = 0;
-    }
-
-    boolean hasNext() {
-      return index < json.length();
-    }
-
-    char next() {
-      return json.charAt(index++);
-    }
-
-    char peek() {
-      return json.charAt(index);
-    }
-
-    void expect(char expected) {
-      char actual = next();
-      if (actual != expected) {
-        throw new IllegalArgumentException("Expected '" + expected + "' but got '" + actual + "'");
-      }
-    }
-
-    void skipWhitespace() {
-      while (hasNext() && Character.isWhitespace(peek())) {
-        index++;
-      }
-    }
-
-    String readString() {
-      expect('"');
-      StringBuilder sb = new StringBuilder();
-      while (hasNext()) {
-        char c = next();
-        if (c == '"') {
-          return sb.toString();
-        } else if (c == '\\') {
-          char escaped = next();
-          switch (escaped) {
-            case '"': sb.append('"'); break;
-            case '\\': sb.append('\\'); break;
-            case '/': sb.append('/'); break;
-            case 'b': sb.append('\b'); break;
-            case 'f': sb.append('\f'); break;
-            case 'n': sb.append('\n'); break;
-            case 'r': sb.append('\r'); break;
-            case 't': sb.append('\t'); break;
-            default: throw new IllegalArgumentException("Invalid escape sequence: \\" + escaped);
-          }
-        } else {
-          sb.append(c);
-        }
-      }
-      throw new IllegalArgumentException("Unterminated string.");
-    }
-
-    Object readNumber() {
-      StringBuilder sb = new StringBuilder();
-      char firstChar = peek();
-      if (firstChar == '-') {
-        sb.append(next());
-      }
-      while (hasNext() && (Character.isDigit(peek()) || peek() == '.')) {
-        sb.append(next());
-      }
-      String numberStr = sb.toString();
-      if (numberStr.contains(".")) {
-        return new BigDecimal(numberStr);
-      } else {
-        return new BigInteger(numberStr);
-      }
-    }
-
-    Boolean readBoolean() {
-      if (json.startsWith("true", index)) {
-        index += 4;
-        return true;
-      } else if (json.startsWith("false", index)) {
-        index += 5;
-        return false;
-      }
-      throw new IllegalArgumentException("Expected boolean value.");
-    }
-
-    Object readNull() {
-      if (json.startsWith("null", index)) {
-        index += 4;
-        return null;
-      }
-      throw new IllegalArgumentException("Expected null value.");
-    }
-  }
-
   public static void main(String[] args) {
     String jsonString = "{ \"name\": \"Alice\", \"age\": 30, \"isStudent\": false, \"scores\": [88.5, 90.0, 95.75], \"address\": {\"city\": \"Wonderland\", \"zip\": null} }";
     Object result = parse(jsonString);
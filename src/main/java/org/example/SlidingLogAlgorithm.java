@@ -0,0 +1,57 @@
+package org.example;
+
+/**
+ * Exact sliding log: remembers the time of every call in the window. Memory and work per call are
+ * O(maxCalls), which is fine for small limits.
+ */
+public class SlidingLogAlgorithm implements RateLimitAlgorithm<SlidingLogAlgorithm.State> {
+
+  @Override
+  public State newState(String clientId, RateLimitTier tier, long now) {
+    return new State(tier.maxCalls());
+  }
+
+  @Override
+  public boolean tryAcquire(State state, RateLimitTier tier, long now, int permits) {
+    // Remove timestamps older than the window
+    state.expireOlderThan(now - tier.window().toNanos());
+
+    // Compared as room left, a huge permits would overflow callCount + permits
+    if (permits > tier.maxCalls() - state.callCount) {
+      return false;
+    }
+    for (int i = 0; i < permits; i++) {
+      state.record(now);
+    }
+    return true;
+  }
+
+  @Override
+  public void reset(State state, RateLimitTier tier, long now) {
+    state.callHead = 0;
+    state.callCount = 0;
+  }
+
+  public static class State {
+    // Ring buffer of call timestamps in the current window, oldest at callHead
+    private final long[] callTimestamps;
+    private int callHead;
+    private int callCount;
+
+    State(int capacity) {
+      callTimestamps = new long[capacity];
+    }
+
+    void expireOlderThan(long windowStart) {
+      while (callCount > 0 && callTimestamps[callHead] - windowStart < 0) {
+        callHead = (callHead + 1) % callTimestamps.length;
+        callCount--;
+      }
+    }
+
+    void record(long timestamp) {
+      callTimestamps[(callHead + callCount) % callTimestamps.length] = timestamp;
+      callCount++;
+    }
+  }
+}
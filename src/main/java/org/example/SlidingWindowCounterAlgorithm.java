@@ -0,0 +1,56 @@
+package org.example;
+
+/**
+ * Approximate sliding window: counts calls in fixed windows and weights the previous window's count
+ * by how much of it still overlaps the sliding window. O(1) state per client; assumes calls in the
+ * previous window were evenly spread.
+ */
+public class SlidingWindowCounterAlgorithm implements RateLimitAlgorithm<SlidingWindowCounterAlgorithm.State> {
+
+  @Override
+  public State newState(String clientId, RateLimitTier tier, long now) {
+    State state = new State();
+    reset(state, tier, now);
+    return state;
+  }
+
+  @Override
+  public boolean tryAcquire(State state, RateLimitTier tier, long now, int permits) {
+    long window = tier.window().toNanos();
+    long elapsed = now - state.windowStart;
+    if (elapsed >= window) {
+      // Roll forward; a gap of two or more windows leaves nothing to carry over
+      state.previousCount = elapsed < 2 * window ? state.currentCount : 0;
+      state.currentCount = 0;
+      state.windowStart = now - elapsed % window;
+      elapsed = now - state.windowStart;
+    }
+
+    double previousWeight = (double) (window - elapsed) / window;
+    double estimated = state.previousCount * previousWeight + state.currentCount;
+    if (estimated + permits > tier.maxCalls()) {
+      return false;
+    }
+    state.currentCount += permits;
+    return true;
+  }
+
+  @Override
+  public void reset(State state, RateLimitTier tier, long now) {
+    state.windowStart = now;
+    state.previousCount = 0;
+    state.currentCount = 0;
+  }
+
+  @Override
+  public long idleTimeout(RateLimitTier tier) {
+    // The previous window's count is carried for one more window
+    return 2 * tier.window().toNanos();
+  }
+
+  public static class State {
+    private long windowStart;
+    private int previousCount;
+    private int currentCount;
+  }
+}
@@ -0,0 +1,14 @@
+package org.example;
+
+/**
+ * Monotonic time in nanoseconds. Only differences between readings are meaningful, as with
+ * {@link System#nanoTime()}.
+ */
+@FunctionalInterface
+public interface TimeSource {
+
+  // Immune to wall clock steps (NTP, manual changes), unlike System.currentTimeMillis()
+  TimeSource SYSTEM = System::nanoTime;
+
+  long nanoTime();
+}
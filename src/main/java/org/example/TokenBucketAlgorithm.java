@@ -0,0 +1,59 @@
+package org.example;
+
+/**
+ * Token bucket holding up to maxCalls tokens, refilled evenly so that a full bucket refills in one
+ * window. Allows a burst of maxCalls, then maxCalls per window on average. O(1) state per client.
+ */
+public class TokenBucketAlgorithm implements RateLimitAlgorithm<TokenBucketAlgorithm.State> {
+
+  @Override
+  public State newState(String clientId, RateLimitTier tier, long now) {
+    State state = new State();
+    reset(state, tier, now);
+    return state;
+  }
+
+  @Override
+  public boolean tryAcquire(State state, RateLimitTier tier, long now, int permits) {
+    refill(state, tier, now);
+
+    if (state.tokens < permits) {
+      return false;
+    }
+    state.tokens -= permits;
+    return true;
+  }
+
+  // Takes as many whole tokens as are available, at most permits
+  int acquireUpTo(State state, RateLimitTier tier, long now, int permits) {
+    refill(state, tier, now);
+    int granted = (int) Math.min(permits, Math.floor(state.tokens));
+    state.tokens -= granted;
+    return granted;
+  }
+
+  // Puts back tokens that were taken but not used
+  void refund(State state, RateLimitTier tier, int permits) {
+    state.tokens = Math.min(tier.maxCalls(), state.tokens + permits);
+  }
+
+  private static void refill(State state, RateLimitTier tier, long now) {
+    long elapsed = now - state.lastRefill;
+    if (elapsed > 0) {
+      double refill = (double) elapsed * tier.maxCalls() / tier.window().toNanos();
+      state.tokens = Math.min(tier.maxCalls(), state.tokens + refill);
+      state.lastRefill = now;
+    }
+  }
+
+  @Override
+  public void reset(State state, RateLimitTier tier, long now) {
+    state.tokens = tier.maxCalls();
+    state.lastRefill = now;
+  }
+
+  public static class State {
+    private double tokens;
+    private long lastRefill;
+  }
+}
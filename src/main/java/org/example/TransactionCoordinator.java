@@ -0,0 +1,203 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-phase commit of transfers whose accounts live on different {@link Participant}s.
+ *
+ * <p>Phase one sends prepare to every participant involved in parallel and waits up to the prepare
+ * timeout for the votes. If all vote yes, the decision is logged durably and commit is sent to all
+ * of them, waiting as long again for their acknowledgements; otherwise, or on timeout or failure,
+ * every participant is told to abort (a late voter as soon as its vote arrives). Aborts are never
+ * logged: presumed abort.
+ *
+ * <p>If the coordinator stops between the two phases, participants keep their reservations in
+ * doubt until {@link #recover} resolves them from the decision log.
+ */
+public class TransactionCoordinator {
+
+  // Transaction ids reserved in the decision log at a time, one forced write per block
+  private static final long ID_BLOCK = 1024;
+
+  private final List<Participant> participants;
+  private final DecisionLog decisionLog;
+  private final Executor executor;
+  private final long prepareTimeoutNanos;
+  private final Map<String, Participant> routes = new ConcurrentHashMap<>();
+  private final AtomicLong nextTransactionId;
+  // Highest id reserved in the decision log, raised under this object's monitor
+  private volatile long reservedTransactionId;
+
+  public TransactionCoordinator(List<? extends Participant> participants, DecisionLog decisionLog,
+      Executor executor, Duration prepareTimeout) {
+    this.participants = List.copyOf(participants);
+    this.decisionLog = decisionLog;
+    this.executor = executor;
+    this.prepareTimeoutNanos = prepareTimeout.toNanos();
+    this.reservedTransactionId = decisionLog.highestTransactionId();
+    this.nextTransactionId = new AtomicLong(reservedTransactionId + 1);
+  }
+
+  public TransferResult transfer(String fromAccount, String toAccount, long amount) {
+    return execute(List.of(new Transfer(fromAccount, toAccount, amount)));
+  }
+
+  /** Applies all of the transfers or none of them. */
+  public TransferResult execute(List<Transfer> transfers) {
+    // Net change per account, grouped by the participant that owns it
+    Map<Participant, Map<String, Long>> deltas = new LinkedHashMap<>();
+    for (Transfer transfer : transfers) {
+      Participant sender = route(transfer.fromAccount());
+      Participant receiver = route(transfer.toAccount());
+      if (sender == null || receiver == null) {
+        return TransferResult.ACCOUNT_NOT_FOUND;
+      }
+      if (transfer.amount() <= 0) {
+        return TransferResult.INVALID_AMOUNT;
+      }
+      deltas.computeIfAbsent(sender, p -> new LinkedHashMap<>()).merge(transfer.fromAccount(), -transfer.amount(), Long::sum);
+      deltas.computeIfAbsent(receiver, p -> new LinkedHashMap<>()).merge(transfer.toAccount(), transfer.amount(), Long::sum);
+    }
+
+    long transactionId = newTransactionId();
+    List<Participant> involved = new ArrayList<>(deltas.keySet());
+    List<CompletableFuture<Boolean>> votes = new ArrayList<>(involved.size());
+    for (Participant participant : involved) {
+      Map<String, Long> participantDeltas = deltas.get(participant);
+      votes.add(CompletableFuture.supplyAsync(() -> participant.prepare(transactionId, participantDeltas), executor));
+    }
+
+    TransferResult outcome = collectVotes(votes);
+    if (outcome != TransferResult.COMMITTED) {
+      for (int i = 0; i < involved.size(); i++) {
+        Participant participant = involved.get(i);
+        // A participant that has not voted yet is aborted once it does
+        votes.get(i).whenCompleteAsync((vote, error) -> abortQuietly(participant, transactionId), executor);
+      }
+      return outcome;
+    }
+
+    decisionLog.commit(transactionId); // The point of no return
+    List<CompletableFuture<Void>> acks = new ArrayList<>(involved.size());
+    for (Participant participant : involved) {
+      acks.add(CompletableFuture.runAsync(() -> participant.commit(transactionId), executor));
+    }
+    try {
+      // Bounded like the votes, so a hung participant cannot hold the caller
+      CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).get(prepareTimeoutNanos, TimeUnit.NANOSECONDS);
+      decisionLog.forget(transactionId);
+    } catch (TimeoutException | ExecutionException e) {
+      // Committed all the same; recover() finishes it on the participants that missed it
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return TransferResult.COMMITTED;
+  }
+
+  /**
+   * Resolves every in-doubt transaction on every participant: committed if the decision log says
+   * so, aborted otherwise. A commit that every participant has now applied is forgotten. Returns
+   * the number of transactions resolved; if a participant fails, the rest are still resolved and
+   * the first failure is thrown at the end.
+   */
+  public int recover() {
+    int resolved = 0;
+    // Commits resolved here, and whether every participant holding them applied them
+    Map<Long, Boolean> commits = new LinkedHashMap<>();
+    RuntimeException failure = null;
+    for (Participant participant : participants) {
+      for (long transactionId : participant.inDoubt()) {
+        nextTransactionId.accumulateAndGet(transactionId + 1, Math::max);
+        boolean committed = decisionLog.isCommitted(transactionId);
+        try {
+          if (committed) {
+            participant.commit(transactionId);
+          } else {
+            participant.abort(transactionId);
+          }
+          resolved++;
+        } catch (RuntimeException e) {
+          committed = false;
+          commits.put(transactionId, false);
+          failure = failure == null ? e : failure;
+        }
+        if (committed) {
+          commits.putIfAbsent(transactionId, true);
+        }
+      }
+    }
+    commits.forEach((transactionId, applied) -> {
+      if (applied) {
+        decisionLog.forget(transactionId);
+      }
+    });
+    if (failure != null) {
+      throw failure;
+    }
+    return resolved;
+  }
+
+  // An id is only handed out once it is reserved in the decision log, aborted or not it is never reused
+  private long newTransactionId() {
+    long transactionId = nextTransactionId.getAndIncrement();
+    if (transactionId > reservedTransactionId) {
+      synchronized (this) {
+        if (transactionId > reservedTransactionId) {
+          long reserved = transactionId + ID_BLOCK - 1;
+          decisionLog.reserve(reserved);
+          reservedTransactionId = reserved;
+        }
+      }
+    }
+    return transactionId;
+  }
+
+  private TransferResult collectVotes(List<CompletableFuture<Boolean>> votes) {
+    long deadline = System.nanoTime() + prepareTimeoutNanos;
+    for (CompletableFuture<Boolean> vote : votes) {
+      try {
+        if (!vote.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+          return TransferResult.INSUFFICIENT_FUNDS; // One no is enough, the rest need not be waited for
+        }
+      } catch (TimeoutException | ExecutionException e) {
+        return TransferResult.ROLLED_BACK;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return TransferResult.ROLLED_BACK;
+      }
+    }
+    return TransferResult.COMMITTED;
+  }
+
+  private Participant route(String accountId) {
+    Participant route = routes.get(accountId);
+    if (route == null) {
+      for (Participant participant : participants) {
+        if (participant.hasAccount(accountId)) {
+          routes.put(accountId, participant);
+          return participant;
+        }
+      }
+    }
+    return route;
+  }
+
+  private static void abortQuietly(Participant participant, long transactionId) {
+    try {
+      participant.abort(transactionId);
+    } catch (RuntimeException e) {
+      // Left in doubt; recover() aborts it later
+    }
+  }
+}
@@ -0,0 +1,5 @@
+package org.example;
+
+// One item of a BankTransferSystem.transferBatch; amount is in minor units (e.g. cents)
+public record Transfer(String fromAccount, String toAccount, long amount) {
+}
@@ -0,0 +1,416 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of transfers, plus the balance snapshot it is replayed on top of.
+ *
+ * <p>Every transfer or batch writes a PREPARE record with its items, then a COMMIT record (naming
+ * any items that failed) or a ROLLBACK record. A transaction without a COMMIT is presumed aborted
+ * on recovery. Records are framed as [length][crc32][payload]; a torn record at the tail ends the
+ * log and is cut off on open.
+ *
+ * <p>Records are collected in memory and {@link #sync} writes everything collected so far with one
+ * write and one fsync. In {@link SyncMode#GROUP} mode a caller whose position was covered by
+ * another thread's sync returns without syncing, so concurrent transfers share one write and fsync.
+ * Until a transaction's COMMIT is synced it may be lost, and is then presumed aborted.
+ *
+ * <p>A failed write or fsync fails the log for good: the records it was writing may be partly on
+ * disk, and the balances in memory already include them, so every later prepare and sync throws
+ * and the caller must reopen the log to get back to the last durable state.
+ *
+ * <p>{@link #checkpoint} writes a new snapshot and empties the log. The snapshot and the log carry
+ * a generation number, so a log left over from before a snapshot is never replayed twice.
+ */
+public class TransferLog implements Closeable {
+
+  public enum SyncMode {
+    // Every sync call forces the file itself, one at a time
+    PER_TRANSFER,
+    // A sync call already covered by a concurrent force returns immediately
+    GROUP
+  }
+
+  private static final String LOG_FILE = "transfers.wal";
+  private static final String SNAPSHOT_FILE = "balances.snapshot";
+  private static final int HEADER_SIZE = Long.BYTES;
+
+  private static final byte PREPARE = 1;
+  private static final byte COMMIT = 2;
+  private static final byte ROLLBACK = 3;
+
+  private final Path directory;
+  private final SyncMode syncMode;
+  private final FileChannel channel;
+  private long generation;
+
+  // Guards appends and the pending buffer
+  private final Object appendLock = new Object();
+  // Records appended since the last sync
+  private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+  // Records being written by the syncing thread, which holds syncLock
+  private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024);
+  private int recordStart;
+  private final CRC32 crc = new CRC32();
+  private long nextTransactionId = 1;
+  // Logical positions: they keep growing across checkpoints, unlike file offsets
+  private long appendedPosition;
+  private long logStartPosition;
+  private volatile long durablePosition;
+  private final ReentrantLock syncLock = new ReentrantLock();
+  // The first failed write or force; once set the log accepts nothing more
+  private volatile IOException failure;
+
+  private final Map<String, Long> recoveredBalances;
+
+  private TransferLog(Path directory, SyncMode syncMode) throws IOException {
+    this.directory = directory;
+    this.syncMode = syncMode;
+    Files.createDirectories(directory);
+
+    Snapshot snapshot = readSnapshot();
+    recoveredBalances = snapshot == null ? null : snapshot.balances;
+    generation = snapshot == null ? 0 : snapshot.generation;
+
+    channel = FileChannel.open(directory.resolve(LOG_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long logGeneration = readLogGeneration();
+    if (snapshot != null && logGeneration == generation) {
+      long end = replay(recoveredBalances);
+      channel.truncate(end); // Drop a torn tail so new records follow the last good one
+      channel.position(end);
+      logStartPosition = HEADER_SIZE;
+      appendedPosition = end;
+    } else {
+      // No log yet, or one that the snapshot already includes
+      startLog();
+    }
+    durablePosition = appendedPosition;
+  }
+
+  public static TransferLog open(Path directory, SyncMode syncMode) {
+    try {
+      return new TransferLog(directory, syncMode);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open transfer log in " + directory, e);
+    }
+  }
+
+  /** Balances as of the last durable commit, or null if the directory has never been checkpointed. */
+  public Map<String, Long> recoveredBalances() {
+    return recoveredBalances;
+  }
+
+  /** Logs the intent to apply the transfers and returns the new transaction's id. */
+  public long prepare(List<Transfer> transfers) {
+    checkNotFailed();
+    synchronized (appendLock) {
+      long transactionId = nextTransactionId++;
+      int size = 1 + Long.BYTES + Integer.BYTES;
+      for (Transfer transfer : transfers) {
+        size += 2 * Short.BYTES + utf8Length(transfer.fromAccount()) + utf8Length(transfer.toAccount()) + Long.BYTES;
+      }
+      ByteBuffer payload = startRecord(size);
+      payload.put(PREPARE).putLong(transactionId).putInt(transfers.size());
+      for (Transfer transfer : transfers) {
+        putString(payload, transfer.fromAccount());
+        putString(payload, transfer.toAccount());
+        payload.putLong(transfer.amount());
+      }
+      append();
+      return transactionId;
+    }
+  }
+
+  /** Logs that the transaction took effect except for the given item indexes; returns its log position. */
+  public long commit(long transactionId, int[] failedItems, int failedCount) {
+    synchronized (appendLock) {
+      ByteBuffer payload = startRecord(1 + Long.BYTES + Integer.BYTES + failedCount * Integer.BYTES);
+      payload.put(COMMIT).putLong(transactionId).putInt(failedCount);
+      for (int i = 0; i < failedCount; i++) {
+        payload.putInt(failedItems[i]);
+      }
+      return append();
+    }
+  }
+
+  /** Logs that the transaction changed nothing. It needs no sync: an unsynced rollback is presumed anyway. */
+  public void rollback(long transactionId) {
+    synchronized (appendLock) {
+      startRecord(1 + Long.BYTES).put(ROLLBACK).putLong(transactionId);
+      append();
+    }
+  }
+
+  /** Returns once every record up to {@code position} is on disk. */
+  public void sync(long position) {
+    if (syncMode == SyncMode.GROUP && durablePosition >= position) {
+      return;
+    }
+
+    syncLock.lock();
+    try {
+      if (syncMode == SyncMode.GROUP && durablePosition >= position) {
+        return; // The force we waited behind covered us
+      }
+      checkNotFailed();
+      durablePosition = flushAndForce();
+    } catch (IOException e) {
+      failure = e; // What reached the disk is unknown, a retry could not tell
+      throw new UncheckedIOException("Cannot sync transfer log in " + directory, e);
+    } finally {
+      syncLock.unlock();
+    }
+  }
+
+  private void checkNotFailed() {
+    IOException failed = failure;
+    if (failed != null) {
+      throw new UncheckedIOException("Transfer log in " + directory + " failed earlier, reopen it to recover", failed);
+    }
+  }
+
+  // Caller holds syncLock; returns the position that is now durable
+  private long flushAndForce() throws IOException {
+    ByteBuffer full;
+    long target;
+    synchronized (appendLock) {
+      full = pending;
+      pending = flushing;
+      flushing = full;
+      target = appendedPosition;
+    }
+    full.flip();
+    while (full.hasRemaining()) {
+      channel.write(full);
+    }
+    full.clear();
+    channel.force(false);
+    return target;
+  }
+
+  /**
+   * Makes {@code balances} the new recovery starting point and empties the log. The caller must
+   * make sure no transfer is in progress, so that the balances include every logged commit.
+   */
+  public void checkpoint(Map<String, Long> balances) {
+    syncLock.lock(); // Keeps a sync from writing old records into the new log
+    try {
+      checkNotFailed();
+      synchronized (appendLock) {
+        writeSnapshot(generation + 1, balances);
+        generation++;
+        pending.clear(); // Covered by the snapshot
+        startLog();
+        durablePosition = appendedPosition;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Checkpoint failed in " + directory, e);
+    } finally {
+      syncLock.unlock();
+    }
+  }
+
+  /** Bytes of log written since the last checkpoint. */
+  public long size() {
+    synchronized (appendLock) {
+      return appendedPosition - logStartPosition;
+    }
+  }
+
+  // Syncs whatever is pending, then closes the file
+  @Override
+  public void close() {
+    try {
+      if (failure == null) {
+        sync(appendedPosition());
+      }
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private long appendedPosition() {
+    synchronized (appendLock) {
+      return appendedPosition;
+    }
+  }
+
+  // Caller holds appendLock; returns the pending buffer positioned at the start of the payload
+  private ByteBuffer startRecord(int payloadSize) {
+    int recordSize = 2 * Integer.BYTES + payloadSize;
+    if (pending.remaining() < recordSize) {
+      ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.position() + recordSize, 2 * pending.capacity()));
+      pending.flip();
+      pending = larger.put(pending);
+    }
+    recordStart = pending.position();
+    pending.putInt(payloadSize).putInt(0); // crc is filled in by append
+    return pending;
+  }
+
+  // Caller holds appendLock
+  private long append() {
+    int payloadStart = recordStart + 2 * Integer.BYTES;
+    crc.reset();
+    crc.update(pending.array(), payloadStart, pending.position() - payloadStart);
+    pending.putInt(recordStart + Integer.BYTES, (int) crc.getValue());
+    appendedPosition += pending.position() - recordStart;
+    return appendedPosition;
+  }
+
+  // Replays committed transactions onto balances and returns the file offset after the last good record
+  private long replay(Map<String, Long> balances) throws IOException {
+    ByteBuffer file = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, channel.size()));
+    channel.read(file, 0);
+    file.flip();
+    file.position(HEADER_SIZE);
+
+    Map<Long, List<Transfer>> prepared = new HashMap<>();
+    while (file.remaining() >= 2 * Integer.BYTES) {
+      int start = file.position();
+      int size = file.getInt();
+      int checksum = file.getInt();
+      if (size <= 0 || size > file.remaining()) {
+        file.position(start);
+        break;
+      }
+      crc.reset();
+      crc.update(file.array(), file.position(), size);
+      if ((int) crc.getValue() != checksum) {
+        file.position(start);
+        break;
+      }
+
+      byte type = file.get();
+      long transactionId = file.getLong();
+      nextTransactionId = Math.max(nextTransactionId, transactionId + 1);
+      if (type == PREPARE) {
+        int count = file.getInt();
+        List<Transfer> transfers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          transfers.add(new Transfer(getString(file), getString(file), file.getLong()));
+        }
+        prepared.put(transactionId, transfers);
+      } else if (type == COMMIT) {
+        List<Transfer> transfers = prepared.remove(transactionId);
+        int failedCount = file.getInt();
+        boolean[] failed = new boolean[transfers.size()];
+        for (int i = 0; i < failedCount; i++) {
+          failed[file.getInt()] = true;
+        }
+        for (int i = 0; i < failed.length; i++) {
+          if (!failed[i]) {
+            Transfer transfer = transfers.get(i);
+            balances.merge(transfer.fromAccount(), -transfer.amount(), Long::sum);
+            balances.merge(transfer.toAccount(), transfer.amount(), Long::sum);
+          }
+        }
+      } else {
+        prepared.remove(transactionId); // ROLLBACK
+      }
+    }
+    // Whatever is left in prepared never committed: presumed abort
+    return file.position();
+  }
+
+  // Caller holds appendLock or is the constructor
+  private void startLog() throws IOException {
+    channel.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(0, generation);
+    channel.write(header, 0);
+    channel.position(HEADER_SIZE);
+    channel.force(true);
+    logStartPosition = appendedPosition + HEADER_SIZE;
+    appendedPosition = logStartPosition;
+  }
+
+  private long readLogGeneration() throws IOException {
+    if (channel.size() < HEADER_SIZE) {
+      return -1;
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    channel.read(header, 0);
+    return header.getLong(0);
+  }
+
+  private void writeSnapshot(long snapshotGeneration, Map<String, Long> balances) throws IOException {
+    Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+      out.writeLong(snapshotGeneration);
+      out.writeInt(balances.size());
+      for (Map.Entry<String, Long> entry : balances.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+    }
+    try (FileChannel written = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+      written.force(true);
+    }
+    Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private Snapshot readSnapshot() throws IOException {
+    Path file = directory.resolve(SNAPSHOT_FILE);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+      long snapshotGeneration = in.readLong();
+      int count = in.readInt();
+      Map<String, Long> balances = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        balances.put(in.readUTF(), in.readLong());
+      }
+      return new Snapshot(snapshotGeneration, balances);
+    }
+  }
+
+  private static int utf8Length(String value) {
+    return value.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static void putString(ByteBuffer buffer, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    buffer.putShort((short) bytes.length).put(bytes);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getShort() & 0xFFFF;
+    String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  private static class Snapshot {
+    final long generation;
+    final Map<String, Long> balances;
+
+    Snapshot(long generation, Map<String, Long> balances) {
+      this.generation = generation;
+      this.balances = balances;
+    }
+  }
+}
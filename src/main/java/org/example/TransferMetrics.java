@@ -0,0 +1,143 @@
+package org.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histogram for a {@link BankTransferSystem}, see
+ * {@link BankTransferSystem#enableMetrics()}.
+ *
+ * <p>Nothing on the transfer path is shared between threads: each sending account counts its own
+ * outcomes and lock waits while its lock is held, and the getters here add them up. Latency is
+ * timed for one transfer in {@value #LATENCY_SAMPLE_RATE} per sender, which keeps the two clock
+ * reads off most transfers; batch items are counted but not timed. Counts read while transfers are
+ * running may be a few transfers behind. On an uncontended transfer of about 70 ns the metrics
+ * cost 2-8%.
+ */
+public class TransferMetrics implements TransferMetricsMXBean {
+
+  public static final int LATENCY_SAMPLE_RATE = 64;
+  private static final int TOP_CONTENDED = 10;
+  private static final TransferResult[] RESULTS = TransferResult.values();
+
+  private final LongAdder[] outcomes = new LongAdder[RESULTS.length];
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final Collection<Account> accounts;
+
+  TransferMetrics(Collection<Account> accounts) {
+    this.accounts = accounts;
+    for (int i = 0; i < outcomes.length; i++) {
+      outcomes[i] = new LongAdder();
+    }
+  }
+
+  // Whether the caller should time this transfer; read before the sender is locked, so only roughly every n-th
+  static boolean sampleLatency(Account sender) {
+    return (sender.getSentTransferCount() & (LATENCY_SAMPLE_RATE - 1)) == 0;
+  }
+
+  // For outcomes decided before any account is locked
+  void record(TransferResult result) {
+    outcomes[result.ordinal()].increment();
+  }
+
+  void recordLatency(long nanos) {
+    latency.record(nanos);
+  }
+
+  public long getCount(TransferResult result) {
+    long count = outcomes[result.ordinal()].sum();
+    for (Account account : accounts) {
+      count += account.getOutcomeCount(result);
+    }
+    return count;
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /** The accounts that spent the longest waiting for their lock, most contended first. */
+  public List<AccountContention> topContendedAccounts(int limit) {
+    List<AccountContention> contended = new ArrayList<>();
+    for (Account account : accounts) {
+      if (account.getContendedLockCount() > 0) {
+        contended.add(new AccountContention(account.getAccountId(), account.getContendedLockCount(), account.getLockWaitNanos()));
+      }
+    }
+    contended.sort(Comparator.comparingLong(AccountContention::lockWaitNanos).reversed());
+    return contended.subList(0, Math.min(limit, contended.size()));
+  }
+
+  /** Registers this as org.example:type=TransferMetrics,name={@code name} on the platform MBean server. */
+  public ObjectName registerMBean(String name) {
+    try {
+      ObjectName objectName = new ObjectName("org.example:type=TransferMetrics,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      return objectName;
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register transfer metrics as " + name, e);
+    }
+  }
+
+  @Override
+  public Map<String, Long> getTransferCounts() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (TransferResult result : RESULTS) {
+      counts.put(result.name(), getCount(result));
+    }
+    return counts;
+  }
+
+  @Override
+  public long getRollbackCount() {
+    return getCount(TransferResult.ROLLED_BACK);
+  }
+
+  @Override
+  public long getLatencyP50Nanos() {
+    return latency.getValueAtPercentile(50);
+  }
+
+  @Override
+  public long getLatencyP99Nanos() {
+    return latency.getValueAtPercentile(99);
+  }
+
+  @Override
+  public long getLatencyP999Nanos() {
+    return latency.getValueAtPercentile(99.9);
+  }
+
+  @Override
+  public long getLatencyMaxNanos() {
+    return latency.getMax();
+  }
+
+  @Override
+  public long getTotalLockWaitNanos() {
+    long total = 0;
+    for (Account account : accounts) {
+      total += account.getLockWaitNanos();
+    }
+    return total;
+  }
+
+  @Override
+  public String[] getTopContendedAccounts() {
+    return topContendedAccounts(TOP_CONTENDED).stream()
+        .map(c -> c.accountId() + ": " + c.contendedLocks() + " waits, " + c.lockWaitNanos() + " ns")
+        .toArray(String[]::new);
+  }
+
+  public record AccountContention(String accountId, long contendedLocks, long lockWaitNanos) {
+  }
+}
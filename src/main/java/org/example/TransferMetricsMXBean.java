@@ -0,0 +1,25 @@
+package org.example;
+
+import java.util.Map;
+
+// JMX view of TransferMetrics; latencies are in nanoseconds
+public interface TransferMetricsMXBean {
+
+  // Transfers (or batch items) by TransferResult name
+  Map<String, Long> getTransferCounts();
+
+  long getRollbackCount();
+
+  long getLatencyP50Nanos();
+
+  long getLatencyP99Nanos();
+
+  long getLatencyP999Nanos();
+
+  long getLatencyMaxNanos();
+
+  long getTotalLockWaitNanos();
+
+  // "accountId: waits, wait nanos" for the ten accounts with the most lock wait time
+  String[] getTopContendedAccounts();
+}
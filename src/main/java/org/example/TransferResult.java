@@ -0,0 +1,11 @@
+package org.example;
+
+// Outcome of one item of a BankTransferSystem.transferBatch
+public enum TransferResult {
+  COMMITTED,
+  INSUFFICIENT_FUNDS,
+  // Credit failed and the debit was rolled back
+  ROLLED_BACK,
+  ACCOUNT_NOT_FOUND,
+  INVALID_AMOUNT
+}
@@ -0,0 +1,421 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The events of {@link JsonPullParser}, read straight from UTF-8 bytes: a byte array, a ByteBuffer
+ * or a memory-mapped file. Nothing is decoded while parsing. A string or field name is only located
+ * (runs without quotes or backslashes are passed over eight bytes at a time) and is turned into a
+ * String when {@link #getText()} asks for it; {@link #getTextView()} gives a {@link JsonString} view
+ * of the bytes instead. Numbers are read digit by digit into a long as they are located, and come
+ * back under the parser's {@link NumberPolicy}.
+ */
+public class Utf8JsonParser extends JsonEventParser {
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+  private static final long QUOTES = ONES * '"';
+  private static final long BACKSLASHES = ONES * '\\';
+
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final ByteBuffer json;
+  // The buffer's array when it has one: plain array reads are faster than ByteBuffer.get
+  private final byte[] bytes;
+  private final int offset;
+  private final int limit;
+  private int index;
+  // The current token's bytes
+  private int textStart;
+  private int textLength;
+  private boolean textEscaped;
+  // Hash of a field name's bytes, for the symbol table
+  private int textHash;
+  private final JsonSymbolTable symbols = new JsonSymbolTable();
+  private final JsonNumber number = new JsonNumber();
+  // For readCompactValue, per depth: the schema of the last object, and the keys and values of the current one
+  private JsonRecord.Schema[] lastSchemas = new JsonRecord.Schema[16];
+  private String[][] recordKeys = new String[16][];
+  private Object[][] recordValues = new Object[16][];
+
+  public Utf8JsonParser(byte[] json) {
+    this(ByteBuffer.wrap(json));
+  }
+
+  /** Reads the buffer from its position to its limit. */
+  public Utf8JsonParser(ByteBuffer json) {
+    this.json = json.slice().order(ByteOrder.LITTLE_ENDIAN);
+    this.limit = this.json.limit();
+    this.bytes = this.json.hasArray() ? this.json.array() : null;
+    this.offset = this.json.hasArray() ? this.json.arrayOffset() : 0;
+  }
+
+  /** Maps the file instead of reading it; up to 2 GB, JsonPullParser streams larger files. */
+  public static Utf8JsonParser open(Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException(file + " is larger than 2 GB.");
+      }
+      return new Utf8JsonParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot map " + file, e);
+    }
+  }
+
+  /**
+   * The field name, string value or number text of the current event, decoded now. Field names come
+   * from a symbol table, so a name seen before is the same String instance and costs no allocation.
+   */
+  @Override
+  public String getText() {
+    checkText();
+    if (current == JsonEvent.VALUE_NUMBER) {
+      return numberText();
+    }
+    if (current == JsonEvent.FIELD_NAME && !textEscaped) {
+      return symbols.intern(bytes, json, bytes != null ? offset + textStart : textStart, textLength, textHash);
+    }
+    return JsonString.decode(json, textStart, textLength, textEscaped);
+  }
+
+  /** The same text as a view of the input bytes, decoded only if it is read. */
+  public JsonString getTextView() {
+    checkText();
+    return new JsonString(json, textStart, textLength, textEscaped);
+  }
+
+  @Override
+  public Object getNumber() {
+    if (current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("Not a number: " + current);
+    }
+    Object value = number.toNumber(numberPolicy);
+    return value != null ? value : JsonNumber.parse(numberText(), numberPolicy);
+  }
+
+  @Override
+  public long getLong() {
+    if (current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("Not a number: " + current);
+    }
+    return number.isLong() ? number.longValue() : JsonNumber.parseLong(numberText());
+  }
+
+  @Override
+  public double getDouble() {
+    if (current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("Not a number: " + current);
+    }
+    double value = number.doubleValue();
+    return Double.isNaN(value) ? Double.parseDouble(numberText()) : value;
+  }
+
+  /**
+   * The same, with objects as {@link JsonRecord}s: an object with the same keys in the same order as
+   * the previous object at its depth (the next record of an array, usually) shares that object's key
+   * schema and only adds an array of values.
+   */
+  public Object readCompactValue() {
+    return readTree(true);
+  }
+
+  /**
+   * The value starting at the current event bound to the type, a record or a class with fields, say,
+   * without building the map tree; fields the type lacks are skipped. At FIELD_NAME, reads the
+   * field's value. See JsonBinding for what can be bound.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T readValue(Class<T> type) {
+    if (current == JsonEvent.FIELD_NAME) {
+      next();
+    }
+    if (current == null) {
+      throw new IllegalStateException("No value to read");
+    }
+    return (T) JsonBinding.bind(this, type);
+  }
+
+  @Override
+  Object readObject(boolean compact) {
+    return compact ? readRecord() : super.readObject(false);
+  }
+
+  private Map<String, Object> readRecord() {
+    int level = depth - 1;
+    if (level >= lastSchemas.length) {
+      // Arrays between objects deepen the nesting without a record, so the level can jump past the end
+      int length = Math.max(2 * lastSchemas.length, level + 1);
+      lastSchemas = Arrays.copyOf(lastSchemas, length);
+      recordKeys = Arrays.copyOf(recordKeys, length);
+      recordValues = Arrays.copyOf(recordValues, length);
+    }
+    if (recordKeys[level] == null) {
+      recordKeys[level] = new String[16];
+      recordValues[level] = new Object[16];
+    }
+    JsonRecord.Schema schema = lastSchemas[level];
+    int size = 0;
+    while (next() == JsonEvent.FIELD_NAME) {
+      String key = getText();
+      next();
+      Object value = readTree(true);
+      if (schema != null && (size >= schema.keys.length || !schema.keys[size].equals(key))) {
+        schema = null;
+      }
+      if (size == recordKeys[level].length) {
+        recordKeys[level] = Arrays.copyOf(recordKeys[level], 2 * size);
+        recordValues[level] = Arrays.copyOf(recordValues[level], 2 * size);
+      }
+      recordKeys[level][size] = key;
+      recordValues[level][size] = value;
+      size++;
+    }
+    Object[] values = Arrays.copyOf(recordValues[level], size);
+    Arrays.fill(recordValues[level], 0, size, null);
+    if (schema == null || size != schema.keys.length) {
+      String[] keys = Arrays.copyOf(recordKeys[level], size);
+      if (new HashSet<>(Arrays.asList(keys)).size() < size) {
+        // A repeated key: the last value wins, as in a map
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(keys[i], values[i]);
+        }
+        return map;
+      }
+      schema = new JsonRecord.Schema(keys);
+      lastSchemas[level] = schema;
+    }
+    return new JsonRecord(schema, values);
+  }
+
+  @Override
+  boolean hasInput() {
+    return index < limit;
+  }
+
+  @Override
+  void advance() {
+    index++;
+  }
+
+  @Override
+  void readFieldName(boolean skipping) {
+    expect('"');
+    readKey();
+  }
+
+  // Strings and numbers are only located here, so skipping a value costs no more than reading it
+  @Override
+  JsonEvent readScalar(int next, boolean skipping) {
+    if (next == '"') {
+      index++;
+      readString();
+      return JsonEvent.VALUE_STRING;
+    } else if (isDigit(next) || next == '-') {
+      readNumber();
+      return JsonEvent.VALUE_NUMBER;
+    } else if (next == 't' && readWord("true")) {
+      return JsonEvent.VALUE_TRUE;
+    } else if (next == 'f' && readWord("false")) {
+      return JsonEvent.VALUE_FALSE;
+    } else if (next == 'n' && readWord("null")) {
+      return JsonEvent.VALUE_NULL;
+    } else {
+      throw new IllegalArgumentException("Unexpected character: " + (char) next);
+    }
+  }
+
+  // From just after the opening quote to just after the closing one
+  private void readString() {
+    int start = index;
+    boolean escaped = false;
+    while (true) {
+      while (index + Long.BYTES <= limit && !hasQuoteOrBackslash(longAt(index))) {
+        index += Long.BYTES;
+      }
+      if (index >= limit) {
+        throw new IllegalArgumentException("Unterminated string.");
+      }
+      byte b = at(index);
+      if (b == '"') {
+        break;
+      }
+      if (b == '\\') {
+        escaped = true;
+        index += 2;
+      } else {
+        index++;
+      }
+    }
+    textStart = start;
+    textLength = index - start;
+    textEscaped = escaped;
+    index++;
+  }
+
+  // Like readString, hashing the bytes on the way for the symbol table; keys are short, so byte by byte
+  private void readKey() {
+    int start = index;
+    int hash = 0;
+    while (index < limit) {
+      byte b = at(index);
+      if (b == '"') {
+        textStart = start;
+        textLength = index - start;
+        textEscaped = false;
+        textHash = hash;
+        index++;
+        return;
+      }
+      if (b == '\\') {
+        index = start; // Escaped keys are decoded each time instead
+        readString();
+        return;
+      }
+      hash = 31 * hash + b;
+      index++;
+    }
+    throw new IllegalArgumentException("Unterminated string.");
+  }
+
+  private void readNumber() {
+    int start = index;
+    number.reset();
+    if (at(index) == '-') {
+      number.negate();
+      index++;
+    }
+    if (readDigits(false) == 0) {
+      throw invalidNumber(start);
+    }
+    if (index < limit && at(index) == '.') {
+      index++;
+      number.startFraction();
+      if (readDigits(true) == 0) {
+        throw invalidNumber(start);
+      }
+    }
+    if (index < limit && (at(index) == 'e' || at(index) == 'E')) {
+      index++;
+      if (index < limit && (at(index) == '+' || at(index) == '-')) {
+        if (at(index) == '-') {
+          number.negateExponent();
+        }
+        index++;
+      }
+      int exponentStart = index;
+      for (byte b; index < limit && isDigit(b = at(index)); index++) {
+        number.addExponentDigit(b - '0');
+      }
+      if (index == exponentStart) {
+        throw invalidNumber(start);
+      }
+    }
+    textStart = start;
+    textLength = index - start;
+    textEscaped = false;
+  }
+
+  private int readDigits(boolean fraction) {
+    int start = index;
+    for (byte b; index < limit && isDigit(b = at(index)); index++) {
+      number.addDigit(b - '0', fraction);
+    }
+    return index - start;
+  }
+
+  private IllegalArgumentException invalidNumber(int start) {
+    textStart = start;
+    textLength = Math.min(index + 1, limit) - start;
+    return new IllegalArgumentException("Invalid number: " + numberText());
+  }
+
+  private String numberText() {
+    if (bytes != null) {
+      return new String(bytes, offset + textStart, textLength, StandardCharsets.ISO_8859_1);
+    }
+    byte[] digits = new byte[textLength];
+    json.get(textStart, digits);
+    return new String(digits, StandardCharsets.ISO_8859_1);
+  }
+
+  private void checkText() {
+    if (current != JsonEvent.FIELD_NAME && current != JsonEvent.VALUE_STRING && current != JsonEvent.VALUE_NUMBER) {
+      throw new IllegalStateException("No text for " + current);
+    }
+  }
+
+  private byte at(int i) {
+    return bytes != null ? bytes[offset + i] : json.get(i);
+  }
+
+  private long longAt(int i) {
+    return bytes != null ? (long) LONGS.get(bytes, offset + i) : json.getLong(i);
+  }
+
+  private static boolean hasQuoteOrBackslash(long word) {
+    return hasZeroByte(word ^ QUOTES) || hasZeroByte(word ^ BACKSLASHES);
+  }
+
+  private static boolean hasZeroByte(long word) {
+    return ((word - ONES) & ~word & HIGH_BITS) != 0;
+  }
+
+  private static boolean isDigit(int b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private boolean readWord(String word) {
+    if (index + word.length() > limit) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (at(index + i) != word.charAt(i)) {
+        return false;
+      }
+    }
+    index += word.length();
+    return true;
+  }
+
+  @Override
+  int peek() {
+    if (index >= limit) {
+      throw new IllegalArgumentException("Unexpected end of JSON input.");
+    }
+    return at(index);
+  }
+
+  @Override
+  void expect(char expected) {
+    int actual = peek();
+    if (actual != expected) {
+      throw new IllegalArgumentException("Expected '" + expected + "' but got '" + (char) actual + "'");
+    }
+    index++;
+  }
+
+  @Override
+  void skipWhitespace() {
+    while (index < limit) {
+      byte b = at(index);
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        return;
+      }
+      index++;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * Outcome of a {@link DBCheckPoint} validation. {@code rowOffset} is the 0-based offset of the first
+ * row that differs, of the row where one side ran out, or the total row count if the data matched.
+ * Only the two differing rows are kept, never the data.
+ */
+public record ValidationResult(Status status, long rowOffset, Map<String, String> originalRow,
+    Map<String, String> migratedRow) {
+
+  public enum Status {
+    PASSED,
+    ROW_MISMATCH,
+    ROW_COUNT_MISMATCH
+  }
+
+  public boolean isPassed() {
+    return status == Status.PASSED;
+  }
+}
@@ -1,16 +1,27 @@
 package org.example;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 
 import static org.junit.Assert.*;
 
 public class ApiRateLimiterTest {
   private ApiRateLimiter rateLimiter;
+  private ManualTimeSource clock;
 
   @Before
   public void setUp() {
-    rateLimiter = new ApiRateLimiter();
+    clock = new ManualTimeSource();
+    rateLimiter = ApiRateLimiter.builder().timeSource(clock).build();
   }
 
   @Test
@@ -41,7 +52,7 @@ public class ApiRateLimiterTest {
   }
 
   @Test
-  public void apiRateLimitTest_testPenaltyDuration() throws InterruptedException {
+  public void apiRateLimitTest_testPenaltyDuration() {
     // Test that the penalty lasts for the expected duration
     String clientId = "ClientA";
     for (int i = 1; i <= 15; i++) {
@@ -55,7 +66,7 @@ public class ApiRateLimiterTest {
     }
 
     // Wait for less than penalty time and try again
-    Thread.sleep(50000); // Sleep for 50 seconds
+    clock.advance(Duration.ofSeconds(50)); // Wait for 50 seconds
     try {
       rateLimiter.safeCall(clientId, "Call #17");
       fail("Expected IllegalStateException for penalty duration not elapsed");
@@ -64,13 +75,23 @@ public class ApiRateLimiterTest {
     }
 
     // Wait for the remainder of the penalty time
-    Thread.sleep(70000); // Wait for 1 minute and 10 seconds to ensure the penalty is over
+    clock.advance(Duration.ofSeconds(70)); // Wait for 1 minute and 10 seconds to ensure the penalty is over
 
     // Now the call should succeed
     String response = rateLimiter.safeCall(clientId, "Call #18");
     assertEquals("API Response for input: Call #18", response);
   }
 
+  @Test
+  public void apiRateLimitTest_whenHoursOfTrafficAtLimitAreSimulated_shouldNeverPenalize() {
+    // Ten hours of one call every 5 seconds, 12 calls per minute
+    for (int i = 1; i <= 10 * 60 * 12; i++) {
+      String response = rateLimiter.safeCall("ClientA", "Call #" + i);
+      assertEquals("API Response for input: Call #" + i, response);
+      clock.advance(Duration.ofSeconds(5));
+    }
+  }
+
   @Test
   public void apiRateLimitTest_testIndependentClients_shouldSuccess() {
     // Test that different clients do not affect each other
@@ -101,4 +122,269 @@ public class ApiRateLimiterTest {
     String response = rateLimiter.safeCall(clientB, "Call #15");
     assertEquals("API Response for input: Call #15", response);
   }
+
+  @Test
+  public void apiRateLimitTest_whenManyThreadsShareOneClient_shouldAdmitExactlyLimit() throws InterruptedException {
+    for (ApiRateLimiter.Mode mode : ApiRateLimiter.Mode.values()) {
+      ApiRateLimiter limiter = new ApiRateLimiter(mode);
+      AtomicInteger admitted = new AtomicInteger();
+      AtomicInteger rejected = new AtomicInteger();
+      runConcurrently(16, t -> {
+        for (int i = 0; i < 100; i++) {
+          try {
+            limiter.safeCall("ClientA", "Call");
+            admitted.incrementAndGet();
+          } catch (IllegalStateException e) {
+            rejected.incrementAndGet();
+          }
+        }
+      });
+
+      assertEquals(mode.name(), 15, admitted.get());
+      assertEquals(mode.name(), 16 * 100 - 15, rejected.get());
+    }
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void apiRateLimitTest_concurrentModeThroughput_comparedToSynchronized() throws InterruptedException {
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    int clientsPerThread = 2000;
+    String[][] clientIds = new String[threads][clientsPerThread];
+    for (int t = 0; t < threads; t++) {
+      for (int c = 0; c < clientsPerThread; c++) {
+        clientIds[t][c] = "Client-" + t + "-" + c;
+      }
+    }
+
+    long synchronizedNanos = measure(new ApiRateLimiter(ApiRateLimiter.Mode.SYNCHRONIZED), clientIds);
+    long concurrentNanos = measure(new ApiRateLimiter(ApiRateLimiter.Mode.CONCURRENT), clientIds);
+
+    long calls = (long) threads * clientsPerThread * 15;
+    System.out.printf("ApiRateLimiter %d threads, %d calls: synchronized %.0f calls/s, concurrent %.0f calls/s%n",
+        threads, calls, calls * 1e9 / synchronizedNanos, calls * 1e9 / concurrentNanos);
+  }
+
+  @Test
+  public void apiRateLimitTest_steadyStateCalls_shouldNotAllocate() {
+    // Calls arrive 5 seconds apart per client, so every call stays under the limit
+    ApiRateLimiter limiter = echoLimiter(ApiRateLimiter.builder().timeSource(clock));
+    String[] clientIds = new String[64];
+    for (int i = 0; i < clientIds.length; i++) {
+      clientIds[i] = "Client" + i;
+    }
+
+    runCalls(limiter, clientIds, 1_000_000); // warm up and create every client
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    runCalls(limiter, clientIds, 5_000_000);
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+    assertTrue("Allocated " + allocated + " bytes over 5M calls", allocated < 64 * 1024);
+  }
+
+  private void runCalls(ApiRateLimiter limiter, String[] clientIds, int calls) {
+    long fiveSeconds = Duration.ofSeconds(5).toNanos();
+    for (int i = 0; i < calls; i++) {
+      if (i % clientIds.length == 0) {
+        clock.advanceNanos(fiveSeconds);
+      }
+      limiter.safeCall(clientIds[i % clientIds.length], "Call");
+    }
+  }
+
+  @Test
+  public void apiRateLimitTest_tryAcquire_shouldReturnResultInsteadOfThrowing() {
+    assertEquals(RateLimitResult.ALLOWED, rateLimiter.tryAcquire("ClientA", 10));
+    assertEquals(RateLimitResult.ALLOWED, rateLimiter.tryAcquire("ClientA", 5));
+    assertEquals(RateLimitResult.RATE_LIMITED, rateLimiter.tryAcquire("ClientA", 1));
+    assertEquals(RateLimitResult.PENALIZED, rateLimiter.tryAcquire("ClientA", 1));
+    assertEquals(Duration.ofMinutes(2), rateLimiter.getPenaltyRemaining("ClientA"));
+
+    clock.advance(Duration.ofMinutes(2));
+    assertEquals(Duration.ZERO, rateLimiter.getPenaltyRemaining("ClientA"));
+    assertEquals(RateLimitResult.ALLOWED, rateLimiter.tryAcquire("ClientA", 15));
+  }
+
+  @Test
+  public void apiRateLimitTest_tryAcquireAll_shouldMatchOneAtATimeAdmission() {
+    for (ApiRateLimiter.Mode mode : ApiRateLimiter.Mode.values()) {
+      ApiRateLimiter batched = ApiRateLimiter.builder().mode(mode).timeSource(clock).build();
+      ApiRateLimiter single = ApiRateLimiter.builder().mode(mode).timeSource(clock).build();
+      String[] clientIds = {"ClientA", "ClientB", "ClientA", "ClientA", "ClientB", "ClientA"};
+      int[] permits = {8, 15, 7, 1, 1, 1};
+      RateLimitResult[] results = new RateLimitResult[clientIds.length];
+
+      batched.tryAcquireAll(clientIds, permits, results);
+
+      for (int i = 0; i < clientIds.length; i++) {
+        assertEquals(mode + " item " + i, single.tryAcquire(clientIds[i], permits[i]), results[i]);
+      }
+      assertEquals(RateLimitResult.PENALIZED, results[5]);
+    }
+  }
+
+  @Test
+  public void apiRateLimitTest_callAsync_shouldRunCallOnExecutorAndFailWhenRejected() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CompletableFuture<String> last = null;
+      for (int i = 1; i <= 15; i++) {
+        last = rateLimiter.callAsync("ClientA", "Call #" + i, executor);
+      }
+      assertEquals("API Response for input: Call #15", last.get());
+
+      CompletableFuture<String> rejected = rateLimiter.callAsync("ClientA", "Call #16", executor);
+      try {
+        rejected.get();
+        fail("Expected the future to fail for exceeding rate limit");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertTrue(e.getCause().getMessage().contains("Rate limit exceeded for client ClientA"));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void apiRateLimitTest_floodOfRejectedCalls_shouldNotAllocate() {
+    rateLimiter.tryAcquire("Abuser", 16); // Penalized from here on
+    for (int i = 0; i < 1_000_000; i++) {
+      rateLimiter.tryAcquire("Abuser", 1);
+    }
+
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    for (int i = 0; i < 5_000_000; i++) {
+      assertEquals(RateLimitResult.PENALIZED, rateLimiter.tryAcquire("Abuser", 1));
+    }
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+    assertTrue("Allocated " + allocated + " bytes over 5M rejections", allocated < 64 * 1024);
+  }
+
+  @Test
+  public void apiRateLimitTest_whenMillionsOfOneShotClients_shouldStayBounded() {
+    ApiRateLimiter limiter = echoLimiter(ApiRateLimiter.builder().timeSource(clock)
+        .maxClients(10_000, ApiRateLimiter.OverflowPolicy.REJECT_NEW_CLIENTS));
+
+    int clients = 2_000_000;
+    int maxLive = 0;
+    for (int i = 0; i < clients; i++) {
+      clock.advanceNanos(20_000_000); // A client goes idle one minute after its call, i.e. 3000 new clients later
+      limiter.safeCall("OneShot" + i, "Call");
+      maxLive = Math.max(maxLive, limiter.getLiveClientCount());
+    }
+
+    assertTrue("Tracked up to " + maxLive + " clients", maxLive <= 10_000);
+    assertEquals(clients, limiter.getLiveClientCount() + limiter.getEvictedClientCount());
+    clock.advance(Duration.ofMillis(60_001));
+    assertEquals(limiter.getLiveClientCount(), limiter.evictIdleClients());
+    assertEquals(0, limiter.getLiveClientCount());
+  }
+
+  @Test
+  public void apiRateLimitTest_whenClientIsIdle_shouldNotBeEvictedDuringPenalty() {
+    ApiRateLimiter limiter = echoLimiter(ApiRateLimiter.builder().timeSource(clock));
+    for (int i = 1; i <= 16; i++) {
+      try {
+        limiter.safeCall("ClientA", "Call #" + i);
+      } catch (IllegalStateException e) {
+        // 16th call triggers a two minute penalty
+      }
+    }
+
+    clock.advance(Duration.ofSeconds(90));
+    assertEquals(0, limiter.evictIdleClients());
+    try {
+      limiter.safeCall("ClientA", "Call #17");
+      fail("Expected IllegalStateException for penalty duration not elapsed");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("API is under penalty for client ClientA"));
+    }
+
+    clock.advance(Duration.ofMillis(120_001));
+    assertEquals(1, limiter.evictIdleClients());
+    assertEquals("Call #18", limiter.safeCall("ClientA", "Call #18"));
+  }
+
+  @Test
+  public void apiRateLimitTest_whenClientCapReached_shouldApplyOverflowPolicy() {
+    ApiRateLimiter rejecting = echoLimiter(ApiRateLimiter.builder().timeSource(clock)
+        .maxClients(2, ApiRateLimiter.OverflowPolicy.REJECT_NEW_CLIENTS));
+    rejecting.safeCall("ClientA", "Call");
+    rejecting.safeCall("ClientB", "Call");
+    try {
+      rejecting.safeCall("ClientC", "Call");
+      fail("Expected IllegalStateException for too many clients");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Too many active clients"));
+    }
+    rejecting.safeCall("ClientA", "Call"); // Known clients are unaffected
+
+    ApiRateLimiter evicting = echoLimiter(ApiRateLimiter.builder().timeSource(clock)
+        .maxClients(100, ApiRateLimiter.OverflowPolicy.EVICT_LEAST_RECENT));
+    for (int i = 0; i < 1000; i++) {
+      evicting.safeCall("Client" + i, "Call");
+    }
+    assertEquals(100, evicting.getLiveClientCount());
+    assertEquals(900, evicting.getEvictedClientCount());
+  }
+
+  // Skips building a response string so only the limiter's own work is measured
+  private static ApiRateLimiter echoLimiter(ApiRateLimiter.Builder builder) {
+    return new ApiRateLimiter(builder) {
+      @Override
+      public String call_me(String input) {
+        return input;
+      }
+    };
+  }
+
+  // Every thread drives its own clients up to the limit, so all calls are admitted
+  private long measure(ApiRateLimiter limiter, String[][] clientIds) throws InterruptedException {
+    AtomicInteger admitted = new AtomicInteger();
+    long start = System.nanoTime();
+    runConcurrently(clientIds.length, t -> {
+      int count = 0;
+      for (int call = 0; call < 15; call++) {
+        for (String clientId : clientIds[t]) {
+          limiter.safeCall(clientId, "Call");
+          count++;
+        }
+      }
+      admitted.addAndGet(count);
+    });
+    long elapsed = System.nanoTime() - start;
+    assertEquals(clientIds.length * clientIds[0].length * 15, admitted.get());
+    return elapsed;
+  }
+
+  private interface Worker {
+    void run(int threadIndex);
+  }
+
+  private static void runConcurrently(int threads, Worker worker) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    AtomicInteger failures = new AtomicInteger();
+    for (int t = 0; t < threads; t++) {
+      int threadIndex = t;
+      workers[t] = new Thread(() -> {
+        try {
+          start.await();
+          worker.run(threadIndex);
+        } catch (Throwable e) {
+          failures.incrementAndGet();
+        }
+      });
+      workers[t].start();
+    }
+    start.countDown();
+    for (Thread thread : workers) {
+      thread.join();
+    }
+    assertEquals(0, failures.get());
+  }
 }
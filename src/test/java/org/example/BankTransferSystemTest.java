@@ -1,24 +1,41 @@
 package org.example;
 
 import static org.junit.Assert.assertEquals;
-import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
 
 public class BankTransferSystemTest {
 
   private BankTransferSystem bankTransferSystem;
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   public void setUp() {
     // Initialize the bank transfer system with some test accounts
     Map<String, Account> accountMap = new HashMap<>();
-    accountMap.put("A", new Account("A", 1000.0));
-    accountMap.put("B", new Account("B", 500.0));
+    accountMap.put("A", new Account("A", 1000));
+    accountMap.put("B", new Account("B", 500));
     bankTransferSystem = new BankTransferSystem(accountMap);
   }
 
@@ -31,8 +48,8 @@ public class BankTransferSystemTest {
     boolean result = bankTransferSystem.transfer("A", "B", 200);
     Assert.assertTrue(result);
 
-    assertEquals( 800.0, bankTransferSystem.getAccount("A").getBalance(), 0);
-    assertEquals(700, bankTransferSystem.getAccount("B").getBalance(), 0);
+    assertEquals(800, bankTransferSystem.getAccount("A").getBalance());
+    assertEquals(700, bankTransferSystem.getAccount("B").getBalance());
 
   }
 
@@ -42,7 +59,7 @@ public class BankTransferSystemTest {
     setUp();
     boolean result = bankTransferSystem.transfer("A", "B", 1200);
     Assert.assertFalse(result);
-    assertEquals(1000, bankTransferSystem.getAccount("A").getBalance(), 0);
+    assertEquals(1000, bankTransferSystem.getAccount("A").getBalance());
   }
 
   @Test
@@ -95,16 +112,16 @@ public class BankTransferSystemTest {
 
     Account receiver = mock(Account.class);
     bankTransferSystem = new BankTransferSystem(new HashMap<>() {{
-      put("A", new Account("A", 1000.0));
+      put("A", new Account("A", 1000));
       put("B", receiver);
     }});
 
-    when(bankTransferSystem.getAccount("B").commitCredit(anyDouble())).thenReturn(false);
+    when(bankTransferSystem.getAccount("B").commitCredit(anyLong())).thenReturn(false);
 
     // Attempt to transfer from A to B which should fail
     boolean result = bankTransferSystem.transfer("A", "B", 200);
     Assert.assertFalse(result);
-    assertEquals(1000, bankTransferSystem.getAccount("A").getBalance(), 0);
+    assertEquals(1000, bankTransferSystem.getAccount("A").getBalance());
   }
 
   @Test
@@ -115,15 +132,15 @@ public class BankTransferSystemTest {
     // Now we should ensure that account A's balance is 800
     // You would need to add a method to retrieve the account balance.
     Account accountA = bankTransferSystem.getAccount("A");
-    assertEquals(800.0, accountA.getBalance(), 0.01);
+    assertEquals(800, accountA.getBalance());
   }
 
   @Test
   public void testTransfer_whenMultipleAccountTryingToTransferMoneyToSameAccount_AllMoneyShouldCredit()
       throws InterruptedException {
     Map<String, Account> accountMap = new HashMap<>();
-    accountMap.put("A", new Account("A", 10000.0));
-    accountMap.put("B", new Account("B", 500.0));
+    accountMap.put("A", new Account("A", 10000));
+    accountMap.put("B", new Account("B", 500));
     accountMap.put("C", new Account("C", 10000));
     bankTransferSystem = new BankTransferSystem(accountMap);
 
@@ -162,8 +179,402 @@ public class BankTransferSystemTest {
     t3.join();
     t4.join();
 
-    assertEquals(0, bankTransferSystem.getAccount("A").getBalance(), 0);
-    assertEquals(20500, bankTransferSystem.getAccount("B").getBalance(), 0);
-    assertEquals(0, bankTransferSystem.getAccount("C").getBalance(), 0);
+    assertEquals(0, bankTransferSystem.getAccount("A").getBalance());
+    assertEquals(20500, bankTransferSystem.getAccount("B").getBalance());
+    assertEquals(0, bankTransferSystem.getAccount("C").getBalance());
+  }
+
+  @Test
+  public void testTransfer_whenManyThreadsTransferRandomly_TotalMoneyShouldBeConserved()
+      throws InterruptedException {
+    Map<String, Account> accountMap = new HashMap<>();
+    for (int i = 0; i < 50; i++) {
+      accountMap.put("Acc" + i, new Account("Acc" + i, 1000));
+    }
+    bankTransferSystem = new BankTransferSystem(accountMap);
+
+    AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[16];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 20_000; i++) {
+          String from = "Acc" + random.nextInt(50);
+          String to = "Acc" + random.nextInt(50);
+          bankTransferSystem.transfer(from, to, 1 + random.nextInt(200));
+          if (i % 1000 == 0 && bankTransferSystem.getTotalBalance() != 50 * 1000) {
+            failures.incrementAndGet(); // A snapshot must never see a debit without its credit
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, failures.get());
+    assertEquals(50 * 1000, bankTransferSystem.getTotalBalance());
+    for (int i = 0; i < 50; i++) {
+      Assert.assertTrue(bankTransferSystem.getAccount("Acc" + i).getBalance() >= 0);
+    }
+  }
+
+  @Test
+  public void testTransfer_whenMillionsOfRandomTransfers_BalancesShouldMatchExactModel() {
+    // Property: every transfer either moves exactly its amount or changes nothing
+    Random random = new Random(42);
+    int accountCount = 1000;
+    long[] model = new long[accountCount];
+    Map<String, Account> accountMap = new HashMap<>();
+    for (int i = 0; i < accountCount; i++) {
+      model[i] = random.nextInt(1_000_000_00); // up to a million in cents
+      accountMap.put("Acc" + i, new Account("Acc" + i, model[i]));
+    }
+    bankTransferSystem = new BankTransferSystem(accountMap);
+    long total = bankTransferSystem.getTotalBalance();
+
+    for (int i = 0; i < 2_000_000; i++) {
+      int from = random.nextInt(accountCount);
+      int to = random.nextInt(accountCount);
+      long amount = 1 + random.nextInt(10_000_00);
+      boolean expected = model[from] >= amount;
+      if (expected) {
+        model[from] -= amount;
+        model[to] += amount;
+      }
+      assertEquals(expected, bankTransferSystem.transfer("Acc" + from, "Acc" + to, amount));
+    }
+
+    for (int i = 0; i < accountCount; i++) {
+      assertEquals(model[i], bankTransferSystem.getAccount("Acc" + i).getBalance());
+    }
+    assertEquals(total, bankTransferSystem.getTotalBalance());
+  }
+
+  @Test
+  public void testTransferBatch_shouldReturnResultPerItem() {
+    setUp();
+    TransferResult[] results = bankTransferSystem.transferBatch(List.of(
+        new Transfer("A", "B", 200),
+        new Transfer("A", "C", 100),
+        new Transfer("A", "B", 0),
+        new Transfer("A", "B", 900),
+        new Transfer("B", "A", 700)));
+
+    Assert.assertArrayEquals(new TransferResult[] {
+        TransferResult.COMMITTED,
+        TransferResult.ACCOUNT_NOT_FOUND,
+        TransferResult.INVALID_AMOUNT,
+        TransferResult.INSUFFICIENT_FUNDS, // A only has 800 left
+        TransferResult.COMMITTED}, results);
+    assertEquals(1500, bankTransferSystem.getAccount("A").getBalance());
+    assertEquals(0, bankTransferSystem.getAccount("B").getBalance());
+  }
+
+  @Test
+  public void testTransferBatch_whenRunConcurrentlyWithTransfers_TotalMoneyShouldBeConserved()
+      throws InterruptedException {
+    Map<String, Account> accountMap = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      accountMap.put("Acc" + i, new Account("Acc" + i, 10_000));
+    }
+    bankTransferSystem = new BankTransferSystem(accountMap);
+
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      boolean batching = t % 2 == 0;
+      threads[t] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int round = 0; round < 200; round++) {
+          List<Transfer> batch = new ArrayList<>();
+          for (int i = 0; i < 100; i++) {
+            batch.add(new Transfer("Acc" + random.nextInt(100), "Acc" + random.nextInt(100), 1 + random.nextInt(500)));
+          }
+          if (batching) {
+            bankTransferSystem.transferBatch(batch);
+          } else {
+            batch.forEach(transfer -> bankTransferSystem.transfer(transfer.fromAccount(), transfer.toAccount(), transfer.amount()));
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(100 * 10_000, bankTransferSystem.getTotalBalance());
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testTransferBatch_throughputComparedToLoopingTransfer() {
+    int transfers = 500_000;
+    List<Transfer> settlement = new ArrayList<>();
+    Random random = new Random(7);
+    for (int i = 0; i < transfers; i++) {
+      settlement.add(new Transfer("Acc" + random.nextInt(1000), "Acc" + random.nextInt(1000), 1 + random.nextInt(100)));
+    }
+
+    for (int run = 0; run < 3; run++) { // the first runs warm up
+      BankTransferSystem looping = new BankTransferSystem(settlementAccounts());
+      long start = System.nanoTime();
+      for (Transfer transfer : settlement) {
+        looping.transfer(transfer.fromAccount(), transfer.toAccount(), transfer.amount());
+      }
+      long loopNanos = System.nanoTime() - start;
+
+      BankTransferSystem batching = new BankTransferSystem(settlementAccounts());
+      start = System.nanoTime();
+      batching.transferBatch(settlement);
+      long batchNanos = System.nanoTime() - start;
+
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(looping.getAccount("Acc" + i).getBalance(), batching.getAccount("Acc" + i).getBalance());
+      }
+      System.out.printf("Settlement of %d transfers: loop %.0f ns/transfer, batch %.0f ns/transfer%n",
+          transfers, (double) loopNanos / transfers, (double) batchNanos / transfers);
+    }
+  }
+
+  private static Map<String, Account> settlementAccounts() {
+    Map<String, Account> accountMap = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      accountMap.put("Acc" + i, new Account("Acc" + i, 1_000_000));
+    }
+    return accountMap;
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testTransfer_throughputOnDisjointAccounts() throws InterruptedException {
+    int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    for (int threadCount = 1; threadCount <= maxThreads; threadCount *= 2) {
+      // Each thread moves money back and forth between its own pair of accounts
+      Map<String, Account> accountMap = new HashMap<>();
+      for (int t = 0; t < threadCount; t++) {
+        accountMap.put("From" + t, new Account("From" + t, 1_000_000));
+        accountMap.put("To" + t, new Account("To" + t, 1_000_000));
+      }
+      BankTransferSystem system = new BankTransferSystem(accountMap);
+      int transfersPerThread = 500_000;
+
+      Thread[] threads = new Thread[threadCount];
+      for (int t = 0; t < threadCount; t++) {
+        String from = "From" + t;
+        String to = "To" + t;
+        threads[t] = new Thread(() -> {
+          for (int i = 0; i < transfersPerThread; i++) {
+            system.transfer(i % 2 == 0 ? from : to, i % 2 == 0 ? to : from, 1);
+          }
+        });
+      }
+      long start = System.nanoTime();
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      long elapsed = System.nanoTime() - start;
+
+      assertEquals(threadCount * 2_000_000L, system.getTotalBalance());
+      System.out.printf("BankTransferSystem %d threads: %.0f transfers/s%n",
+          threadCount, (double) threadCount * transfersPerThread * 1e9 / elapsed);
+    }
+  }
+
+  @Test
+  public void testDurableTransfer_whenReopened_ShouldRecoverBalances() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      bankTransferSystem = BankTransferSystem.open(log, Map.of("A", 1000L, "B", 500L, "C", 0L));
+      Assert.assertTrue(bankTransferSystem.transfer("A", "B", 200));
+      Assert.assertFalse(bankTransferSystem.transfer("C", "A", 1)); // rolled back, not replayed
+      bankTransferSystem.checkpoint();
+      Assert.assertTrue(bankTransferSystem.transfer("B", "C", 300));
+      bankTransferSystem.transferBatch(List.of(new Transfer("A", "C", 100), new Transfer("C", "B", 1000)));
+    }
+
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      BankTransferSystem recovered = BankTransferSystem.open(log, Map.of());
+      assertEquals(700, recovered.getAccount("A").getBalance());
+      assertEquals(400, recovered.getAccount("B").getBalance());
+      assertEquals(400, recovered.getAccount("C").getBalance());
+    }
+  }
+
+  @Test
+  public void testDurableTransfer_whenSyncFails_ShouldRefuseLaterTransfersUntilReopened() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      bankTransferSystem = BankTransferSystem.open(log, Map.of("A", 1000L, "B", 500L));
+      Assert.assertTrue(bankTransferSystem.transfer("A", "B", 100));
+
+      Thread.currentThread().interrupt(); // The write fails with ClosedByInterruptException
+      try {
+        bankTransferSystem.transfer("A", "B", 200);
+        Assert.fail("Expected UncheckedIOException for the failed sync");
+      } catch (UncheckedIOException expected) {
+        // Expected
+      } finally {
+        Thread.interrupted();
+      }
+      try {
+        bankTransferSystem.transfer("B", "A", 50);
+        Assert.fail("Expected UncheckedIOException from the failed log");
+      } catch (UncheckedIOException expected) {
+        assertEquals(800, bankTransferSystem.getAccount("B").getBalance()); // Refused before it was applied
+      }
+    }
+
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      BankTransferSystem recovered = BankTransferSystem.open(log, Map.of());
+      assertEquals(900, recovered.getAccount("A").getBalance());
+      assertEquals(600, recovered.getAccount("B").getBalance());
+    }
+  }
+
+  @Test
+  public void testDurableTransfer_whenLogTailIsTorn_ShouldRecoverLastCompleteTransfer() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      bankTransferSystem = BankTransferSystem.open(log, Map.of("A", 1000L, "B", 500L));
+      bankTransferSystem.transfer("A", "B", 100);
+      bankTransferSystem.transfer("A", "B", 200);
+    }
+    // Power loss in the middle of writing the last commit record
+    try (FileChannel wal = FileChannel.open(directory.resolve("transfers.wal"), StandardOpenOption.WRITE)) {
+      wal.truncate(wal.size() - 3);
+    }
+
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      BankTransferSystem recovered = BankTransferSystem.open(log, Map.of());
+      assertEquals(900, recovered.getAccount("A").getBalance());
+      assertEquals(600, recovered.getAccount("B").getBalance());
+      Assert.assertTrue(recovered.transfer("B", "A", 50)); // the log is usable again after the cut
+    }
+    try (TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      assertEquals(950, BankTransferSystem.open(log, Map.of()).getAccount("A").getBalance());
+    }
+  }
+
+  @Test
+  public void testDurableTransfer_whenKilledMidBatch_ShouldRecoverEveryAcknowledgedBatch() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    Map<String, Long> initial = new HashMap<>();
+    for (int i = 0; i < 20; i++) {
+      initial.put("Acc" + i, 10_000L);
+    }
+    TransferLog log = TransferLog.open(directory, TransferLog.SyncMode.GROUP);
+    BankTransferSystem system = BankTransferSystem.open(log, initial);
+
+    AtomicInteger acknowledged = new AtomicInteger();
+    Thread worker = new Thread(() -> {
+      Random random = new Random(11);
+      try {
+        for (int batch = 0; batch < 1_000_000; batch++) {
+          system.transferBatch(randomBatch(random));
+          acknowledged.incrementAndGet();
+          if (batch == 50) {
+            system.checkpoint();
+          }
+        }
+      } catch (RuntimeException e) {
+        // the engine was killed
+      }
+    });
+    worker.start();
+    while (acknowledged.get() < 200) {
+      Thread.sleep(1);
+    }
+    log.close(); // kill: every later log write fails
+    worker.join();
+
+    try (TransferLog reopened = TransferLog.open(directory, TransferLog.SyncMode.GROUP)) {
+      BankTransferSystem recovered = BankTransferSystem.open(reopened, Map.of());
+      long[] atAck = modelAfterBatches(acknowledged.get());
+      long[] atAckPlusOne = modelAfterBatches(acknowledged.get() + 1);
+      boolean matchesAck = true;
+      boolean matchesAckPlusOne = true;
+      for (int i = 0; i < 20; i++) {
+        long balance = recovered.getAccount("Acc" + i).getBalance();
+        matchesAck &= balance == atAck[i];
+        matchesAckPlusOne &= balance == atAckPlusOne[i];
+      }
+      Assert.assertTrue("Recovered state is not the state after batch " + acknowledged.get() + " or the next one",
+          matchesAck || matchesAckPlusOne);
+      assertEquals(20 * 10_000, recovered.getTotalBalance());
+    }
+  }
+
+  private static List<Transfer> randomBatch(Random random) {
+    List<Transfer> batch = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      batch.add(new Transfer("Acc" + random.nextInt(20), "Acc" + random.nextInt(20), 1 + random.nextInt(3000)));
+    }
+    return batch;
+  }
+
+  // Balances after applying the first n seeded batches the way transferBatch does
+  private static long[] modelAfterBatches(int n) {
+    long[] balances = new long[20];
+    Arrays.fill(balances, 10_000);
+    Random random = new Random(11);
+    for (int batch = 0; batch < n; batch++) {
+      for (Transfer transfer : randomBatch(random)) {
+        int from = Integer.parseInt(transfer.fromAccount().substring(3));
+        int to = Integer.parseInt(transfer.toAccount().substring(3));
+        if (balances[from] >= transfer.amount()) {
+          balances[from] -= transfer.amount();
+          balances[to] += transfer.amount();
+        }
+      }
+    }
+    return balances;
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testDurableTransfer_syncPerTransferComparedToGroupCommit() throws Exception {
+    for (TransferLog.SyncMode mode : TransferLog.SyncMode.values()) {
+      Path directory = temporaryFolder.newFolder().toPath();
+      try (TransferLog log = TransferLog.open(directory, mode)) {
+        Map<String, Long> initial = new HashMap<>();
+        for (int i = 0; i < 64; i++) {
+          initial.put("Acc" + i, 1_000_000L);
+        }
+        BankTransferSystem system = BankTransferSystem.open(log, initial);
+
+        int threadCount = 8;
+        int transfersPerThread = 300;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+          int offset = t * 8;
+          threads[t] = new Thread(() -> {
+            for (int i = 0; i < transfersPerThread; i++) {
+              system.transfer("Acc" + (offset + i % 8), "Acc" + (offset + (i + 1) % 8), 1);
+            }
+          });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+          thread.start();
+        }
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(64 * 1_000_000L, system.getTotalBalance());
+        System.out.printf("Durable transfers, %s sync, %d threads: %.0f transfers/s%n",
+            mode, threadCount, (double) threadCount * transfersPerThread * 1e9 / elapsed);
+      }
+    }
   }
 }
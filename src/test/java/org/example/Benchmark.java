@@ -0,0 +1,9 @@
+package org.example;
+
+/**
+ * JUnit category of tests that measure throughput, allocation or overhead and print the figures.
+ * They are left out of {@code mvn test}; run them with {@code mvn test -Pbenchmarks}. Several read
+ * per-thread allocation through com.sun.management.ThreadMXBean, which only HotSpot-based JVMs have.
+ */
+public interface Benchmark {
+}
@@ -1,11 +1,19 @@
 package org.example;
 
+import static org.junit.Assert.assertEquals;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 
 public class DatabaseCheckpointTest {
 
@@ -89,4 +97,142 @@ public class DatabaseCheckpointTest {
     // Then: The result should be true
     Assert.assertFalse(isConsistent);
   }
+
+  @Test
+  public void testValidateDataIntegrity_shouldCompareLists() {
+    List<Map<String, String>> originalData = List.of(Map.of("id", "1", "name", "Alice"), Map.of("id", "2", "name", "Bob"));
+    Assert.assertTrue(DBCheckPoint.validateDataIntegrity(originalData, List.of(Map.of("id", "1", "name", "Alice"),
+        Map.of("name", "Bob", "id", "2"))));
+    Assert.assertFalse(DBCheckPoint.validateDataIntegrity(originalData, List.of(Map.of("id", "1", "name", "Alice"),
+        Map.of("id", "2", "name", "Bobby"))));
+    Assert.assertFalse(DBCheckPoint.validateDataIntegrity(originalData, originalData.subList(0, 1)));
+  }
+
+  // Rows are generated on demand, so neither side is ever in memory
+  private static Stream<Map<String, String>> rows(long count, long changedRow) {
+    return LongStream.range(0, count).mapToObj(i -> Map.of(
+        "id", Long.toString(i),
+        "name", "customer-" + i,
+        "balance", Long.toString(i == changedRow ? -1 : i * 7 % 1000)));
+  }
+
+  @Test
+  public void testValidate_whenStreamingLargeTables_ShouldReportProgressAndFirstMismatch() {
+    List<Long> progress = new ArrayList<>();
+    ValidationResult passed = DBCheckPoint.validate(RowSource.ofStream(() -> rows(100_000, -1)),
+        RowSource.ofStream(() -> rows(100_000, -1)), 0, 25_000, progress::add);
+    Assert.assertTrue(passed.isPassed());
+    assertEquals(100_000, passed.rowOffset());
+    assertEquals(List.of(25_000L, 50_000L, 75_000L, 100_000L), progress);
+
+    ValidationResult mismatch = DBCheckPoint.validate(RowSource.ofStream(() -> rows(100_000, -1)),
+        RowSource.ofStream(() -> rows(100_000, 73_456)), 0, 50_000, offset -> { });
+    assertEquals(ValidationResult.Status.ROW_MISMATCH, mismatch.status());
+    assertEquals(73_456, mismatch.rowOffset());
+    assertEquals("-1", mismatch.migratedRow().get("balance"));
+
+    ValidationResult shorter = DBCheckPoint.validate(rows(1000, -1).iterator(), rows(999, -1).iterator());
+    assertEquals(ValidationResult.Status.ROW_COUNT_MISMATCH, shorter.status());
+    assertEquals(999, shorter.rowOffset());
+  }
+
+  @Test
+  public void testValidate_whenInterrupted_ShouldResumeFromLastReportedOffset() {
+    AtomicLong lastReported = new AtomicLong();
+    // The migrated side's connection drops at row 70,000
+    RowSource failing = RowSource.ofStream(() -> rows(100_000, -1).peek(row -> {
+      if (row.get("id").equals("70000")) {
+        throw new IllegalStateException("Connection reset");
+      }
+    }));
+    try {
+      DBCheckPoint.validate(RowSource.ofStream(() -> rows(100_000, -1)), failing, 0, 10_000, lastReported::set);
+      Assert.fail("Expected the validation to die with the connection");
+    } catch (IllegalStateException e) {
+      assertEquals("Connection reset", e.getMessage());
+    }
+    assertEquals(70_000, lastReported.get());
+
+    AtomicLong rowsRead = new AtomicLong();
+    // A cursor that seeks straight to the offset, like a keyed database query
+    RowSource counting = offset -> rows(100_000, -1).skip(offset).peek(row -> rowsRead.incrementAndGet()).iterator();
+    ValidationResult resumed = DBCheckPoint.validate(RowSource.ofStream(() -> rows(100_000, -1)), counting,
+        lastReported.get(), 10_000, lastReported::set);
+    Assert.assertTrue(resumed.isPassed());
+    assertEquals(100_000, lastReported.get());
+    assertEquals(30_000, rowsRead.get()); // Rows before the offset were not read again
+  }
+
+  @Test
+  public void testValidateParallel_shouldMatchSequentialResultExactly() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Random random = new Random(17);
+      for (int trial = 0; trial < 40; trial++) {
+        int originalCount = 5_000 + random.nextInt(100);
+        int migratedCount = random.nextInt(4) == 0 ? originalCount - 1 - random.nextInt(50) : originalCount;
+        List<Map<String, String>> originalData = rows(originalCount, -1).toList();
+        List<Map<String, String>> migratedData = new ArrayList<>(rows(migratedCount, -1).toList());
+        for (int changes = random.nextInt(4); changes > 0; changes--) {
+          int row = random.nextInt(migratedCount);
+          migratedData.set(row, Map.of("id", Integer.toString(row), "name", "changed"));
+        }
+
+        ValidationResult sequential = DBCheckPoint.validate(originalData.iterator(), migratedData.iterator());
+        ValidationResult parallel = DBCheckPoint.validateParallel(RowSource.of(originalData), RowSource.of(migratedData),
+            0, 1_000, offset -> { }, pool, 64);
+        assertEquals(sequential.status(), parallel.status());
+        assertEquals(sequential.rowOffset(), parallel.rowOffset());
+        assertEquals(sequential.migratedRow(), parallel.migratedRow());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testValidateParallel_shouldReportProgressAndResume() {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      List<Long> progress = new ArrayList<>();
+      ValidationResult result = DBCheckPoint.validateParallel(RowSource.ofStream(() -> rows(30_000, -1)),
+          RowSource.ofStream(() -> rows(30_000, -1)), 10_000, 5_000, progress::add, pool);
+      Assert.assertTrue(result.isPassed());
+      assertEquals(30_000, result.rowOffset());
+      assertEquals(30_000L, (long) progress.get(progress.size() - 1));
+      Assert.assertTrue(progress.get(0) >= 15_000);
+      for (int i = 1; i < progress.size() - 1; i++) { // The last report is the end of the data
+        Assert.assertTrue(progress.get(i) - progress.get(i - 1) >= 5_000);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testValidateParallel_scalingWithWorkers() {
+    int rowCount = 100_000;
+    List<Map<String, String>> originalData = rows(rowCount, -1).toList();
+    List<Map<String, String>> migratedData = rows(rowCount, -1).toList();
+    DBCheckPoint.validate(originalData.iterator(), migratedData.iterator()); // warm-up
+
+    long start = System.nanoTime();
+    Assert.assertTrue(DBCheckPoint.validate(originalData.iterator(), migratedData.iterator()).isPassed());
+    double sequentialSeconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("Sequential validation: %.0f rows/s (%d cores available)%n",
+        rowCount / sequentialSeconds, Runtime.getRuntime().availableProcessors());
+    for (int workers : new int[] {1, 2, 4, 8}) {
+      ForkJoinPool pool = new ForkJoinPool(workers);
+      try {
+        start = System.nanoTime();
+        Assert.assertTrue(DBCheckPoint.validateParallel(originalData, migratedData, pool).isPassed());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Parallel validation, %d workers: %.0f rows/s (%.2fx)%n",
+            workers, rowCount / seconds, sequentialSeconds / seconds);
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
 }
@@ -0,0 +1,256 @@
+package org.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.example.util.JsonToGenericObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class JsonBindingTest {
+
+  enum Status { OPEN, SHIPPED }
+
+  record Line(String sku, int quantity, BigDecimal price) {
+  }
+
+  record Order(String id, Status status, long placedAt, double total, boolean paid, char grade, Integer rating,
+      List<Line> lines, Map<String, Integer> counts, Set<String> tags, long[] codes, Line[] returns, Object extra,
+      BigInteger serial) {
+  }
+
+  record Node(String name, List<Node> children) {
+  }
+
+  static class Audited {
+    private String createdBy;
+    private long version;
+  }
+
+  static class Account extends Audited {
+    private static int instances;
+    private final String kind = "account";
+    private transient String cache = "kept";
+    private String owner;
+    private short branch;
+    private List<String> aliases;
+  }
+
+  private static byte[] utf8(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void parse_whenTargetIsARecordWithNestedTypes_shouldBindEveryComponent() {
+    String json = "{\"id\": \"o-1\", \"status\": \"SHIPPED\", \"placedAt\": 1697040000123, \"total\": 1.5e2,"
+        + " \"paid\": true, \"grade\": \"A\", \"rating\": null,"
+        + " \"lines\": [{\"sku\": \"x\", \"quantity\": 2, \"price\": 12.50}, {\"quantity\": 1, \"sku\": \"y\"}],"
+        + " \"counts\": {\"a\": 1, \"b\": null}, \"tags\": [\"new\", \"new\", \"gift\"], \"codes\": [7, -8],"
+        + " \"returns\": [], \"extra\": {\"free\": [1, \"form\"]}, \"serial\": 123456789012345678901234567890}";
+
+    Order order = SimpleJsonParser.parse(json, Order.class);
+
+    assertEquals("o-1", order.id());
+    assertEquals(Status.SHIPPED, order.status());
+    assertEquals(1697040000123L, order.placedAt());
+    assertEquals(150.0, order.total(), 0);
+    assertTrue(order.paid());
+    assertEquals('A', order.grade());
+    assertNull(order.rating());
+    assertEquals(List.of(new Line("x", 2, new BigDecimal("12.50")), new Line("y", 1, null)), order.lines());
+    assertEquals(Map.of("a", 1), Map.of("a", order.counts().get("a")));
+    assertTrue(order.counts().containsKey("b"));
+    assertEquals(List.of("new", "gift"), new ArrayList<>(order.tags()));
+    assertArrayEquals(new long[] {7, -8}, order.codes());
+    assertEquals(0, order.returns().length);
+    assertEquals(Map.of("free", List.of(BigInteger.ONE, "form")), order.extra());
+    assertEquals(new BigInteger("123456789012345678901234567890"), order.serial());
+  }
+
+  @Test
+  public void parse_whenTargetIsAClass_shouldBindItsFieldsIncludingInheritedOnes() {
+    Account account = SimpleJsonParser.parse(utf8("{\"owner\": \"Zoë\", \"branch\": 12, \"createdBy\": \"ops\","
+        + " \"version\": 3, \"kind\": \"ignored\", \"cache\": \"ignored\", \"instances\": 9,"
+        + " \"aliases\": [\"z\", null]}"), Account.class);
+
+    assertEquals("Zoë", account.owner);
+    assertEquals(12, account.branch);
+    assertEquals("ops", ((Audited) account).createdBy);
+    assertEquals(3, ((Audited) account).version);
+    assertEquals(java.util.Arrays.asList("z", null), account.aliases);
+    assertEquals("account", account.kind);
+    assertEquals("kept", account.cache);
+    assertEquals(0, Account.instances);
+  }
+
+  @Test
+  public void parse_whenFieldsAreUnknownOrMissing_shouldSkipThemAndKeepDefaults() {
+    Line line = SimpleJsonParser.parse("{\"unknown\": {\"deep\": [1, {\"x\": \"}\"}]}, \"sku\": \"s\","
+        + " \"more\": [[], {}], \"last\": null}", Line.class);
+
+    assertEquals(new Line("s", 0, null), line);
+  }
+
+  @Test
+  public void parse_whenTargetIsRecursiveOrAnArray_shouldBindEveryElement() {
+    Node[] nodes = SimpleJsonParser.parse("[{\"name\": \"root\", \"children\": [{\"name\": \"leaf\", \"children\": []}]},"
+        + " null]", Node[].class);
+
+    assertEquals(new Node("root", List.of(new Node("leaf", List.of()))), nodes[0]);
+    assertNull(nodes[1]);
+  }
+
+  @Test
+  public void readValue_whenStreamingAnArray_shouldBindOneRecordAtATime() {
+    Utf8JsonParser parser = new Utf8JsonParser(utf8("[{\"sku\": \"a\", \"quantity\": 1}, {\"sku\": \"b\", \"quantity\": 2}]"));
+    List<Line> lines = new ArrayList<>();
+    parser.next();
+    while (parser.next() == JsonEvent.START_OBJECT) {
+      lines.add(parser.readValue(Line.class));
+    }
+
+    assertEquals(List.of(new Line("a", 1, null), new Line("b", 2, null)), lines);
+    assertEquals(JsonEvent.END_ARRAY, parser.currentEvent());
+  }
+
+  @Test
+  public void parse_whenValueDoesNotFitTheType_shouldThrow() {
+    for (String json : List.of("{\"quantity\": null}", "{\"quantity\": \"2\"}", "{\"quantity\": 3000000000}",
+        "{\"sku\": 5}", "[]", "{\"quantity\": 1.5}")) {
+      try {
+        SimpleJsonParser.parse(json, Line.class);
+        fail(json);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+    }
+    try {
+      SimpleJsonParser.parse("{\"serial\": 2.5}", Order.class);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // Expected
+    }
+    try {
+      SimpleJsonParser.parse("{\"status\": \"LOST\"}", Order.class);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().contains("LOST"));
+    }
+  }
+
+  record Address(String street, String zip) {
+  }
+
+  record Customer(long id, String name, String email, String city, double balance, boolean active,
+      Address address, String note) {
+  }
+
+  // The same records as Utf8JsonParserTest's payload
+  private static String payload(int records) {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < records; i++) {
+      json.append(i == 0 ? "" : ",\n").append("{\"id\": ").append(i).append(", \"name\": \"customer ").append(i)
+          .append("\", \"email\": \"customer").append(i).append("@example.com\", \"city\": \"Zürich\", \"balance\": ")
+          .append(i % 1000).append(".25, \"active\": ").append(i % 2 == 0)
+          .append(", \"address\": {\"street\": \"").append(i).append(" Long Street Name Avenue\", \"zip\": null}")
+          .append(", \"note\": \"a \\\"quoted\\\" note\"}");
+    }
+    return json.append(']').toString();
+  }
+
+  // What callers do today: parse to maps, then copy each field out
+  private static Customer[] copy(List<?> maps) {
+    Customer[] customers = new Customer[maps.size()];
+    for (int i = 0; i < customers.length; i++) {
+      Map<?, ?> map = (Map<?, ?>) maps.get(i);
+      Map<?, ?> address = (Map<?, ?>) map.get("address");
+      customers[i] = new Customer(((Number) map.get("id")).longValue(), (String) map.get("name"),
+          (String) map.get("email"), (String) map.get("city"), ((Number) map.get("balance")).doubleValue(),
+          (Boolean) map.get("active"), new Address((String) address.get("street"), (String) address.get("zip")),
+          (String) map.get("note"));
+    }
+    return customers;
+  }
+
+  private static double megabytesPerSecond(double megabytes, Runnable parse) {
+    int runs = 3;
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      parse.run();
+    }
+    return runs * megabytes / ((System.nanoTime() - start) / 1e9);
+  }
+
+  private static long allocatedBytes(Runnable parse) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    parse.run();
+    return threads.getThreadAllocatedBytes(thread) - before;
+  }
+
+  @Test
+  public void jsonBinding_whenPayloadHasManyRecords_shouldMatchMapsAndJackson() throws IOException {
+    String json = payload(1000);
+    byte[] bytes = utf8(json);
+
+    Customer[] expected = copy((List<?>) SimpleJsonParser.parse(bytes));
+    assertArrayEquals(expected, SimpleJsonParser.parse(bytes, Customer[].class));
+    assertArrayEquals(expected, SimpleJsonParser.parse(json, Customer[].class));
+    assertArrayEquals(expected, copy((List<?>) SimpleJsonParser.parseCompact(bytes, NumberPolicy.LOSSLESS_NARROW)));
+    assertArrayEquals(expected, new ObjectMapper().readValue(bytes, Customer[].class));
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void jsonBinding_whenPayloadIsLarge_shouldReportThroughputAgainstMapThenCopyAndJackson() {
+    int records = 100_000;
+    String json = payload(records);
+    byte[] bytes = utf8(json);
+    double megabytes = bytes.length / 1e6;
+    ObjectMapper mapper = new ObjectMapper();
+
+    String[] names = {"bound", "maps then copy", "compact maps then copy", "Jackson bound",
+        "JsonToGenericObject then copy"};
+    Runnable[] parsers = {
+        () -> SimpleJsonParser.parse(bytes, Customer[].class),
+        () -> copy((List<?>) SimpleJsonParser.parse(bytes, NumberPolicy.LOSSLESS_NARROW)),
+        () -> copy((List<?>) SimpleJsonParser.parseCompact(bytes, NumberPolicy.LOSSLESS_NARROW)),
+        () -> {
+          try {
+            mapper.readValue(bytes, Customer[].class);
+          } catch (IOException e) {
+            throw new AssertionError(e);
+          }
+        },
+        () -> copy((List<?>) JsonToGenericObject.parseJson(json))};
+    long[] allocated = new long[parsers.length];
+    double[] throughput = new double[parsers.length];
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < parsers.length; i++) {
+        allocated[i] = allocatedBytes(parsers[i]);
+        throughput[i] = megabytesPerSecond(megabytes, parsers[i]);
+      }
+    }
+    StringBuilder report = new StringBuilder(String.format("%.0f MB, %d customers:", megabytes, records));
+    for (int i = 0; i < parsers.length; i++) {
+      report.append(String.format("%n  %-30s %5.0f MB/s, %5d B allocated per customer", names[i], throughput[i],
+          allocated[i] / records));
+    }
+    System.out.println(report);
+    assertTrue(allocated[0] < allocated[1] / 2);
+  }
+}
@@ -0,0 +1,279 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class JsonNumberTest {
+
+  private static byte[] utf8(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  // The same list from the String and the byte parser
+  private static List<?> parse(String json, NumberPolicy numbers) {
+    Object fromString = SimpleJsonParser.parse(json, numbers);
+    assertEquals(fromString, SimpleJsonParser.parse(utf8(json), numbers));
+    return (List<?>) fromString;
+  }
+
+  @Test
+  public void alwaysBig_whenParsingNumbers_shouldKeepTheWrittenScale() {
+    List<?> values = parse("[0, -0, 30, -12, 88.5, 90.0, 0.05, 100.00, -0.0, 1e5, 1.5E+3, -2.5e-3,"
+        + " 123456789012345678901234567890, 0.1234567890123456789012345]", NumberPolicy.ALWAYS_BIG);
+
+    assertEquals(List.of(BigInteger.ZERO, BigInteger.ZERO, new BigInteger("30"), new BigInteger("-12"),
+        new BigDecimal("88.5"), new BigDecimal("90.0"), new BigDecimal("0.05"), new BigDecimal("100.00"),
+        new BigDecimal("-0.0"), new BigDecimal("1e5"), new BigDecimal("1.5E+3"), new BigDecimal("-2.5e-3"),
+        new BigInteger("123456789012345678901234567890"), new BigDecimal("0.1234567890123456789012345")), values);
+    assertEquals(values, SimpleJsonParser.parse("[0, -0, 30, -12, 88.5, 90.0, 0.05, 100.00, -0.0, 1e5, 1.5E+3,"
+        + " -2.5e-3, 123456789012345678901234567890, 0.1234567890123456789012345]"));
+  }
+
+  @Test
+  public void losslessNarrow_whenParsingNumbers_shouldPickTheSmallestExactType() {
+    List<?> values = parse("[30, -2147483648, 3000000000, 9223372036854775807, 9223372036854775808, 88.5, 0.1,"
+        + " 1e5, 3.14159265358979323846, 1e400, 123456789012.125]", NumberPolicy.LOSSLESS_NARROW);
+
+    assertEquals(List.of(30, Integer.MIN_VALUE, 3_000_000_000L, Long.MAX_VALUE, new BigInteger("9223372036854775808"),
+        88.5, 0.1, 1e5, new BigDecimal("3.14159265358979323846"), new BigDecimal("1e400"), 123456789012.125), values);
+  }
+
+  @Test
+  public void double_whenParsingNumbers_shouldConvertEveryNumber() {
+    List<?> values = parse("[30, -0, 88.5, 1e5, 12345678901234567890, 1e400, 4.9e-324, 2.2250738585072014E-308]",
+        NumberPolicy.DOUBLE);
+
+    assertEquals(List.of(30.0, -0.0, 88.5, 1e5, 12345678901234567890.0, Double.POSITIVE_INFINITY, 4.9e-324,
+        2.2250738585072014E-308), values);
+  }
+
+  @Test
+  public void jsonNumber_whenNumberIsMalformed_shouldThrow() {
+    for (String json : List.of("[-]", "[1.]", "[1.e5]", "[1e]", "[1e+]", "[-a]")) {
+      try {
+        SimpleJsonParser.parse(json);
+        fail(json);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+      try {
+        SimpleJsonParser.parse(utf8(json));
+        fail(json);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void pullParsers_whenReadingNumbers_shouldReturnPrimitives() {
+    String json = "[42, -7, 1e3, 2.5, 12345678901234567890]";
+    JsonPullParser chars = new JsonPullParser(new StringReader(json));
+    Utf8JsonParser bytes = new Utf8JsonParser(utf8(json));
+    chars.next();
+    bytes.next();
+    for (Object[] expected : new Object[][] {{42L, 42.0}, {-7L, -7.0}, {1000L, 1e3}, {null, 2.5},
+        {null, 12345678901234567890.0}}) {
+      chars.next();
+      bytes.next();
+      if (expected[0] != null) {
+        assertEquals(expected[0], chars.getLong());
+        assertEquals(expected[0], bytes.getLong());
+      } else {
+        assertNotALong(chars::getLong);
+        assertNotALong(bytes::getLong);
+      }
+      assertEquals((double) expected[1], chars.getDouble(), 0);
+      assertEquals((double) expected[1], bytes.getDouble(), 0);
+    }
+  }
+
+  private static void assertNotALong(Runnable read) {
+    try {
+      read.run();
+      fail();
+    } catch (IllegalStateException expected) {
+      // Expected
+    }
+  }
+
+  // A number with up to 22 digits around an optional point and an optional exponent
+  private static String randomNumber(Random random) {
+    StringBuilder number = new StringBuilder(random.nextBoolean() ? "-" : "");
+    int digits = 1 + random.nextInt(22);
+    int point = random.nextInt(3) == 0 ? 0 : random.nextInt(digits);
+    for (int i = 0; i < digits; i++) {
+      if (i == point && i > 0) {
+        number.append('.');
+      }
+      boolean leading = i == 0 && digits > 1 && point != 1;
+      number.append(leading ? (char) ('1' + random.nextInt(9)) : (char) ('0' + random.nextInt(10)));
+    }
+    if (random.nextInt(3) == 0) {
+      number.append(random.nextBoolean() ? 'e' : 'E')
+          .append(random.nextBoolean() ? "-" : random.nextBoolean() ? "+" : "")
+          .append(random.nextInt(random.nextBoolean() ? 30 : 400));
+    }
+    return number.toString();
+  }
+
+  @Test
+  public void everyPolicy_whenNumbersAreRandom_shouldMatchBigDecimalAndParseDouble() {
+    Random random = new Random(7);
+    List<String> numbers = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      numbers.add(randomNumber(random));
+    }
+    String json = numbers.toString();
+
+    List<?> big = parse(json, NumberPolicy.ALWAYS_BIG);
+    List<?> doubles = parse(json, NumberPolicy.DOUBLE);
+    List<?> narrow = parse(json, NumberPolicy.LOSSLESS_NARROW);
+    for (int i = 0; i < numbers.size(); i++) {
+      String number = numbers.get(i);
+      boolean integer = number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0;
+      BigDecimal exact = new BigDecimal(number);
+      assertEquals(number, integer ? new BigInteger(number) : exact, big.get(i));
+      assertEquals(number, Double.parseDouble(number), (double) (Double) doubles.get(i), 0);
+      Object value = narrow.get(i);
+      if (value instanceof Double) {
+        // At most 15 significant digits, which the double gives back
+        assertTrue(number, exact.stripTrailingZeros().precision() <= 15);
+        assertEquals(number, 0, new BigDecimal((Double) value).round(new MathContext(15)).compareTo(exact));
+      } else {
+        assertEquals(number, 0, new BigDecimal(value.toString()).compareTo(exact));
+        assertTrue(number, integer ? !(value instanceof BigDecimal) : value instanceof BigDecimal);
+      }
+    }
+  }
+
+  // A telemetry feed: timestamps, counters and readings, mostly numbers
+  private static String telemetry(int samples) {
+    StringBuilder json = new StringBuilder("[");
+    Random random = new Random(1);
+    for (int i = 0; i < samples; i++) {
+      json.append(i == 0 ? "" : ",\n").append("{\"ts\": ").append(1_697_040_000_000L + 250L * i)
+          .append(", \"host\": ").append(i % 64).append(", \"cpu\": ").append(random.nextInt(1000) / 1000.0)
+          .append(", \"mem\": ").append(52_000_000 + random.nextInt(1_000_000))
+          .append(", \"temp\": ").append(40 + random.nextInt(400) / 10.0)
+          .append(", \"rx\": ").append(random.nextInt(100)).append(".25e3, \"load\": [")
+          .append(random.nextInt(100) / 100.0).append(", ").append(random.nextInt(100) / 100.0).append(", ")
+          .append(random.nextInt(100) / 100.0).append("]}");
+    }
+    return json.append(']').toString();
+  }
+
+  private static double megabytesPerSecond(double megabytes, Runnable parse) {
+    int runs = 3;
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      parse.run();
+    }
+    return runs * megabytes / ((System.nanoTime() - start) / 1e9);
+  }
+
+  private static long allocatedBytes(Runnable parse) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(thread);
+    parse.run();
+    return threads.getThreadAllocatedBytes(thread) - before;
+  }
+
+  // Sums the readings with the pull parser: from the number text as before, or straight to a double
+  private static double sumReadings(byte[] json, boolean fromText) {
+    Utf8JsonParser parser = new Utf8JsonParser(json);
+    double sum = 0;
+    for (JsonEvent event = parser.next(); event != null; event = parser.next()) {
+      if (event == JsonEvent.VALUE_NUMBER) {
+        sum += fromText ? ((Number) JsonNumber.parse(parser.getText(), NumberPolicy.ALWAYS_BIG)).doubleValue()
+            : parser.getDouble();
+      }
+    }
+    return sum;
+  }
+
+  @Test
+  public void numberPolicy_whenParsingTelemetry_shouldAgreeOnEveryReading() {
+    String json = telemetry(1000);
+    byte[] bytes = utf8(json);
+
+    assertEquals(sumReadings(bytes, true), sumReadings(bytes, false), 1e-6);
+    Map<?, ?> narrow = (Map<?, ?>) ((List<?>) SimpleJsonParser.parse(bytes, NumberPolicy.LOSSLESS_NARROW)).get(0);
+    assertEquals(0, narrow.get("host"));
+    assertEquals(1_697_040_000_000L, narrow.get("ts"));
+    Map<?, ?> doubles = (Map<?, ?>) ((List<?>) SimpleJsonParser.parse(json, NumberPolicy.DOUBLE)).get(0);
+    assertEquals(0.0, doubles.get("host"));
+    assertEquals(SimpleJsonParser.parse(json, NumberPolicy.DOUBLE), SimpleJsonParser.parseCompact(bytes, NumberPolicy.DOUBLE));
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void numberPolicy_whenParsingLargeTelemetry_shouldReportAllocationAndThroughput() {
+    int samples = 100_000;
+    int numbersPerSample = 9;
+    String json = telemetry(samples);
+    byte[] bytes = utf8(json);
+    double megabytes = bytes.length / 1e6;
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectMapper mapperBig = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+
+    String[] names = {"String ALWAYS_BIG", "String DOUBLE", "bytes ALWAYS_BIG", "bytes LOSSLESS_NARROW",
+        "bytes DOUBLE", "compact DOUBLE", "Jackson", "Jackson BigDecimal", "events, from text", "events, getDouble"};
+    Runnable[] parsers = {
+        () -> SimpleJsonParser.parse(json, NumberPolicy.ALWAYS_BIG),
+        () -> SimpleJsonParser.parse(json, NumberPolicy.DOUBLE),
+        () -> SimpleJsonParser.parse(bytes, NumberPolicy.ALWAYS_BIG),
+        () -> SimpleJsonParser.parse(bytes, NumberPolicy.LOSSLESS_NARROW),
+        () -> SimpleJsonParser.parse(bytes, NumberPolicy.DOUBLE),
+        () -> SimpleJsonParser.parseCompact(bytes, NumberPolicy.DOUBLE),
+        () -> readJackson(mapper, bytes),
+        () -> readJackson(mapperBig, bytes),
+        () -> sumReadings(bytes, true),
+        () -> sumReadings(bytes, false)};
+    long[] allocated = new long[parsers.length];
+    double[] throughput = new double[parsers.length];
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < parsers.length; i++) {
+        allocated[i] = allocatedBytes(parsers[i]);
+        throughput[i] = megabytesPerSecond(megabytes, parsers[i]);
+      }
+    }
+    StringBuilder report = new StringBuilder(String.format("%.0f MB of telemetry, %d numbers:", megabytes,
+        samples * numbersPerSample));
+    for (int i = 0; i < parsers.length; i++) {
+      report.append(String.format("%n  %-22s %6.0f MB/s, %5.1f B allocated per number", names[i], throughput[i],
+          (double) allocated[i] / samples / numbersPerSample));
+    }
+    System.out.println(report);
+    assertTrue(allocated[4] < allocated[2]);
+    assertTrue(allocated[1] < allocated[0]);
+    // Only the parser itself: no allocation per number
+    assertTrue(allocated[9] < samples);
+  }
+
+  private static void readJackson(ObjectMapper mapper, byte[] bytes) {
+    try {
+      mapper.readValue(bytes, Object.class);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class JsonPullParserTest {
+
+  private static final String JSON = "{ \"name\": \"Alice\", \"age\": 30, \"isStudent\": false, \"scores\": [88.5, 90.0, 95.75],"
+      + " \"address\": {\"city\": \"Wonderland\", \"zip\": null} }";
+
+  private static List<String> events(JsonPullParser parser) {
+    List<String> events = new ArrayList<>();
+    for (JsonEvent event = parser.next(); event != null; event = parser.next()) {
+      boolean hasText = event == JsonEvent.FIELD_NAME || event == JsonEvent.VALUE_STRING
+          || event == JsonEvent.VALUE_NUMBER;
+      events.add(hasText ? event + " " + parser.getText() : event.toString());
+    }
+    return events;
+  }
+
+  @Test
+  public void jsonPullParser_whenReadingADocument_shouldEmitEventsInDocumentOrder() {
+    List<String> events = events(new JsonPullParser(new StringReader(JSON)));
+
+    assertEquals(List.of("START_OBJECT", "FIELD_NAME name", "VALUE_STRING Alice", "FIELD_NAME age", "VALUE_NUMBER 30",
+        "FIELD_NAME isStudent", "VALUE_FALSE", "FIELD_NAME scores", "START_ARRAY", "VALUE_NUMBER 88.5",
+        "VALUE_NUMBER 90.0", "VALUE_NUMBER 95.75", "END_ARRAY", "FIELD_NAME address", "START_OBJECT",
+        "FIELD_NAME city", "VALUE_STRING Wonderland", "FIELD_NAME zip", "VALUE_NULL", "END_OBJECT", "END_OBJECT"),
+        events);
+  }
+
+  @Test
+  public void readValue_whenAtTheRoot_shouldBuildTheSameTreeAsSimpleJsonParser() {
+    JsonPullParser parser = new JsonPullParser(new StringReader(JSON));
+    parser.next();
+
+    assertEquals(SimpleJsonParser.parse(JSON), parser.readValue());
+    assertEquals(JsonEvent.END_OBJECT, parser.currentEvent());
+    assertNull(parser.next());
+  }
+
+  @Test
+  public void skipChildren_whenAtAContainer_shouldMoveToTheMatchingEnd() {
+    JsonPullParser parser = new JsonPullParser(new StringReader(
+        "{\"skip\": {\"a\": [1, {\"b\": \"}]\"}], \"c\": {}}, \"keep\": [true, []], \"last\": \"x\"}"));
+    parser.next();
+    assertEquals(JsonEvent.FIELD_NAME, parser.next());
+    assertEquals(JsonEvent.START_OBJECT, parser.next());
+
+    parser.skipChildren();
+
+    assertEquals(JsonEvent.END_OBJECT, parser.currentEvent());
+    assertEquals(1, parser.depth());
+    assertEquals(JsonEvent.FIELD_NAME, parser.next());
+    assertEquals("keep", parser.getText());
+    assertEquals(List.of(true, List.of()), parser.readValue());
+    parser.next();
+    assertEquals("last", parser.getText());
+    parser.skipChildren(); // Not at a container, so nothing happens
+    assertEquals("x", parser.readValue());
+    assertEquals(JsonEvent.END_OBJECT, parser.next());
+    assertNull(parser.next());
+  }
+
+  @Test
+  public void jsonPullParser_whenReadingAnInputStream_shouldDecodeUtf8AndValuesInARow() {
+    byte[] lines = "{\"name\": \"Zoë\", \"n\": -12}\n{\"name\": \"日本\", \"n\": 1.5}\n".getBytes(StandardCharsets.UTF_8);
+    JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream(lines));
+
+    parser.next();
+    assertEquals(Map.of("name", "Zoë", "n", new BigInteger("-12")), parser.readValue());
+    parser.next();
+    assertEquals(Map.of("name", "日本", "n", new BigDecimal("1.5")), parser.readValue());
+    assertNull(parser.next());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void jsonPullParser_whenCommaIsMissing_shouldThrow() {
+    events(new JsonPullParser(new StringReader("[1 2]")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void jsonPullParser_whenInputIsTruncated_shouldThrow() {
+    events(new JsonPullParser(new StringReader("{\"a\": [1, 2")));
+  }
+
+  // A generated array of records, produced as it is read: {"id": 0, "name": "customer 0", "tags": [...]}, ...
+  private static class RecordStream extends Reader {
+    private final long records;
+    private long record;
+    private final StringBuilder pending = new StringBuilder("[");
+    private int pendingIndex;
+    long chars;
+
+    RecordStream(long records) {
+      this.records = records;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      if (pendingIndex == pending.length()) {
+        if (record > records) {
+          return -1;
+        }
+        pending.setLength(0);
+        pendingIndex = 0;
+        for (int i = 0; i < 64 && record <= records; i++, record++) {
+          if (record == records) {
+            pending.append(']');
+          } else {
+            pending.append(record == 0 ? "" : ",\n").append("{\"id\": ").append(record)
+                .append(", \"name\": \"customer ").append(record).append("\", \"balance\": ").append(record % 1000)
+                .append(".25, \"active\": true, \"tags\": [\"a\", \"b\", {\"nested\": null}]}");
+          }
+        }
+      }
+      int count = Math.min(length, pending.length() - pendingIndex);
+      pending.getChars(pendingIndex, pendingIndex + count, buffer, offset);
+      pendingIndex += count;
+      chars += count;
+      return count;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static long usedHeap(MemoryMXBean memory) {
+    System.gc();
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  // Sums the balance of every record, skipping the other fields; afterRecord gets the running count
+  private static long sumBalances(JsonPullParser parser, LongConsumer afterRecord) {
+    assertEquals(JsonEvent.START_ARRAY, parser.next());
+    long count = 0;
+    long balanceSum = 0;
+    while (parser.next() == JsonEvent.START_OBJECT) {
+      while (parser.next() == JsonEvent.FIELD_NAME) {
+        String field = parser.getText();
+        parser.next();
+        if (field.equals("balance")) {
+          balanceSum += ((BigDecimal) parser.getNumber()).longValue();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      afterRecord.accept(++count);
+    }
+    assertEquals(JsonEvent.END_ARRAY, parser.currentEvent());
+    assertNull(parser.next());
+    return balanceSum;
+  }
+
+  @Test
+  public void jsonPullParser_whenStreamIsGeneratedAsItIsRead_shouldVisitEveryRecord() {
+    long records = 50_000;
+    long[] count = new long[1];
+
+    long balanceSum = sumBalances(new JsonPullParser(new RecordStream(records)), n -> count[0] = n);
+
+    assertEquals(records, count[0]);
+    assertEquals(records / 1000 * 499_500, balanceSum);
+  }
+
+  // About 2.2 GB of JSON through the parser, with the heap in use measured along the way
+  @Test
+  @Category(Benchmark.class)
+  public void jsonPullParser_whenStreamIsGigabytesLong_shouldParseInConstantMemory() {
+    long records = 20_000_000;
+    RecordStream stream = new RecordStream(records);
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long start = System.nanoTime();
+    long[] baseline = new long[1];
+    long[] maxGrowth = new long[1];
+
+    long balanceSum = sumBalances(new JsonPullParser(stream), count -> {
+      if (count == records / 10) {
+        baseline[0] = usedHeap(memory);
+      } else if (count % (records / 5) == 0) {
+        maxGrowth[0] = Math.max(maxGrowth[0], usedHeap(memory) - baseline[0]);
+      }
+    });
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    assertEquals(records / 1000 * 499_500, balanceSum);
+    assertTrue(stream.chars > 2_000_000_000L);
+    System.out.printf("%.2f GB of JSON, %d records in %.1f s (%.0f MB/s), heap growth after the first 10%%: %d KB%n",
+        stream.chars / 1e9, records, seconds, stream.chars / 1e6 / seconds, maxGrowth[0] / 1024);
+    assertFalse("Heap grew by " + maxGrowth[0] + " bytes", maxGrowth[0] > 8 << 20);
+  }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class JsonSymbolTableTest {
+
+  private static String intern(JsonSymbolTable symbols, String key, boolean direct) {
+    byte[] bytes = ("\"" + key + "\"").getBytes(StandardCharsets.UTF_8);
+    int hash = 0;
+    for (int i = 1; i < bytes.length - 1; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    if (direct) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+      return symbols.intern(null, buffer, 1, bytes.length - 2, hash);
+    }
+    return symbols.intern(bytes, null, 1, bytes.length - 2, hash);
+  }
+
+  @Test
+  public void intern_whenKeyRepeats_shouldReturnTheSameInstance() {
+    JsonSymbolTable symbols = new JsonSymbolTable();
+
+    String id = intern(symbols, "id", false);
+    String city = intern(symbols, "città", false);
+
+    assertEquals("id", id);
+    assertEquals("città", city);
+    assertSame(id, intern(symbols, "id", false));
+    assertSame(id, intern(symbols, "id", true));
+    assertSame(city, intern(symbols, "città", true));
+    assertEquals(2, symbols.size());
+  }
+
+  @Test
+  public void intern_whenKeyComesFromChars_shouldReturnTheSameInstance() {
+    JsonSymbolTable symbols = new JsonSymbolTable();
+
+    String name = symbols.intern(new StringBuilder("name"));
+
+    assertSame(name, symbols.intern(new StringBuilder("name")));
+    assertNotSame(name, symbols.intern(new StringBuilder("names")));
+  }
+
+  @Test
+  public void intern_whenTableIsFull_shouldStopKeepingNewKeys() {
+    JsonSymbolTable symbols = new JsonSymbolTable();
+    for (int i = 0; i < 2 * JsonSymbolTable.MAX_SYMBOLS; i++) {
+      assertEquals("key" + i, intern(symbols, "key" + i, false));
+    }
+
+    assertEquals(JsonSymbolTable.MAX_SYMBOLS, symbols.size());
+    assertSame(intern(symbols, "key7", false), intern(symbols, "key7", false));
+    assertEquals("key" + JsonSymbolTable.MAX_SYMBOLS, intern(symbols, "key" + JsonSymbolTable.MAX_SYMBOLS, false));
+  }
+}
@@ -0,0 +1,254 @@
+package org.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedRowFileTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path file(String content) throws IOException {
+    Path file = temporaryFolder.newFile().toPath();
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+    return file;
+  }
+
+  // Rows of an export with id, name and balance; changedRow gets another name, -1 for none
+  private Path csv(int rows, int changedRow) throws IOException {
+    Path file = temporaryFolder.newFile().toPath();
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      out.write("id,name,balance\n");
+      for (int i = 0; i < rows; i++) {
+        out.write(i + ",\"customer " + (i == changedRow ? "changed" : i) + ", ltd\"," + i * 31 % 1000 + "\n");
+      }
+    }
+    return file;
+  }
+
+  private Path jsonLines(int rows) throws IOException {
+    Path file = temporaryFolder.newFile().toPath();
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      for (int i = 0; i < rows; i++) {
+        out.write("{\"name\": \"customer " + i + ", ltd\", \"id\": " + i + ", \"balance\": " + i * 31 % 1000 + "}\n");
+      }
+    }
+    return file;
+  }
+
+  private static List<byte[]> hashes(MappedRowFile.Cursor cursor) {
+    List<byte[]> hashes = new ArrayList<>();
+    while (cursor.next()) {
+      byte[] hash = new byte[RowHasher.HASH_LENGTH];
+      cursor.hash(new RowHasher(), hash, 0);
+      hashes.add(hash);
+    }
+    return hashes;
+  }
+
+  private static byte[] hash(Map<String, String> row) {
+    byte[] hash = new byte[RowHasher.HASH_LENGTH];
+    new RowHasher().hash(row, hash, 0);
+    return hash;
+  }
+
+  private static Map<String, String> row(String... columnsAndValues) {
+    Map<String, String> row = new LinkedHashMap<>();
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      row.put(columnsAndValues[i], columnsAndValues[i + 1]);
+    }
+    return row;
+  }
+
+  @Test
+  public void csvCursor_whenRowsAreQuotedOrUnicode_shouldHashLikeTheirMaps() throws IOException {
+    Path file = file("id,name,note\r\n1,Alice,\"says \"\"hi\"\", twice\"\r\n2,Zoë,\n3,\"\",last line");
+
+    try (MappedRowFile csv = MappedRowFile.csv(file)) {
+      MappedRowFile.Cursor cursor = csv.cursor();
+      List<Map<String, String>> expected = List.of(
+          row("id", "1", "name", "Alice", "note", "says \"hi\", twice"),
+          row("id", "2", "name", "Zoë", "note", ""),
+          row("id", "3", "name", "", "note", "last line"));
+      for (Map<String, String> row : expected) {
+        assertTrue(cursor.next());
+        assertEquals(row, cursor.row());
+        byte[] hash = new byte[RowHasher.HASH_LENGTH];
+        cursor.hash(new RowHasher(), hash, 0);
+        assertArrayEquals(hash(row), hash);
+      }
+      assertFalse(cursor.next());
+    }
+  }
+
+  @Test
+  public void jsonLinesCursor_whenRowsHaveEscapesAndNulls_shouldHashLikeTheirMaps() throws IOException {
+    Path file = file("{\"id\": 1, \"name\": \"Al\\\"ice\\n\", \"active\": true, \"note\": null}\n"
+        + "{ \"note\" : \"\\u00e9t\\u00e9 \\ud83d\\ude00\", \"active\": false, \"id\": -2.5e3, \"name\": \"Bob\" }\n"
+        + "{\"id\": 3, \"name\": \"Eve\"}\n");
+
+    try (MappedRowFile jsonLines = MappedRowFile.jsonLines(file)) {
+      MappedRowFile.Cursor cursor = jsonLines.cursor();
+      List<Map<String, String>> expected = List.of(
+          row("id", "1", "name", "Al\"ice\n", "active", "true", "note", null),
+          row("note", "été 😀", "active", "false", "id", "-2.5e3", "name", "Bob"),
+          row("id", "3", "name", "Eve"));
+      for (Map<String, String> row : expected) {
+        assertTrue(cursor.next());
+        assertEquals(row, cursor.row());
+        byte[] hash = new byte[RowHasher.HASH_LENGTH];
+        cursor.hash(new RowHasher(), hash, 0);
+        assertArrayEquals(hash(row), hash);
+      }
+      assertFalse(cursor.next());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void csvCursor_whenRowHasMissingFields_shouldThrow() throws IOException {
+    try (MappedRowFile csv = MappedRowFile.csv(file("id,name\n1\n"))) {
+      csv.cursor().next();
+    }
+  }
+
+  @Test
+  public void validate_whenCsvAndJsonLinesExportTheSameTable_shouldPass() throws IOException {
+    try (MappedRowFile csv = MappedRowFile.csv(csv(1000, -1));
+        MappedRowFile jsonLines = MappedRowFile.jsonLines(jsonLines(1000))) {
+      ValidationResult result = DBCheckPoint.validate(csv, jsonLines);
+
+      assertTrue(result.isPassed());
+      assertEquals(1000, result.rowOffset());
+    }
+  }
+
+  @Test
+  public void cursor_whenWindowIsSmallerThanTheFile_shouldMoveItAcrossLines() throws IOException {
+    Path file = csv(500, -1);
+    try (MappedRowFile whole = MappedRowFile.csv(file);
+        MappedRowFile windowed = new CsvRowFile(file, 64)) {
+      List<byte[]> expected = hashes(whole.cursor());
+      List<byte[]> actual = hashes(windowed.cursor());
+
+      assertEquals(500, expected.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertArrayEquals(expected.get(i), actual.get(i));
+      }
+      assertEquals(500, windowed.countRows(windowed.dataStart(), windowed.size()));
+    }
+  }
+
+  @Test
+  public void split_whenFileHasManyRows_shouldStartRangesAtLinesAndCoverEveryRow() throws IOException {
+    try (MappedRowFile csv = MappedRowFile.csv(csv(1000, -1))) {
+      long[] bounds = csv.split(7);
+      List<byte[]> expected = hashes(csv.cursor());
+
+      assertEquals(8, bounds.length);
+      List<byte[]> actual = new ArrayList<>();
+      long rows = 0;
+      for (int i = 0; i + 1 < bounds.length; i++) {
+        actual.addAll(hashes(csv.cursor(bounds[i], bounds[i + 1])));
+        rows += csv.countRows(bounds[i], bounds[i + 1]);
+        assertEquals(bounds[i + 1], csv.skipRows(bounds[i], csv.countRows(bounds[i], bounds[i + 1])));
+      }
+      assertEquals(1000, rows);
+      for (int i = 0; i < expected.size(); i++) {
+        assertArrayEquals(expected.get(i), actual.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void validateParallel_whenFilesDiffer_shouldFindTheEarliestMismatch() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try (MappedRowFile original = MappedRowFile.csv(csv(5000, -1));
+        MappedRowFile changed = MappedRowFile.csv(csv(5000, 3210));
+        MappedRowFile shorter = MappedRowFile.csv(csv(4321, -1))) {
+      assertTrue(DBCheckPoint.validateParallel(original, original, pool).isPassed());
+
+      ValidationResult mismatch = DBCheckPoint.validateParallel(original, changed, pool);
+      assertEquals(ValidationResult.Status.ROW_MISMATCH, mismatch.status());
+      assertEquals(3210, mismatch.rowOffset());
+      assertEquals("customer changed, ltd", mismatch.migratedRow().get("name"));
+      assertEquals(mismatch, DBCheckPoint.validate(original, changed));
+
+      ValidationResult count = DBCheckPoint.validateParallel(original, shorter, pool);
+      assertEquals(ValidationResult.Status.ROW_COUNT_MISMATCH, count.status());
+      assertEquals(4321, count.rowOffset());
+      assertEquals(count, DBCheckPoint.validate(shorter, original));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  // Throughput on a generated export of about 100 MB, against reading it into maps line by line
+  @Test
+  @Category(Benchmark.class)
+  public void validate_whenFileIsLarge_shouldReportThroughputAgainstLinesToMaps() throws IOException {
+    int rows = 1_000_000;
+    Path file = temporaryFolder.newFile().toPath();
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      out.write("id,name,email,balance,created\n");
+      for (int i = 0; i < rows; i++) {
+        out.write(i + ",customer " + i + ",customer" + i + "@example.com," + i * 31 % 100_000 + ".25,2024-01-"
+            + (10 + i % 20) + "T10:15:30Z\n");
+      }
+    }
+    double megabytes = Files.size(file) / 1e6;
+
+    try (MappedRowFile original = MappedRowFile.csv(file); MappedRowFile migrated = MappedRowFile.csv(file)) {
+      for (int round = 0; round < 2; round++) {
+        long start = System.nanoTime();
+        assertEquals(rows, original.countRows(original.dataStart(), original.size()));
+        double scan = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        assertTrue(DBCheckPoint.validate(original, migrated).isPassed());
+        double mapped = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        assertTrue(DBCheckPoint.validateParallel(original, migrated, ForkJoinPool.commonPool()).isPassed());
+        double parallel = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        try (var originalLines = Files.lines(file).skip(1); var migratedLines = Files.lines(file).skip(1)) {
+          String[] header = {"id", "name", "email", "balance", "created"};
+          assertTrue(DBCheckPoint.validate(originalLines.map(line -> toRow(header, line)).iterator(),
+              migratedLines.map(line -> toRow(header, line)).iterator()).isPassed());
+        }
+        double maps = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%.0f MB, %d rows: line scan %.0f MB/s, mapped %.0f MB/s, mapped parallel (%d threads)"
+                + " %.0f MB/s, lines to maps %.0f MB/s%n", megabytes, rows, megabytes / scan, 2 * megabytes / mapped,
+            ForkJoinPool.commonPool().getParallelism(), 2 * megabytes / parallel, 2 * megabytes / maps);
+      }
+    }
+  }
+
+  private static Map<String, String> toRow(String[] header, String line) {
+    String[] values = line.split(",", -1);
+    Map<String, String> row = new LinkedHashMap<>();
+    for (int i = 0; i < header.length; i++) {
+      row.put(header[i], values[i]);
+    }
+    return row;
+  }
+}
@@ -0,0 +1,159 @@
+package org.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MerkleTreeTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  // Rows by key, kept sorted like an index on the key column
+  private static TreeMap<String, Map<String, String>> table(int rows) {
+    TreeMap<String, Map<String, String>> table = new TreeMap<>();
+    for (int i = 0; i < rows; i++) {
+      put(table, i, "customer-" + i);
+    }
+    return table;
+  }
+
+  private static void put(TreeMap<String, Map<String, String>> table, int id, String name) {
+    String key = String.format("%09d", id);
+    table.put(key, Map.of("id", key, "name", name, "balance", Integer.toString(id * 31 % 1000)));
+  }
+
+  private static MerkleTree tree(TreeMap<String, Map<String, String>> table) {
+    return MerkleTree.build(table.values().iterator(), "id");
+  }
+
+  private static Iterator<Map<String, String>> rowsIn(TreeMap<String, Map<String, String>> table, KeyRange range) {
+    if (range.fromKey() == null && range.toKey() == null) {
+      return table.values().iterator();
+    }
+    if (range.fromKey() == null) {
+      return table.headMap(range.toKey(), true).values().iterator();
+    }
+    if (range.toKey() == null) {
+      return table.tailMap(range.fromKey(), true).values().iterator();
+    }
+    return table.subMap(range.fromKey(), true, range.toKey(), true).values().iterator();
+  }
+
+  @Test
+  public void testDiff_whenTablesMatch_ShouldFindNothing() {
+    MerkleTree original = tree(table(50_000));
+    MerkleTree migrated = tree(table(50_000));
+    assertArrayEquals(original.rootHash(), migrated.rootHash());
+    assertEquals(50_000, original.rowCount());
+    assertTrue(original.leafCount() > 10);
+    assertTrue(MerkleTree.diff(original, migrated).isEmpty());
+  }
+
+  @Test
+  public void testDiff_shouldNarrowChangesDownToTheirBlocks() {
+    TreeMap<String, Map<String, String>> original = table(200_000);
+    TreeMap<String, Map<String, String>> migrated = table(200_000);
+    put(migrated, 12_345, "changed");
+    migrated.remove(String.format("%09d", 150_000));
+    put(migrated, 250_000, "extra at the end");
+    migrated.put("000100000x", Map.of("id", "000100000x", "name", "inserted"));
+
+    MerkleTree originalTree = tree(original);
+    List<KeyRange> ranges = MerkleTree.diff(originalTree, tree(migrated));
+
+    assertEquals(4, ranges.size());
+    for (String key : new String[] {"000012345", "000150000", "000250000", "000100000x"}) {
+      assertTrue(key, ranges.stream().anyMatch(range -> range.contains(key)));
+    }
+    // Each range is about one block of rows, not the table
+    long rowsToRecheck = ranges.stream().mapToLong(range -> original.subMap(range.fromKey(), true, range.toKey(), true).size()).sum();
+    assertTrue("Rows in differing ranges: " + rowsToRecheck, rowsToRecheck < 10 * 200_000 / originalTree.leafCount());
+  }
+
+  @Test
+  public void testDiff_againstEmptyTable_ShouldCoverEverything() {
+    MerkleTree empty = tree(new TreeMap<>());
+    MerkleTree full = tree(table(5_000));
+    assertEquals(0, empty.rowCount());
+    assertEquals(List.of(new KeyRange("000000000", "000004999")), MerkleTree.diff(empty, full));
+    assertEquals(List.of(new KeyRange("000000000", "000004999")), MerkleTree.diff(full, empty));
+  }
+
+  @Test
+  public void testSaveAndLoad_shouldKeepTheTree() throws IOException {
+    TreeMap<String, Map<String, String>> table = table(30_000);
+    MerkleTree tree = tree(table);
+    Path file = temporaryFolder.newFile("customers.merkle").toPath();
+    tree.save(file);
+
+    MerkleTree loaded = MerkleTree.load(file);
+    Path same = temporaryFolder.newFile("copy.merkle").toPath();
+    DBCheckPoint.checkpoint(table.values().iterator(), "id", same);
+    assertTrue(DBCheckPoint.findMismatchedRanges(file, same).isEmpty());
+    assertArrayEquals(tree.rootHash(), loaded.rootHash());
+    assertEquals(tree.rowCount(), loaded.rowCount());
+    assertEquals("id", loaded.keyColumn());
+    put(table, 777, "changed after the checkpoint");
+    List<KeyRange> ranges = MerkleTree.diff(loaded, tree(table));
+    assertEquals(1, ranges.size());
+    assertTrue(ranges.get(0).contains("000000777"));
+  }
+
+  @Test
+  public void testUpdate_afterIncrementalSync_ShouldOnlyReadChangedBlocks() {
+    TreeMap<String, Map<String, String>> table = table(300_000);
+    MerkleTree checkpoint = tree(table);
+
+    // A small sync: an update, a delete of a block's closing row, and two inserts
+    TreeMap<String, Map<String, String>> synced = new TreeMap<>(table);
+    put(synced, 42, "updated");
+    String closing = null;
+    for (String key : table.keySet()) {
+      if (key.compareTo("000200000") > 0 && MerkleTree.boundaryLevel(key) >= 0) {
+        closing = key;
+        break;
+      }
+    }
+    synced.remove(closing);
+    put(synced, 400_000, "new");
+    synced.put("000000042a", Map.of("id", "000000042a", "name", "new"));
+    List<KeyRange> changed = List.of(new KeyRange("000000042", "000000042a"), new KeyRange(closing, closing),
+        new KeyRange("000400000", "000400000"));
+
+    AtomicLong rowsRead = new AtomicLong();
+    MerkleTree updated = checkpoint.update(changed, range -> {
+      List<Map<String, String>> rows = new ArrayList<>();
+      rowsIn(synced, range).forEachRemaining(rows::add);
+      rowsRead.addAndGet(rows.size());
+      return rows.iterator();
+    });
+
+    assertArrayEquals(tree(synced).rootHash(), updated.rootHash());
+    assertEquals(synced.size(), updated.rowCount());
+    assertTrue("Rows read: " + rowsRead.get(), rowsRead.get() < 20 * 300_000 / checkpoint.leafCount());
+  }
+
+  @Test
+  public void testBuild_whenRowsAreNotSorted_ShouldFail() {
+    try {
+      MerkleTree.build(List.of(Map.of("id", "2"), Map.of("id", "1")).iterator(), "id");
+      Assert.fail("Expected IllegalArgumentException for unsorted rows");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Rows are not in id order at 1", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,356 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class RateLimitAlgorithmTest {
+
+  private static final RateLimitTier TIER = RateLimitTier.DEFAULT; // 15 calls per minute
+
+  @Test
+  public void everyAlgorithm_whenBurstReachesLimit_shouldRejectNextCall() {
+    assertBurstOfFifteen(new SlidingLogAlgorithm());
+    assertBurstOfFifteen(new TokenBucketAlgorithm());
+    assertBurstOfFifteen(new GcraAlgorithm());
+    assertBurstOfFifteen(new SlidingWindowCounterAlgorithm());
+  }
+
+  @Test
+  public void slidingLog_whenOldestCallLeavesWindow_shouldAdmitAgain() {
+    SlidingLogAlgorithm algorithm = new SlidingLogAlgorithm();
+    SlidingLogAlgorithm.State state = algorithm.newState("ClientA", TIER, 0);
+    for (int i = 0; i < 15; i++) {
+      assertTrue(algorithm.tryAcquire(state, TIER, ms(i * 1000L), 1));
+    }
+
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(60_000), 1)); // call at 0 is exactly one minute old
+    assertTrue(algorithm.tryAcquire(state, TIER, ms(60_001), 1));
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(60_001), 1));
+  }
+
+  @Test
+  public void slidingLog_whenNanoTimeWraps_shouldStillExpireOldCalls() {
+    SlidingLogAlgorithm algorithm = new SlidingLogAlgorithm();
+    long start = Long.MAX_VALUE;
+    SlidingLogAlgorithm.State state = algorithm.newState("ClientA", TIER, start);
+    assertTrue(algorithm.tryAcquire(state, TIER, start, 15));
+
+    assertFalse(algorithm.tryAcquire(state, TIER, start + ms(60_000), 1));
+    assertTrue(algorithm.tryAcquire(state, TIER, start + ms(60_001), 15));
+  }
+
+  @Test
+  public void everyAlgorithm_whenPermitsAreHuge_shouldRejectWithoutCorruptingState() {
+    for (RateLimitAlgorithm<?> algorithm : new RateLimitAlgorithm<?>[] {new SlidingLogAlgorithm(),
+        new TokenBucketAlgorithm(), new GcraAlgorithm(), new SlidingWindowCounterAlgorithm()}) {
+      ManualTimeSource clock = new ManualTimeSource();
+      ApiRateLimiter limiter = ApiRateLimiter.builder().algorithm(algorithm).timeSource(clock).build();
+      assertEquals(RateLimitResult.ALLOWED, limiter.tryAcquire("ClientA", 1));
+
+      assertEquals(RateLimitResult.RATE_LIMITED, limiter.tryAcquire("ClientA", Integer.MAX_VALUE));
+      clock.advance(TIER.penalty());
+      assertEquals(RateLimitResult.ALLOWED, limiter.tryAcquire("ClientA", 1));
+    }
+  }
+
+  @Test
+  public void tokenBucket_shouldRefillOneTokenPerEmissionInterval() {
+    TokenBucketAlgorithm algorithm = new TokenBucketAlgorithm();
+    TokenBucketAlgorithm.State state = algorithm.newState("ClientA", TIER, 0);
+    assertTrue(algorithm.tryAcquire(state, TIER, 0, 15));
+
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(3_999), 1));
+    assertTrue(algorithm.tryAcquire(state, TIER, ms(4_000), 1));
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(4_000), 1));
+    assertTrue(algorithm.tryAcquire(state, TIER, ms(60_000), 14)); // never more than a full bucket
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(60_000), 1));
+  }
+
+  @Test
+  public void gcra_shouldAdmitOneCallPerEmissionIntervalAfterBurst() {
+    GcraAlgorithm algorithm = new GcraAlgorithm();
+    GcraAlgorithm.State state = algorithm.newState("ClientA", TIER, 0);
+    assertTrue(algorithm.tryAcquire(state, TIER, 0, 15));
+
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(3_999), 1));
+    assertTrue(algorithm.tryAcquire(state, TIER, ms(4_000), 1));
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(4_000), 1));
+  }
+
+  @Test
+  public void slidingWindowCounter_shouldWeightPreviousWindowByOverlap() {
+    SlidingWindowCounterAlgorithm algorithm = new SlidingWindowCounterAlgorithm();
+    SlidingWindowCounterAlgorithm.State state = algorithm.newState("ClientA", TIER, 0);
+    assertTrue(algorithm.tryAcquire(state, TIER, 0, 15));
+
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(60_000), 1)); // previous window still fully weighted
+    assertTrue(algorithm.tryAcquire(state, TIER, ms(90_000), 7)); // half of it left: 7.5 + 7
+    assertFalse(algorithm.tryAcquire(state, TIER, ms(90_000), 1));
+    assertTrue(algorithm.tryAcquire(state, TIER, ms(180_000), 15)); // two windows later nothing carries over
+  }
+
+  @Test
+  public void gcra_withLargeLimit_shouldKeepConstantState() {
+    RateLimitTier tier = new RateLimitTier(6000, Duration.ofMinutes(1), Duration.ZERO);
+    GcraAlgorithm algorithm = new GcraAlgorithm();
+    GcraAlgorithm.State state = algorithm.newState("ClientA", tier, 0);
+
+    int admitted = 0;
+    for (long now = 0; now < 120_000; now++) {
+      if (algorithm.tryAcquire(state, tier, ms(now), 1)) {
+        admitted++;
+      }
+    }
+    // Burst of 6000, then one call every 10 ms for the rest of the two minutes
+    assertEquals(6000 + 12_000 - 1, admitted, 1);
+  }
+
+  @Test
+  public void gcra_whenWindowDoesNotDivideByLimit_shouldRoundIntervalUp() {
+    RateLimitTier tier = new RateLimitTier(3, Duration.ofNanos(10), Duration.ZERO); // 3.33 ns apart
+    GcraAlgorithm algorithm = new GcraAlgorithm();
+    GcraAlgorithm.State state = algorithm.newState("ClientA", tier, 0);
+    assertTrue(algorithm.tryAcquire(state, tier, 0, 3));
+    assertFalse(algorithm.tryAcquire(state, tier, 0, 1));
+
+    assertFalse(algorithm.tryAcquire(state, tier, 3, 1));
+    assertTrue(algorithm.tryAcquire(state, tier, 4, 1));
+    assertFalse(algorithm.tryAcquire(state, tier, 7, 1));
+    assertTrue(algorithm.tryAcquire(state, tier, 8, 1));
+  }
+
+  @Test
+  public void gcra_whenLimitExceedsWindowInNanos_shouldStillLimit() {
+    RateLimitTier tier = new RateLimitTier(1000, Duration.ofNanos(10), Duration.ZERO);
+    GcraAlgorithm algorithm = new GcraAlgorithm();
+    GcraAlgorithm.State state = algorithm.newState("ClientA", tier, 0);
+    assertEquals(1, tier.emissionIntervalNanos());
+    assertTrue(algorithm.tryAcquire(state, tier, 0, 1000));
+
+    assertFalse(algorithm.tryAcquire(state, tier, 0, 1));
+    assertTrue(algorithm.tryAcquire(state, tier, 1, 1));
+  }
+
+  @Test
+  public void limiter_shouldApplyTierPerClient() {
+    RateLimitTier free = new RateLimitTier(5, Duration.ofMinutes(1), Duration.ofMinutes(5));
+    RateLimitTier premium = new RateLimitTier(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    ApiRateLimiter limiter = ApiRateLimiter.builder()
+        .timeSource(new ManualTimeSource())
+        .algorithm(new GcraAlgorithm())
+        .tiers(clientId -> clientId.startsWith("premium-") ? premium : free)
+        .build();
+
+    for (int i = 0; i < 100; i++) {
+      limiter.safeCall("premium-A", "Call");
+    }
+    for (int i = 0; i < 5; i++) {
+      limiter.safeCall("free-B", "Call");
+    }
+    try {
+      limiter.safeCall("free-B", "Call");
+      org.junit.Assert.fail("Expected IllegalStateException for exceeding rate limit");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Rate limit exceeded for client free-B. Penalty applied for 5 minutes."));
+    }
+  }
+
+  @Test
+  public void leased_whenNodesShareStore_shouldEnforceOneLimitAcrossNodes() {
+    ManualTimeSource clock = new ManualTimeSource();
+    InMemoryRateLimitStore store = new InMemoryRateLimitStore(clock);
+    ApiRateLimiter[] nodes = new ApiRateLimiter[3];
+    LeasedRateLimitAlgorithm[] algorithms = new LeasedRateLimitAlgorithm[nodes.length];
+    for (int n = 0; n < nodes.length; n++) {
+      algorithms[n] = new LeasedRateLimitAlgorithm(store, 5, Duration.ofSeconds(1));
+      nodes[n] = ApiRateLimiter.builder().algorithm(algorithms[n]).timeSource(clock).build();
+    }
+
+    // Each node leases a block of 5, all 15 calls are admitted in three round trips
+    for (int i = 0; i < 15; i++) {
+      assertEquals(RateLimitResult.ALLOWED, nodes[i % nodes.length].tryAcquire("ClientA", 1));
+    }
+    assertEquals(3, store.getRoundTripCount());
+    assertEquals(RateLimitResult.RATE_LIMITED, nodes[0].tryAcquire("ClientA", 1));
+    assertEquals(RateLimitResult.PENALIZED, nodes[0].tryAcquire("ClientA", 1));
+  }
+
+  @Test
+  public void leased_whenLeaseExpires_shouldReturnUnusedPermitsOnReconcile() {
+    ManualTimeSource clock = new ManualTimeSource();
+    InMemoryRateLimitStore store = new InMemoryRateLimitStore(clock);
+    LeasedRateLimitAlgorithm idleNode = new LeasedRateLimitAlgorithm(store, 10, Duration.ofSeconds(1));
+    LeasedRateLimitAlgorithm busyNode = new LeasedRateLimitAlgorithm(store, 10, Duration.ofSeconds(1));
+    LeasedRateLimitAlgorithm.State idle = idleNode.newState("ClientA", TIER, 0);
+    LeasedRateLimitAlgorithm.State busy = busyNode.newState("ClientA", TIER, 0);
+
+    assertTrue(acquire(idleNode, idle, 0, 1)); // Leases 10, leaving 5 in the store
+    assertTrue(acquire(busyNode, busy, 0, 5));
+    assertFalse(acquire(busyNode, busy, 0, 1));
+
+    clock.advance(Duration.ofSeconds(1));
+    assertFalse(acquire(idleNode, idle, ms(1000), 10)); // Lease lapsed, 9 queued for release
+    idleNode.reconcile();
+    assertTrue(acquire(busyNode, busy, ms(1000), 9));
+  }
+
+  @Test
+  public void leased_whenStoreGrantsTooFewPermits_shouldHandThemBack() {
+    ManualTimeSource clock = new ManualTimeSource();
+    InMemoryRateLimitStore store = new InMemoryRateLimitStore(clock);
+    LeasedRateLimitAlgorithm first = new LeasedRateLimitAlgorithm(store, 5, Duration.ofSeconds(1));
+    LeasedRateLimitAlgorithm second = new LeasedRateLimitAlgorithm(store, 5, Duration.ofSeconds(1));
+    LeasedRateLimitAlgorithm.State greedy = first.newState("ClientA", TIER, 0);
+    LeasedRateLimitAlgorithm.State modest = second.newState("ClientA", TIER, 0);
+
+    assertFalse(acquire(first, greedy, 0, 20)); // Granted 15 of 20, all 15 go back to the store
+    assertTrue(acquire(second, modest, 0, 15));
+  }
+
+  @Test
+  public void leased_whenStoreIsSlow_shouldNotHoldTheGlobalLock() throws Exception {
+    CountDownLatch inStore = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    InMemoryRateLimitStore backend = new InMemoryRateLimitStore(System::nanoTime);
+    RateLimitStore store = new RateLimitStore() {
+      @Override
+      public int acquire(String clientId, RateLimitTier tier, int permits) {
+        if (clientId.equals("Slow")) {
+          inStore.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return backend.acquire(clientId, tier, permits);
+      }
+
+      @Override
+      public void release(Map<String, Integer> unusedPermits) {
+        backend.release(unusedPermits);
+      }
+    };
+    ApiRateLimiter limiter = ApiRateLimiter.builder().mode(ApiRateLimiter.Mode.SYNCHRONIZED)
+        .algorithm(new LeasedRateLimitAlgorithm(store, 5, Duration.ofSeconds(10))).build();
+
+    CompletableFuture<RateLimitResult> slow = CompletableFuture.supplyAsync(() -> limiter.tryAcquire("Slow", 1));
+    assertTrue(inStore.await(5, TimeUnit.SECONDS));
+    try {
+      assertEquals(RateLimitResult.ALLOWED, CompletableFuture.supplyAsync(() -> limiter.tryAcquire("Fast", 1))
+          .get(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+    }
+    assertEquals(RateLimitResult.ALLOWED, slow.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void leased_whenClientIsEvicted_shouldReturnItsLeaseToTheStore() {
+    ManualTimeSource clock = new ManualTimeSource();
+    InMemoryRateLimitStore store = new InMemoryRateLimitStore(clock);
+    ApiRateLimiter node = ApiRateLimiter.builder()
+        .algorithm(new LeasedRateLimitAlgorithm(store, 10, Duration.ofSeconds(1))).timeSource(clock).build();
+    LeasedRateLimitAlgorithm other = new LeasedRateLimitAlgorithm(store, 10, Duration.ofSeconds(1));
+    LeasedRateLimitAlgorithm.State state = other.newState("ClientA", TIER, 0);
+
+    assertEquals(RateLimitResult.ALLOWED, node.tryAcquire("ClientA", 1)); // Leases 10, leaving 5 in the store
+    clock.advance(Duration.ofMillis(1001));
+    assertEquals(1, node.evictIdleClients());
+
+    assertTrue(acquire(other, state, clock.nanoTime(), 14));
+  }
+
+  @Test
+  public void leased_whenReconcileIsDue_shouldReturnSweptLeasesWithoutAnEvictionPass() {
+    ManualTimeSource clock = new ManualTimeSource();
+    InMemoryRateLimitStore store = new InMemoryRateLimitStore(clock);
+    ApiRateLimiter node = ApiRateLimiter.builder().algorithm(new LeasedRateLimitAlgorithm(store, 10, Duration.ofSeconds(1)))
+        .timeSource(clock).reconcileInterval(Duration.ofSeconds(1)).build();
+    LeasedRateLimitAlgorithm other = new LeasedRateLimitAlgorithm(store, 10, Duration.ofSeconds(1));
+    LeasedRateLimitAlgorithm.State state = other.newState("ClientA", TIER, 0);
+
+    assertEquals(RateLimitResult.ALLOWED, node.tryAcquire("ClientA", 1)); // Leases 10, leaving 5 in the store
+    clock.advance(Duration.ofMillis(1001));
+    assertEquals(RateLimitResult.ALLOWED, node.tryAcquire("ClientB", 1)); // Sweeps ClientA, then reconciles
+
+    assertEquals(1, node.getEvictedClientCount());
+    assertTrue(acquire(other, state, clock.nanoTime(), 14));
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void leased_whenLeaseSizeGrows_shouldReportRoundTripsAgainstAccuracy() {
+    // Four nodes share one client limited to 600 calls/minute (10/s) for 10 simulated minutes
+    RateLimitTier tier = new RateLimitTier(600, Duration.ofMinutes(1), Duration.ZERO);
+    System.out.println("offered/s  lease  round-trips/call  admitted  ideal  error");
+    for (int offeredPerSecond : new int[] {5, 20}) {
+      for (int leaseSize : new int[] {1, 5, 10, 25, 50, 100}) {
+        simulateLeasedNodes(tier, 4, offeredPerSecond, 600, leaseSize);
+      }
+    }
+  }
+
+  private static void simulateLeasedNodes(RateLimitTier tier, int nodeCount, int offeredPerSecond, int seconds, int leaseSize) {
+    ManualTimeSource clock = new ManualTimeSource();
+    InMemoryRateLimitStore store = new InMemoryRateLimitStore(clock);
+    LeasedRateLimitAlgorithm[] algorithms = new LeasedRateLimitAlgorithm[nodeCount];
+    ApiRateLimiter[] nodes = new ApiRateLimiter[nodeCount];
+    for (int n = 0; n < nodeCount; n++) {
+      algorithms[n] = new LeasedRateLimitAlgorithm(store, leaseSize, Duration.ofSeconds(10));
+      nodes[n] = ApiRateLimiter.builder().algorithm(algorithms[n]).tier(tier).timeSource(clock).build();
+    }
+
+    long calls = 0;
+    long admitted = 0;
+    for (int second = 0; second < seconds; second++) {
+      for (int i = 0; i < offeredPerSecond; i++) {
+        if (nodes[(int) (calls++ % nodeCount)].tryAcquire("ClientA", 1).isAllowed()) {
+          admitted++;
+        }
+        clock.advanceNanos(1_000_000_000L / offeredPerSecond);
+      }
+      if (second % 5 == 4) {
+        for (LeasedRateLimitAlgorithm algorithm : algorithms) {
+          algorithm.reconcile();
+        }
+      }
+    }
+
+    // What a single exact token bucket would admit: the initial burst plus the refill until the last call
+    long ideal = Math.min(calls, tier.maxCalls() + tier.maxCalls() * (calls - 1) / (60L * offeredPerSecond));
+    assertTrue("Admitted " + admitted + " of at most " + ideal, admitted <= ideal);
+    System.out.printf("%9d  %5d  %16.4f  %8d  %5d  %5.1f%%%n", offeredPerSecond, leaseSize,
+        (double) store.getRoundTripCount() / calls, admitted, ideal, 100.0 * (ideal - admitted) / ideal);
+  }
+
+  private static boolean acquire(LeasedRateLimitAlgorithm algorithm, LeasedRateLimitAlgorithm.State state, long now,
+      int permits) {
+    algorithm.prepare(state, TIER, now, permits);
+    return algorithm.tryAcquire(state, TIER, now, permits);
+  }
+
+  private static long ms(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static <S> void assertBurstOfFifteen(RateLimitAlgorithm<S> algorithm) {
+    S state = algorithm.newState("ClientA", TIER, 0);
+    for (int i = 0; i < 15; i++) {
+      assertTrue(algorithm.getClass().getSimpleName(), algorithm.tryAcquire(state, TIER, 0, 1));
+    }
+    assertFalse(algorithm.getClass().getSimpleName(), algorithm.tryAcquire(state, TIER, 0, 1));
+
+    algorithm.reset(state, TIER, 0);
+    assertTrue(algorithm.getClass().getSimpleName(), algorithm.tryAcquire(state, TIER, 0, 15));
+  }
+}
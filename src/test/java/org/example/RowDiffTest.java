@@ -0,0 +1,178 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RowDiffTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static List<Map<String, String>> rows(int count) {
+    List<Map<String, String>> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rows.add(row(i, "customer-" + i, Integer.toString(i * 31 % 1000)));
+    }
+    return rows;
+  }
+
+  private static Map<String, String> row(int id, String name, String balance) {
+    Map<String, String> row = new HashMap<>();
+    row.put("id", String.format("%06d", id));
+    row.put("name", name);
+    row.put("balance", balance);
+    return row;
+  }
+
+  private static List<Map<String, String>> shuffled(List<Map<String, String>> rows) {
+    List<Map<String, String>> copy = new ArrayList<>(rows);
+    Collections.shuffle(copy, new Random(42));
+    return copy;
+  }
+
+  // Migrated copy of rows(count) with row 10 dropped, row 20 renamed, row 30 renamed and rebalanced and one row added
+  private static List<Map<String, String>> migrated(int count) {
+    List<Map<String, String>> rows = rows(count);
+    rows.set(30, row(30, "renamed", "1"));
+    rows.set(20, row(20, "renamed", rows.get(20).get("balance")));
+    rows.remove(10);
+    rows.add(row(count, "new", "0"));
+    return rows;
+  }
+
+  private static void assertDifferences(DiffReport report, int count, String lines, String expected) {
+    assertEquals(count - 3, report.getMatchingRows());
+    assertEquals(1, report.getMissingRows());
+    assertEquals(1, report.getExtraRows());
+    assertEquals(2, report.getChangedRows());
+    assertFalse(report.isIdentical());
+    List<String> sorted = new ArrayList<>(List.of(lines.split("\n")));
+    Collections.sort(sorted);
+    assertEquals(expected, String.join("\n", sorted));
+  }
+
+  private static String expected(int count) {
+    return "CHANGED\t000020\tname\n"
+        + "CHANGED\t000030\tbalance,name\n"
+        + "EXTRA\t" + String.format("%06d", count) + "\n"
+        + "MISSING\t000010";
+  }
+
+  @Test
+  public void rowDiff_whenTablesAreReordered_shouldReportOnlyMatches() throws IOException {
+    Path spill = temporaryFolder.newFolder().toPath();
+    List<Map<String, String>> original = rows(5000);
+
+    DiffReport hashed = RowDiff.hashJoin(original.iterator(), shuffled(original).iterator(), "id",
+        new DiffReport(new StringWriter()), spill, 100_000);
+    DiffReport sorted = RowDiff.externalSortMerge(shuffled(original).iterator(), original.iterator(), "id",
+        new DiffReport(new StringWriter()), spill, 100_000);
+
+    assertTrue(hashed.isIdentical());
+    assertEquals(5000, hashed.getMatchingRows());
+    assertTrue(sorted.isIdentical());
+    assertEquals(5000, sorted.getMatchingRows());
+  }
+
+  @Test
+  public void sortMerge_whenRowsDiffer_shouldReportMissingExtraAndChangedColumns() {
+    StringWriter out = new StringWriter();
+    DiffReport report = RowDiff.sortMerge(rows(100).iterator(), migrated(100).iterator(), "id", new DiffReport(out));
+
+    assertDifferences(report, 100, out.toString(), expected(100));
+  }
+
+  @Test
+  public void sortMerge_whenEitherSideIsNotSortedByKey_shouldThrow() {
+    for (boolean originalUnsorted : new boolean[] {true, false}) {
+      List<Map<String, String>> unsorted = rows(100);
+      Collections.swap(unsorted, 40, 41);
+      try {
+        RowDiff.sortMerge((originalUnsorted ? unsorted : rows(100)).iterator(),
+            (originalUnsorted ? rows(100) : unsorted).iterator(), "id", new DiffReport(new StringWriter()));
+        fail();
+      } catch (IllegalArgumentException expected) {
+        assertTrue(expected.getMessage().contains("000040"));
+      }
+    }
+  }
+
+  @Test
+  public void hashJoin_whenInputIsUnordered_shouldReportEveryDifference() throws IOException {
+    StringWriter out = new StringWriter();
+    DiffReport report = RowDiff.hashJoin(shuffled(rows(100)).iterator(), shuffled(migrated(100)).iterator(), "id",
+        new DiffReport(out), temporaryFolder.newFolder().toPath(), 1000);
+
+    assertDifferences(report, 100, out.toString(), expected(100));
+  }
+
+  @Test
+  public void hashJoin_whenOriginalDoesNotFitInMemory_shouldSpillPartitions() throws IOException {
+    File spill = temporaryFolder.newFolder();
+    StringWriter out = new StringWriter();
+    // 20,000 rows through a 100-row table needs a second level of partitioning
+    DiffReport report = RowDiff.hashJoin(shuffled(rows(20_000)).iterator(), shuffled(migrated(20_000)).iterator(),
+        "id", new DiffReport(out), spill.toPath(), 100);
+
+    assertDifferences(report, 20_000, out.toString(), expected(20_000));
+    assertEquals(0, spill.list().length);
+  }
+
+  @Test
+  public void externalSortMerge_whenInputDoesNotFitInMemory_shouldSpillSortedRuns() throws IOException {
+    File spill = temporaryFolder.newFolder();
+    StringWriter out = new StringWriter();
+    DiffReport report = RowDiff.externalSortMerge(shuffled(rows(5000)).iterator(),
+        shuffled(migrated(5000)).iterator(), "id", new DiffReport(out), spill.toPath(), 250);
+
+    assertDifferences(report, 5000, out.toString(), expected(5000));
+    assertEquals(0, spill.list().length);
+  }
+
+  @Test
+  public void hashJoin_whenKeysRepeat_shouldReportThemAsMissingOrExtra() throws IOException {
+    List<Map<String, String>> original = rows(10);
+    original.add(row(3, "customer-3", "93"));
+    List<Map<String, String>> migrated = rows(10);
+    migrated.add(row(5, "customer-5", "155"));
+
+    DiffReport report = RowDiff.hashJoin(original.iterator(), migrated.iterator(), "id",
+        new DiffReport(new StringWriter()), temporaryFolder.newFolder().toPath(), 1000);
+
+    assertEquals(10, report.getMatchingRows());
+    assertEquals(1, report.getMissingRows());
+    assertEquals(1, report.getExtraRows());
+  }
+
+  @Test
+  public void diffReport_whenValuesContainSeparators_shouldEscapeThem() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("diff.tsv");
+    List<Map<String, String>> original = List.of(Map.of("id", "a\tb", "na,me", "x"), Map.of("id", "gone", "x", "1"));
+    List<Map<String, String>> migrated = List.of(Map.of("id", "a\tb", "na,me", "y"));
+
+    DiffReport report = DBCheckPoint.diffByKey(original.iterator(), migrated.iterator(), "id", file,
+        temporaryFolder.newFolder().toPath(), 1000);
+
+    assertEquals(1, report.getChangedRows());
+    List<String> lines = new ArrayList<>(Files.readAllLines(file));
+    Collections.sort(lines);
+    assertEquals(List.of("CHANGED\ta\\tb\tna\\,me", "MISSING\tgone"), lines);
+  }
+}
@@ -0,0 +1,150 @@
+package org.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class RowHasherTest {
+
+  private final RowHasher hasher = new RowHasher();
+
+  private byte[] hash(Map<String, String> row) {
+    byte[] out = new byte[RowHasher.HASH_LENGTH];
+    hasher.hash(row, out, 0);
+    return out;
+  }
+
+  @Test
+  public void testHash_shouldKeepFieldBoundaries() {
+    Assert.assertFalse(hasher.sameHash(Map.of("a", "ab", "b", "c"), Map.of("a", "a", "b", "bc")));
+    Assert.assertFalse(hasher.sameHash(Map.of("ab", "c"), Map.of("a", "bc")));
+    Assert.assertFalse(hasher.sameHash(Map.of("a", ""), Map.of("a", "", "", "")));
+
+    Map<String, String> nullValue = new HashMap<>();
+    nullValue.put("a", null);
+    Assert.assertFalse(hasher.sameHash(nullValue, Map.of("a", "")));
+    Assert.assertFalse(hasher.sameHash(nullValue, Map.of("b", "")));
+    assertTrue(hasher.sameHash(nullValue, new HashMap<>(nullValue)));
+  }
+
+  @Test
+  public void testHash_shouldNotDependOnColumnOrder() {
+    Map<String, String> row = new LinkedHashMap<>();
+    row.put("id", "1");
+    row.put("name", "Alice");
+    row.put("age", "30");
+    Map<String, String> reversed = new LinkedHashMap<>();
+    reversed.put("age", "30");
+    reversed.put("name", "Alice");
+    reversed.put("id", "1");
+    assertArrayEquals(hash(row), hash(reversed));
+  }
+
+  @Test
+  public void testHash_whenSchemaChanges_ShouldMatchAFreshHasher() {
+    List<Map<String, String>> rows = List.of(
+        Map.of("id", "1", "name", "Alice"),
+        Map.of("id", "1", "nick", "Alice"),
+        Map.of("id", "1", "name", "Alice", "age", "30"),
+        Map.of("id", "1"),
+        Map.of("id", "1", "name", "Alice"));
+    for (int round = 0; round < 3; round++) {
+      for (Map<String, String> row : rows) {
+        byte[] expected = new byte[RowHasher.HASH_LENGTH];
+        new RowHasher().hash(row, expected, 0);
+        assertArrayEquals(expected, hash(row));
+      }
+    }
+  }
+
+  @Test
+  public void testHash_shouldEncodeUtf8LikeTheJdk() {
+    for (String value : new String[] {"plain", "café", "€100", "😀 smile", "broken \ud83d end", ""}) {
+      byte[] fromMap = hash(Map.of("name", value));
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      hasher.addField("name", bytes, 0, bytes.length);
+      byte[] fromBytes = new byte[RowHasher.HASH_LENGTH];
+      hasher.finish(fromBytes, 0);
+      assertArrayEquals(value, fromBytes, fromMap);
+    }
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testHash_costPerRowComparedToStringHashing() {
+    List<Map<String, String>> rows = sampleRows(1024);
+    int rowCount = 1_000_000;
+    byte[] out = new byte[RowHasher.HASH_LENGTH];
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    int checksum = 0;
+    for (int i = 0; i < rowCount / 20; i++) { // warm-up
+      checksum += stringHash(rows.get(i & 1023)).length();
+      hasher.hash(rows.get(i & 1023), out, 0);
+    }
+
+    long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < rowCount / 20; i++) {
+      checksum += stringHash(rows.get(i & 1023)).length();
+    }
+    double stringNanos = (System.nanoTime() - start) / (rowCount / 20.0);
+    double stringBytes = (threads.getThreadAllocatedBytes(thread) - allocatedBefore) / (rowCount / 20.0);
+
+    allocatedBefore = threads.getThreadAllocatedBytes(thread);
+    start = System.nanoTime();
+    for (int i = 0; i < rowCount; i++) {
+      hasher.hash(rows.get(i & 1023), out, 0);
+      checksum += out[0];
+    }
+    double hasherNanos = (System.nanoTime() - start) / (double) rowCount;
+    long hasherAllocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+    System.out.printf("Row hashing before: %.0f ns/row, %.0f bytes/row; after: %.0f ns/row, %.3f bytes/row (%d)%n",
+        stringNanos, stringBytes, hasherNanos, (double) hasherAllocated / rowCount, checksum & 1);
+    assertTrue("Allocated " + hasherAllocated + " bytes over " + rowCount + " rows", hasherAllocated < 64 * 1024);
+  }
+
+  private static List<Map<String, String>> sampleRows(int count) {
+    List<Map<String, String>> rows = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      rows.add(new HashMap<>(Map.of("id", Integer.toString(i), "name", "customer-" + i, "email",
+          "customer" + i + "@example.com", "balance", Integer.toString(i * 37 % 10_000), "country", "DE")));
+    }
+    return rows;
+  }
+
+  // How DBCheckPoint hashed rows before RowHasher, kept as the baseline for the benchmark
+  private static String stringHash(Map<String, String> rowData) {
+    StringBuilder concatenatedValues = new StringBuilder();
+    rowData.keySet().stream().sorted().forEach(key -> {
+      concatenatedValues.append(key);
+      concatenatedValues.append(rowData.get(key));
+    });
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] hashBytes = md.digest(concatenatedValues.toString().getBytes());
+      StringBuilder sb = new StringBuilder();
+      for (byte b : hashBytes) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Hashing algorithm not found", e);
+    }
+  }
+}
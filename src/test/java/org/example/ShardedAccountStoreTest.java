@@ -0,0 +1,247 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class ShardedAccountStoreTest {
+
+  @Test
+  public void testTransfer_byIdAndByNumber() {
+    ShardedAccountStore store = new ShardedAccountStore(4, 10);
+    int a = store.addAccount("A", 1000);
+    store.addAccount("B", 500);
+
+    assertEquals(TransferResult.COMMITTED, store.transfer("A", "B", 200));
+    assertEquals(TransferResult.COMMITTED, store.transfer(store.numberOf("B"), a, 50));
+    assertEquals(TransferResult.INSUFFICIENT_FUNDS, store.transfer("A", "B", 851));
+    assertEquals(TransferResult.ACCOUNT_NOT_FOUND, store.transfer("A", "C", 1));
+    assertEquals(TransferResult.ACCOUNT_NOT_FOUND, store.transfer(a, 7, 1));
+    assertEquals(TransferResult.INVALID_AMOUNT, store.transfer("A", "B", 0));
+
+    assertEquals(850, store.getBalance("A"));
+    assertEquals(650, store.getBalance("B"));
+    assertEquals(1500, store.getTotalBalance());
+  }
+
+  @Test
+  public void testAddAccount_whenFullOrDuplicate_ShouldThrow() {
+    ShardedAccountStore store = new ShardedAccountStore(3, 2);
+    store.addAccount("A", 1);
+    try {
+      store.addAccount("A", 1);
+      Assert.fail("Expected IllegalArgumentException for a duplicate id");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Account already exists: A", e.getMessage());
+    }
+    store.addAccount(1);
+    try {
+      store.addAccount(1);
+      Assert.fail("Expected IllegalStateException when the store is full");
+    } catch (IllegalStateException e) {
+      assertEquals("Account store is full (2 accounts).", e.getMessage());
+    }
+    assertEquals(2, store.size());
+    try {
+      store.addAccount("B", 1);
+      Assert.fail("Expected IllegalStateException when the store is full");
+    } catch (IllegalStateException e) {
+      assertEquals(-1, store.numberOf("B"));
+    }
+  }
+
+  @Test
+  public void testAddAccount_whenThreadsRaceOnTheSameIds_ShouldNotCreateMoney() throws InterruptedException {
+    ShardedAccountStore store = new ShardedAccountStore(4, 8 * 100);
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100; i++) {
+          try {
+            store.addAccount("Acc" + i, 1_000);
+          } catch (IllegalArgumentException e) {
+            // Another thread added it first
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(100, store.size());
+    assertEquals(100 * 1_000L, store.getTotalBalance());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(1_000, store.getBalance("Acc" + i));
+    }
+  }
+
+  @Test
+  public void testHotAccount_creditsAreMergedOnReadAndDebit() {
+    ShardedAccountStore store = new ShardedAccountStore(2, 4);
+    int merchant = store.addAccount("M", 0);
+    int customer = store.addAccount("C", 1000);
+    store.makeHot(merchant);
+    assertTrue(store.isHot(merchant));
+    Assert.assertFalse(store.isHot(customer));
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(TransferResult.COMMITTED, store.transfer(customer, merchant, 30));
+    }
+    assertEquals(300, store.getBalance(merchant));
+    // The main balance of the hot account is empty, so this debit has to merge the sub-balances
+    assertEquals(TransferResult.COMMITTED, store.transfer(merchant, customer, 250));
+    assertEquals(TransferResult.INSUFFICIENT_FUNDS, store.transfer(merchant, customer, 51));
+    assertEquals(50, store.getBalance(merchant));
+    assertEquals(950, store.getBalance(customer));
+  }
+
+  @Test
+  public void testTransfer_whenManyThreadsPayHotAccounts_TotalMoneyShouldBeConserved() throws InterruptedException {
+    ShardedAccountStore store = new ShardedAccountStore(8, 1000);
+    for (int i = 0; i < 1000; i++) {
+      store.addAccount(1_000);
+    }
+    for (int i = 0; i < 4; i++) {
+      store.makeHot(i);
+    }
+
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 200_000; i++) {
+          // Half of the payments go to the hot accounts, which also pay out
+          int from = random.nextInt(1000);
+          int to = random.nextBoolean() ? random.nextInt(4) : random.nextInt(1000);
+          store.transfer(from, to, 1 + random.nextInt(100));
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(store.getBalance(i) >= 0);
+    }
+    assertEquals(1000 * 1_000L, store.getTotalBalance());
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testStore_shouldHoldMillionsOfAccounts() {
+    int accounts = 5_000_000;
+    ShardedAccountStore store = new ShardedAccountStore(16, accounts);
+    for (int i = 0; i < accounts; i++) {
+      store.addAccount(100);
+    }
+    Random random = new Random(5);
+    for (int i = 0; i < 2_000_000; i++) {
+      store.transfer(random.nextInt(accounts), random.nextInt(accounts), 1 + random.nextInt(150));
+    }
+    assertEquals(accounts, store.size());
+    assertEquals(accounts * 100L, store.getTotalBalance());
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testTransfer_throughputUnderZipfianSkew() throws InterruptedException {
+    int accountCount = 100_000;
+    int transfersPerThread = 500_000;
+    // Receivers follow a Zipf distribution (s = 1.1): the top account gets about a tenth of all credits
+    int[] receivers = zipfSamples(accountCount, 1.1, 1 << 20, new Random(3));
+    int[] senders = new Random(4).ints(1 << 20, 0, accountCount).toArray();
+    String[] names = new String[accountCount];
+    Map<String, Account> objects = new HashMap<>();
+    for (int i = 0; i < accountCount; i++) {
+      names[i] = "Acc" + i;
+      objects.put(names[i], new Account(names[i], 1_000_000_000L));
+    }
+    BankTransferSystem system = new BankTransferSystem(objects);
+    ShardedAccountStore cold = store(accountCount, 0);
+    ShardedAccountStore hot = store(accountCount, 16);
+
+    TransferCall[] calls = {
+        (from, to) -> system.transfer(names[from], names[to], 1),
+        (from, to) -> cold.transfer(from, to, 1),
+        (from, to) -> hot.transfer(from, to, 1)};
+    for (TransferCall call : calls) {
+      run(2, transfersPerThread, senders, receivers, call); // warm-up
+    }
+    System.out.println("Zipfian receivers, transfers/s: threads, Account objects, columnar, columnar + 16 hot accounts");
+    for (int threadCount : new int[] {1, 2, 4, 8}) {
+      System.out.printf("%d, %.0f, %.0f, %.0f%n", threadCount,
+          run(threadCount, transfersPerThread, senders, receivers, calls[0]),
+          run(threadCount, transfersPerThread, senders, receivers, calls[1]),
+          run(threadCount, transfersPerThread, senders, receivers, calls[2]));
+    }
+    assertEquals(accountCount * 1_000_000_000L, system.getTotalBalance());
+    assertEquals(accountCount * 1_000_000_000L, cold.getTotalBalance());
+    assertEquals(accountCount * 1_000_000_000L, hot.getTotalBalance());
+  }
+
+  private static ShardedAccountStore store(int accountCount, int hotAccounts) {
+    ShardedAccountStore store = new ShardedAccountStore(16, accountCount);
+    for (int i = 0; i < accountCount; i++) {
+      store.addAccount(1_000_000_000L);
+    }
+    for (int i = 0; i < hotAccounts; i++) {
+      store.makeHot(i); // Rank i of the Zipf distribution is account i
+    }
+    return store;
+  }
+
+  private interface TransferCall {
+    void transfer(int from, int to);
+  }
+
+  // senders and receivers hold a power of two samples; each thread starts at its own offset
+  private static double run(int threadCount, int transfersPerThread, int[] senders, int[] receivers,
+      TransferCall call) throws InterruptedException {
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      int offset = t * 104_729;
+      threads[t] = new Thread(() -> {
+        int mask = receivers.length - 1;
+        for (int i = 0; i < transfersPerThread; i++) {
+          call.transfer(senders[(offset + i) & mask], receivers[(offset + i) & mask]);
+        }
+      });
+    }
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return (double) threadCount * transfersPerThread * 1e9 / (System.nanoTime() - start);
+  }
+
+  // Account numbers drawn from a Zipf distribution over ranks 0..n-1
+  private static int[] zipfSamples(int n, double s, int count, Random random) {
+    double[] cumulative = new double[n];
+    double sum = 0;
+    for (int rank = 0; rank < n; rank++) {
+      sum += 1 / Math.pow(rank + 1, s);
+      cumulative[rank] = sum;
+    }
+    int[] samples = new int[count];
+    for (int i = 0; i < count; i++) {
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+      samples[i] = rank >= 0 ? rank : -rank - 1;
+    }
+    return samples;
+  }
+}
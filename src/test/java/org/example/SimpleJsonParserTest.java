@@ -2,6 +2,9 @@ package org.example;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import org.example.util.JsonToGenericObject;
 import org.junit.Assert;
 import org.junit.Test;
@@ -30,4 +33,33 @@ public class SimpleJsonParserTest {
     Object actual = SimpleJsonParser.parse(invalidJsonString);
   }
 
+  @Test
+  public void jsonParser_whenContainersAreEmpty_shouldAgreeWithTheByteParser() {
+    for (String json : new String[] {"{}", "[]", " { \n } ", "[ ]", "[[], {}, {\"a\": []}, [{}]]", "{\"a\": {}, \"b\": [ ]}"}) {
+      Object actual = SimpleJsonParser.parse(json);
+
+      Assert.assertEquals(json, SimpleJsonParser.parse(json.getBytes(StandardCharsets.UTF_8)), actual);
+    }
+    Assert.assertEquals(Map.of(), SimpleJsonParser.parse("{}"));
+    Assert.assertEquals(List.of(), SimpleJsonParser.parse("[]"));
+  }
+
+  @Test
+  public void jsonParser_whenContainerHasATrailingComma_shouldResponseError() {
+    for (String json : new String[] {"[1,]", "{\"a\": 1,}", "{,}", "[,]"}) {
+      try {
+        SimpleJsonParser.parse(json);
+        Assert.fail(json);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+      try {
+        SimpleJsonParser.parse(json.getBytes(StandardCharsets.UTF_8));
+        Assert.fail(json);
+      } catch (IllegalArgumentException expected) {
+        // Expected
+      }
+    }
+  }
+
 }
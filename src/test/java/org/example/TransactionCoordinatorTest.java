@@ -0,0 +1,354 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+public class TransactionCoordinatorTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ExecutorService executor;
+  private AccountShard shard1;
+  private AccountShard shard2;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+    shard1 = new AccountShard(Map.of("A", 1000L, "B", 500L));
+    shard2 = new AccountShard(Map.of("C", 200L, "D", 0L));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private TransactionCoordinator coordinator(DecisionLog decisionLog, Participant... participants) {
+    return new TransactionCoordinator(List.of(participants), decisionLog, executor, Duration.ofMillis(200));
+  }
+
+  @Test
+  public void testTransfer_acrossShards_ShouldCommitOnBoth() {
+    DecisionLog decisionLog = new DecisionLog();
+    TransactionCoordinator coordinator = coordinator(decisionLog, shard1, shard2);
+
+    assertEquals(TransferResult.COMMITTED, coordinator.transfer("A", "C", 300));
+    assertEquals(TransferResult.COMMITTED, coordinator.execute(List.of(
+        new Transfer("C", "D", 500), new Transfer("B", "A", 50))));
+
+    assertEquals(750, shard1.getAccount("A").getBalance());
+    assertEquals(450, shard1.getAccount("B").getBalance());
+    assertEquals(0, shard2.getAccount("C").getBalance());
+    assertEquals(500, shard2.getAccount("D").getBalance());
+    assertTrue(shard1.inDoubt().isEmpty());
+    assertTrue(shard2.inDoubt().isEmpty());
+    assertEquals(false, decisionLog.isCommitted(1)); // forgotten once applied everywhere
+  }
+
+  @Test
+  public void testTransfer_whenOneShardVotesNo_ShouldChangeNothing() throws InterruptedException {
+    TransactionCoordinator coordinator = coordinator(new DecisionLog(), shard1, shard2);
+
+    assertEquals(TransferResult.INSUFFICIENT_FUNDS, coordinator.execute(List.of(
+        new Transfer("A", "D", 100), new Transfer("C", "B", 201))));
+    assertEquals(TransferResult.ACCOUNT_NOT_FOUND, coordinator.transfer("A", "X", 1));
+    assertEquals(TransferResult.INVALID_AMOUNT, coordinator.transfer("A", "C", 0));
+
+    awaitNoReservations(shard1, "A");
+    assertEquals(1000, shard1.getAccount("A").getBalance());
+    assertEquals(0, shard2.getAccount("D").getBalance());
+    assertEquals(200, shard2.getAccount("C").getAvailableBalance());
+  }
+
+  @Test
+  public void testPrepare_shouldReserveWithoutChangingBalance() {
+    // Two transactions prepared on the same account cannot both spend its balance
+    assertTrue(shard1.prepare(101, Map.of("A", -700L, "B", 700L)));
+    assertEquals(false, shard1.prepare(102, Map.of("A", -700L, "B", 700L)));
+    assertEquals(1000, shard1.getAccount("A").getBalance());
+    assertEquals(300, shard1.getAccount("A").getAvailableBalance());
+    assertEquals(Set.of(101L), shard1.inDoubt());
+
+    shard1.abort(101);
+    assertEquals(1000, shard1.getAccount("A").getAvailableBalance());
+    assertTrue(shard1.prepare(103, Map.of("A", -700L, "B", 700L)));
+    shard1.commit(103);
+    assertEquals(300, shard1.getAccount("A").getBalance());
+    assertEquals(1200, shard1.getAccount("B").getBalance());
+  }
+
+  @Test
+  public void testTransfer_whenParticipantDoesNotVoteInTime_ShouldAbortEverywhere() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    Participant slow = new DelegatingParticipant(shard2) {
+      @Override
+      public boolean prepare(long transactionId, Map<String, Long> deltas) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.prepare(transactionId, deltas);
+      }
+    };
+    TransactionCoordinator coordinator = coordinator(new DecisionLog(), shard1, slow);
+
+    long start = System.nanoTime();
+    assertEquals(TransferResult.ROLLED_BACK, coordinator.transfer("C", "A", 100));
+    assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+
+    // The late yes vote is answered with an abort
+    release.countDown();
+    awaitNoReservations(shard2, "C");
+    assertEquals(200, shard2.getAccount("C").getBalance());
+    assertEquals(1000, shard1.getAccount("A").getBalance());
+  }
+
+  @Test
+  public void testTransfer_whenParticipantHangsOnCommit_ShouldReturnAndKeepTheDecision() {
+    CountDownLatch release = new CountDownLatch(1);
+    Participant hung = new DelegatingParticipant(shard2) {
+      @Override
+      public void commit(long transactionId) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.commit(transactionId);
+      }
+    };
+    DecisionLog decisionLog = new DecisionLog();
+    TransactionCoordinator coordinator = coordinator(decisionLog, shard1, hung);
+
+    long start = System.nanoTime();
+    assertEquals(TransferResult.COMMITTED, coordinator.transfer("A", "C", 100));
+    assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+    // Not acknowledged by shard 2, so recovery still needs the decision
+    assertTrue(decisionLog.isCommitted(1));
+    release.countDown();
+  }
+
+  @Test
+  public void testRecover_afterCoordinatorCrash_ShouldCommitLoggedAndAbortTheRest() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    // Shard 2 never hears the commit, as if the coordinator died right after logging it
+    Participant unreachable = new DelegatingParticipant(shard2) {
+      @Override
+      public void commit(long transactionId) {
+        throw new IllegalStateException("Connection lost");
+      }
+    };
+    try (DecisionLog decisionLog = DecisionLog.open(directory)) {
+      assertEquals(TransferResult.COMMITTED, coordinator(decisionLog, shard1, unreachable).transfer("C", "B", 150));
+    }
+    assertEquals(650, shard1.getAccount("B").getBalance());
+    assertEquals(50, shard2.getAccount("C").getAvailableBalance());
+    // And a transaction that was prepared but never decided
+    assertTrue(shard1.prepare(1000, Map.of("A", -400L, "B", 400L)));
+
+    try (DecisionLog decisionLog = DecisionLog.open(directory)) {
+      TransactionCoordinator restarted = coordinator(decisionLog, shard1, shard2);
+      assertTrue(decisionLog.isCommitted(1));
+      assertEquals(2, restarted.recover());
+      assertFalse(decisionLog.isCommitted(1));
+      assertEquals(0, restarted.recover());
+      assertEquals(TransferResult.COMMITTED, restarted.transfer("A", "D", 1));
+    }
+    assertEquals(999, shard1.getAccount("A").getBalance());
+    assertEquals(650, shard1.getAccount("B").getBalance());
+    assertEquals(50, shard2.getAccount("C").getBalance());
+    assertEquals(1, shard2.getAccount("D").getBalance());
+    assertEquals(999, shard1.getAccount("A").getAvailableBalance());
+  }
+
+  @Test
+  public void testTransfer_afterRestart_ShouldNotReuseAbortedTransactionIds() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    Queue<Long> prepared = new ConcurrentLinkedQueue<>();
+    Participant recording = new DelegatingParticipant(shard2) {
+      @Override
+      public boolean prepare(long transactionId, Map<String, Long> deltas) {
+        prepared.add(transactionId);
+        return super.prepare(transactionId, deltas);
+      }
+    };
+    try (DecisionLog decisionLog = DecisionLog.open(directory)) {
+      assertEquals(TransferResult.INSUFFICIENT_FUNDS, coordinator(decisionLog, shard1, recording).transfer("C", "A", 1000));
+    }
+
+    try (DecisionLog decisionLog = DecisionLog.open(directory)) {
+      assertEquals(TransferResult.COMMITTED, coordinator(decisionLog, shard1, recording).transfer("C", "A", 100));
+    }
+    assertEquals(2, prepared.size());
+    assertEquals(2, Set.copyOf(prepared).size());
+  }
+
+  @Test
+  public void testDecisionLog_whenManyCommitsAreForgotten_ShouldCompactAndKeepLiveState() throws IOException {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (DecisionLog decisionLog = DecisionLog.open(directory, 90)) {
+      decisionLog.reserve(1024);
+      decisionLog.commit(1);
+      for (long transactionId = 2; transactionId <= 500; transactionId++) {
+        decisionLog.commit(transactionId);
+        decisionLog.forget(transactionId);
+      }
+      assertTrue(Files.size(directory.resolve("decisions.log")) < 200);
+    }
+
+    try (DecisionLog decisionLog = DecisionLog.open(directory)) {
+      assertTrue(decisionLog.isCommitted(1));
+      assertFalse(decisionLog.isCommitted(500));
+      assertEquals(1024, decisionLog.highestTransactionId());
+    }
+  }
+
+  @Test
+  public void testTransfer_whenManyThreadsTransferAcrossShards_TotalMoneyShouldBeConserved()
+      throws InterruptedException {
+    List<AccountShard> shards = new ArrayList<>();
+    for (int s = 0; s < 4; s++) {
+      Map<String, Long> balances = new HashMap<>();
+      for (int i = 0; i < 8; i++) {
+        balances.put("S" + s + "-" + i, 1_000L);
+      }
+      shards.add(new AccountShard(balances));
+    }
+    TransactionCoordinator coordinator =
+        new TransactionCoordinator(shards, new DecisionLog(), executor, Duration.ofSeconds(5));
+
+    // Failures are asserted after the join, where JUnit sees them
+    Queue<TransferResult> unexpected = new ConcurrentLinkedQueue<>();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 2_000; i++) {
+          String from = "S" + random.nextInt(4) + "-" + random.nextInt(8);
+          String to = "S" + random.nextInt(4) + "-" + random.nextInt(8);
+          TransferResult result = coordinator.transfer(from, to, 1 + random.nextInt(300));
+          if (result != TransferResult.COMMITTED && result != TransferResult.INSUFFICIENT_FUNDS) {
+            unexpected.add(result);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(List.of(), new ArrayList<>(unexpected));
+
+    long total = 0;
+    for (AccountShard shard : shards) {
+      total += shard.getTotalBalance();
+      assertTrue(shard.inDoubt().isEmpty());
+      for (int i = 0; i < 8; i++) {
+        Account account = shard.getAccount("S" + shards.indexOf(shard) + "-" + i);
+        assertTrue(account.getBalance() >= 0);
+        assertEquals(account.getBalance(), account.getAvailableBalance());
+      }
+    }
+    assertEquals(4 * 8 * 1_000L, total);
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void testCommitLatency_asShardsAreAdded() {
+    Duration latency = Duration.ofMillis(2);
+    double singleShardMillis = 0;
+    for (int shardCount : new int[] {1, 2, 4, 8}) {
+      List<AccountShard> shards = new ArrayList<>();
+      for (int s = 0; s < shardCount; s++) {
+        shards.add(new AccountShard(Map.of("S" + s, 1_000_000L), latency));
+      }
+      TransactionCoordinator coordinator =
+          new TransactionCoordinator(shards, new DecisionLog(), executor, Duration.ofSeconds(5));
+      // Every transaction moves money around a ring that touches every shard
+      List<Transfer> ring = new ArrayList<>();
+      for (int s = 0; s < shardCount; s++) {
+        ring.add(new Transfer("S" + s, "S" + (s + 1) % shardCount, 1));
+      }
+
+      int transactions = 50;
+      long start = System.nanoTime();
+      for (int i = 0; i < transactions; i++) {
+        assertEquals(TransferResult.COMMITTED, coordinator.execute(ring));
+      }
+      double millis = (System.nanoTime() - start) / 1e6 / transactions;
+      if (shardCount == 1) {
+        singleShardMillis = millis;
+      }
+      System.out.printf("2PC with %d shards, %d ms per round trip: %.2f ms per commit%n",
+          shardCount, latency.toMillis(), millis);
+      // Votes and acknowledgements are gathered in parallel, so latency does not grow with the shard count
+      assertTrue(millis < 3 * singleShardMillis);
+    }
+  }
+
+  private static void awaitNoReservations(AccountShard shard, String accountId) throws InterruptedException {
+    Account account = shard.getAccount(accountId);
+    for (int i = 0; i < 1000 && account.getAvailableBalance() != account.getBalance(); i++) {
+      Thread.sleep(1);
+    }
+    assertEquals(account.getBalance(), account.getAvailableBalance());
+  }
+
+  private static class DelegatingParticipant implements Participant {
+    private final Participant delegate;
+
+    DelegatingParticipant(Participant delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasAccount(String accountId) {
+      return delegate.hasAccount(accountId);
+    }
+
+    @Override
+    public boolean prepare(long transactionId, Map<String, Long> deltas) {
+      return delegate.prepare(transactionId, deltas);
+    }
+
+    @Override
+    public void commit(long transactionId) {
+      delegate.commit(transactionId);
+    }
+
+    @Override
+    public void abort(long transactionId) {
+      delegate.abort(transactionId);
+    }
+
+    @Override
+    public Set<Long> inDoubt() {
+      return delegate.inDoubt();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+public class TransferMetricsTest {
+
+  private static BankTransferSystem system(long... balances) {
+    Map<String, Account> accounts = new HashMap<>();
+    for (int i = 0; i < balances.length; i++) {
+      accounts.put("Acc" + i, new Account("Acc" + i, balances[i]));
+    }
+    return new BankTransferSystem(accounts);
+  }
+
+  @Test
+  public void testMetrics_shouldCountEveryOutcome() {
+    Account receiver = mock(Account.class);
+    when(receiver.commitCredit(anyLong())).thenReturn(false);
+    Map<String, Account> accounts = new HashMap<>();
+    accounts.put("A", new Account("A", 1000));
+    accounts.put("B", new Account("B", 500));
+    accounts.put("M", receiver);
+    BankTransferSystem system = new BankTransferSystem(accounts);
+    Assert.assertNull(system.getMetrics());
+    TransferMetrics metrics = system.enableMetrics();
+    Assert.assertSame(metrics, system.enableMetrics());
+
+    system.transfer("A", "B", 200);
+    system.transfer("A", "B", 5000);
+    system.transfer("A", "M", 10);
+    try {
+      system.transfer("A", "X", 1);
+      Assert.fail("Expected IllegalArgumentException for a missing account");
+    } catch (IllegalArgumentException expected) {
+    }
+    system.transferBatch(List.of(new Transfer("B", "A", 1), new Transfer("B", "A", -1)));
+
+    assertEquals(2, metrics.getCount(TransferResult.COMMITTED));
+    assertEquals(1, metrics.getCount(TransferResult.INSUFFICIENT_FUNDS));
+    assertEquals(1, metrics.getRollbackCount());
+    assertEquals(1, metrics.getCount(TransferResult.ACCOUNT_NOT_FOUND));
+    assertEquals(1, metrics.getCount(TransferResult.INVALID_AMOUNT));
+    assertEquals(1000 - 200 + 1, system.getAccount("A").getBalance());
+  }
+
+  @Test
+  public void testLatencyHistogram_shouldBeAccurateToOneSixteenth() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value);
+    }
+    assertEquals(100_000, histogram.getCount());
+    for (double percentile : new double[] {1, 50, 90, 99, 99.9, 100}) {
+      long expected = (long) (percentile * 1000);
+      long actual = histogram.getValueAtPercentile(percentile);
+      assertTrue(percentile + "th percentile " + actual, actual >= expected && actual <= expected + expected / 16 + 1);
+    }
+    assertEquals(100_000 + 100_000 / 16, histogram.getMax(), 100_000 / 16);
+
+    for (long value : new long[] {0, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(value <= LatencyHistogram.highestValueIn(bucket));
+      assertTrue(bucket == 0 || value > LatencyHistogram.highestValueIn(bucket - 1));
+    }
+  }
+
+  @Test
+  public void testMetrics_shouldSampleLatency() {
+    BankTransferSystem system = system(1_000_000, 1_000_000);
+    TransferMetrics metrics = system.enableMetrics();
+    for (int i = 0; i < 64_000; i++) {
+      system.transfer("Acc" + (i & 1), "Acc" + (~i & 1), 1);
+    }
+    long sampled = metrics.getLatency().getCount();
+    assertTrue("sampled " + sampled, sampled > 500 && sampled < 2000);
+    assertTrue(metrics.getLatencyP50Nanos() > 0);
+    assertTrue(metrics.getLatencyP99Nanos() >= metrics.getLatencyP50Nanos());
+  }
+
+  @Test
+  public void testMetrics_shouldReportLockWaitOfContendedAccounts() throws InterruptedException {
+    BankTransferSystem system = system(1000, 1000, 1000);
+    TransferMetrics metrics = system.enableMetrics();
+    Account busy = system.getAccount("Acc1");
+
+    busy.lock();
+    Thread transfer = new Thread(() -> system.transfer("Acc0", "Acc1", 10));
+    transfer.start();
+    Thread.sleep(50);
+    busy.unlock();
+    transfer.join();
+
+    List<TransferMetrics.AccountContention> top = metrics.topContendedAccounts(5);
+    assertEquals(1, top.size());
+    assertEquals("Acc1", top.get(0).accountId());
+    assertEquals(1, top.get(0).contendedLocks());
+    assertTrue(top.get(0).lockWaitNanos() >= 40_000_000);
+    assertEquals(top.get(0).lockWaitNanos(), metrics.getTotalLockWaitNanos());
+  }
+
+  @Test
+  public void testMetrics_shouldBeReadableThroughJmx() throws Exception {
+    BankTransferSystem system = system(1000, 0);
+    TransferMetrics metrics = system.enableMetrics();
+    system.transfer("Acc0", "Acc1", 100);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = metrics.registerMBean("test-bank");
+    try {
+      TabularData counts = (TabularData) server.getAttribute(name, "TransferCounts");
+      assertEquals(1L, counts.get(new Object[] {"COMMITTED"}).get("value"));
+      assertEquals(0L, server.getAttribute(name, "RollbackCount"));
+      assertEquals(0, ((String[]) server.getAttribute(name, "TopContendedAccounts")).length);
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  // A benchmark, so the mocking test above does not run first in its JVM: once Account is mocked,
+  // Mockito's inline mock maker leaves it instrumented and every call on it is slower
+  @Test
+  @Category(Benchmark.class)
+  public void testMetrics_overheadOnUncontendedTransfers() {
+    int transfers = 2_000_000;
+    BankTransferSystem plain = system(Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+    BankTransferSystem measured = system(Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+    measured.enableMetrics();
+
+    long bestPlain = Long.MAX_VALUE;
+    long bestMeasured = Long.MAX_VALUE;
+    for (int round = 0; round < 7; round++) {
+      bestPlain = Math.min(bestPlain, timeTransfers(plain, transfers));
+      bestMeasured = Math.min(bestMeasured, timeTransfers(measured, transfers));
+    }
+    double overhead = (double) bestMeasured / bestPlain - 1;
+    System.out.printf("Transfer without metrics: %.1f ns, with metrics: %.1f ns (%+.1f%%)%n",
+        (double) bestPlain / transfers, (double) bestMeasured / transfers, overhead * 100);
+    assertEquals(transfers * 7L, measured.getMetrics().getCount(TransferResult.COMMITTED));
+    // A few percent when run alone; the bound leaves room for timing noise on a busy machine
+    assertTrue("Metrics overhead " + overhead, overhead < 0.2);
+  }
+
+  private static long timeTransfers(BankTransferSystem system, int transfers) {
+    long start = System.nanoTime();
+    for (int i = 0; i < transfers; i++) {
+      system.transfer((i & 1) == 0 ? "Acc0" : "Acc1", (i & 1) == 0 ? "Acc1" : "Acc0", 1);
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,317 @@
+package org.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+public class Utf8JsonParserTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final String JSON = "{ \"name\": \"Alice\", \"age\": 30, \"isStudent\": false, \"scores\": [88.5, 90.0, 95.75],"
+      + " \"address\": {\"city\": \"Wonderland\", \"zip\": null}, \"quote\": \"she said \\\"hi\\\"\\n\\ttwice\","
+      + " \"city\": \"Zürich 日本\" }";
+
+  private static byte[] utf8(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static List<String> events(Utf8JsonParser parser) {
+    List<String> events = new ArrayList<>();
+    for (JsonEvent event = parser.next(); event != null; event = parser.next()) {
+      boolean hasText = event == JsonEvent.FIELD_NAME || event == JsonEvent.VALUE_STRING
+          || event == JsonEvent.VALUE_NUMBER;
+      events.add(hasText ? event + " " + parser.getText() : event.toString());
+    }
+    return events;
+  }
+
+  private static List<String> events(JsonPullParser parser) {
+    List<String> events = new ArrayList<>();
+    for (JsonEvent event = parser.next(); event != null; event = parser.next()) {
+      boolean hasText = event == JsonEvent.FIELD_NAME || event == JsonEvent.VALUE_STRING
+          || event == JsonEvent.VALUE_NUMBER;
+      events.add(hasText ? event + " " + parser.getText() : event.toString());
+    }
+    return events;
+  }
+
+  @Test
+  public void utf8JsonParser_whenReadingADocument_shouldEmitTheSameEventsAsTheCharacterParser() {
+    assertEquals(events(new JsonPullParser(new StringReader(JSON))), events(new Utf8JsonParser(utf8(JSON))));
+  }
+
+  @Test
+  public void parse_whenGivenBytes_shouldBuildTheSameTreeAsFromAString() {
+    assertEquals(SimpleJsonParser.parse(JSON), SimpleJsonParser.parse(utf8(JSON)));
+    assertEquals(SimpleJsonParser.parse("[1, [2, 3], \"x\"]"), SimpleJsonParser.parse(utf8("[1, [2, 3], \"x\"]")));
+    assertEquals(Map.of("a", Map.of(), "b", List.of()), SimpleJsonParser.parse(utf8("{\"a\": {}, \"b\": []}")));
+  }
+
+  @Test
+  public void utf8JsonParser_whenQuoteIsAtAnyWordOffset_shouldFindTheClosingQuote() {
+    // Quotes and escapes on each position of an eight byte word
+    for (int length = 0; length < 24; length++) {
+      String text = "x".repeat(length);
+      String escaped = "a\\\\" + "y".repeat(length) + "\\\"b";
+      Utf8JsonParser parser = new Utf8JsonParser(utf8("[\"" + text + "\", \"" + escaped + "\"]"));
+      parser.next();
+
+      assertEquals(JsonEvent.VALUE_STRING, parser.next());
+      assertEquals(text, parser.getText());
+      assertEquals(JsonEvent.VALUE_STRING, parser.next());
+      assertEquals("a\\" + "y".repeat(length) + "\"b", parser.getText());
+      assertEquals(JsonEvent.END_ARRAY, parser.next());
+    }
+  }
+
+  @Test
+  public void getTextView_whenComparedOrRead_shouldDecodeLazily() {
+    Utf8JsonParser parser = new Utf8JsonParser(utf8("{\"id\": \"a1\", \"name\": \"Zoë \\u00e9\\ud83d\\ude00\"}"));
+    parser.next();
+    parser.next();
+    JsonString key = parser.getTextView();
+    parser.next();
+    JsonString id = parser.getTextView();
+    parser.next();
+    parser.next();
+    JsonString name = parser.getTextView();
+
+    assertTrue(key.contentEquals("id"));
+    assertFalse(key.contentEquals("ids"));
+    assertTrue(id.contentEquals("a1"));
+    assertEquals(2, id.byteLength());
+    assertTrue(name.contentEquals("Zoë é😀"));
+    assertEquals("Zoë é😀", name.toString());
+    assertEquals('Z', name.charAt(0));
+  }
+
+  @Test
+  public void utf8JsonParser_whenGivenAHeapOrMappedBuffer_shouldReadFromItsPosition() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+    buffer.put(utf8("ignored{\"a\": [1.5, \"b\"]}"));
+    buffer.flip().position(7);
+    Path file = temporaryFolder.newFile().toPath();
+    Files.write(file, utf8(JSON));
+
+    Utf8JsonParser direct = new Utf8JsonParser(buffer);
+    direct.next();
+    Utf8JsonParser mapped = Utf8JsonParser.open(file);
+    mapped.next();
+
+    assertEquals(SimpleJsonParser.parse("{\"a\": [1.5, \"b\"]}"), direct.readValue());
+    assertEquals(SimpleJsonParser.parse(JSON), mapped.readValue());
+    assertNull(mapped.next());
+  }
+
+  @Test
+  public void skipChildren_whenAtAContainer_shouldMoveToTheMatchingEnd() {
+    Utf8JsonParser parser = new Utf8JsonParser(utf8("[{\"a\": [\"]}\", {\"b\": {}}]}, 7]"));
+    parser.next();
+    parser.next();
+
+    parser.skipChildren();
+
+    assertEquals(JsonEvent.END_OBJECT, parser.currentEvent());
+    assertEquals(JsonEvent.VALUE_NUMBER, parser.next());
+    assertEquals("7", parser.getText());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void utf8JsonParser_whenStringIsUnterminated_shouldThrow() {
+    events(new Utf8JsonParser(utf8("[\"abcdefghijklmnop")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getText_whenEscapeIsInvalid_shouldThrow() {
+    Utf8JsonParser parser = new Utf8JsonParser(utf8("[\"a\\qb\"]"));
+    parser.next();
+    parser.next();
+    parser.getText();
+  }
+
+  @Test
+  public void parse_whenFieldNamesRepeat_shouldShareOneString() {
+    List<?> records = (List<?>) SimpleJsonParser.parse(utf8("[{\"id\": 1}, {\"id\": 2}]"));
+    List<?> fromString = (List<?>) SimpleJsonParser.parse("[{\"id\": 1}, {\"id\": 2}]");
+
+    assertSame(((Map<?, ?>) records.get(0)).keySet().iterator().next(),
+        ((Map<?, ?>) records.get(1)).keySet().iterator().next());
+    assertSame(((Map<?, ?>) fromString.get(0)).keySet().iterator().next(),
+        ((Map<?, ?>) fromString.get(1)).keySet().iterator().next());
+  }
+
+  @Test
+  public void parseCompact_whenArrayHoldsObjects_shouldEqualTheMapsAndShareTheirKeys() {
+    String json = "{\"records\": [{\"id\": 1, \"tags\": [{\"k\": \"a\"}, {\"k\": \"b\"}]}, {\"id\": 2, \"tags\": []},"
+        + " {\"tags\": [], \"id\": 3}, {\"id\": 4, \"id\": 5}], \"total\": 4}";
+
+    Object compact = SimpleJsonParser.parseCompact(utf8(json));
+
+    assertEquals(SimpleJsonParser.parse(utf8(json)), compact);
+    List<?> records = (List<?>) ((Map<?, ?>) compact).get("records");
+    assertTrue(records.get(0) instanceof JsonRecord);
+    assertEquals(2, ((Map<?, ?>) records.get(1)).get("id").hashCode());
+    assertTrue(((Map<?, ?>) records.get(2)).containsKey("tags"));
+    assertEquals(List.of("tags", "id"), new ArrayList<>(((Map<?, ?>) records.get(2)).keySet()));
+    // A repeated key keeps the last value, as a map does
+    assertEquals(Map.of("id", new java.math.BigInteger("5")), records.get(3));
+  }
+
+  @Test
+  public void parseCompact_whenObjectsAreBelowDeeplyNestedArrays_shouldMatchParse() {
+    String json = "[".repeat(40) + "{\"a\": 1, \"b\": [[{\"c\": 2}]]}" + "]".repeat(40);
+
+    assertEquals(SimpleJsonParser.parse(utf8(json)), SimpleJsonParser.parseCompact(utf8(json)));
+  }
+
+  // Allocation while parsing, and heap held by the result, for an array of 20-key records
+  @Test
+  @Category(Benchmark.class)
+  public void parseCompact_whenRecordsHaveManyKeys_shouldAllocateAndRetainLess() {
+    StringBuilder json = new StringBuilder("[");
+    int records = 50_000;
+    for (int i = 0; i < records; i++) {
+      json.append(i == 0 ? "{" : ",{");
+      for (int k = 0; k < 20; k++) {
+        json.append(k == 0 ? "" : ",").append("\"field_").append(k).append("\": ").append(k % 2 == 0 ? "true" : "null");
+      }
+      json.append('}');
+    }
+    byte[] bytes = utf8(json.append(']').toString());
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    long[] allocated = new long[3];
+    long[] retained = new long[3];
+    for (int round = 0; round < 3; round++) {
+      for (int mode = 0; mode < 3; mode++) {
+        System.gc();
+        long before = usedHeap();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        Object tree = mode == 0 ? SimpleJsonParser.parse(json.toString())
+            : mode == 1 ? SimpleJsonParser.parse(bytes) : SimpleJsonParser.parseCompact(bytes);
+        allocated[mode] = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        System.gc();
+        retained[mode] = usedHeap() - before;
+        assertEquals(records, ((List<?>) tree).size());
+      }
+    }
+    System.out.printf("%d records of 20 keys, per record: String parser allocates %d B and retains %d B,"
+            + " byte parser %d B and %d B, compact records %d B and %d B%n", records, allocated[0] / records,
+        retained[0] / records, allocated[1] / records, retained[1] / records, allocated[2] / records,
+        retained[2] / records);
+    assertTrue(allocated[2] < allocated[1] / 2);
+    assertTrue(retained[2] < retained[1] / 3);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // Records with ASCII and non-ASCII strings, numbers, booleans and a nested object
+  private static String payload(int records) {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < records; i++) {
+      json.append(i == 0 ? "" : ",\n").append("{\"id\": ").append(i).append(", \"name\": \"customer ").append(i)
+          .append("\", \"email\": \"customer").append(i).append("@example.com\", \"city\": \"Zürich\", \"balance\": ")
+          .append(i % 1000).append(".25, \"active\": ").append(i % 2 == 0)
+          .append(", \"address\": {\"street\": \"").append(i).append(" Long Street Name Avenue\", \"zip\": null}")
+          .append(", \"note\": \"a \\\"quoted\\\" note\"}");
+    }
+    return json.append(']').toString();
+  }
+
+  private static double megabytesPerSecond(double megabytes, Runnable parse) {
+    int runs = 3;
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      parse.run();
+    }
+    return runs * megabytes / ((System.nanoTime() - start) / 1e9);
+  }
+
+  @Test
+  public void utf8JsonParser_whenPayloadHasManyRecords_shouldMatchTheOtherParsers() throws IOException {
+    String json = payload(1000);
+    byte[] bytes = utf8(json);
+
+    Object tree = SimpleJsonParser.parse(json);
+    assertEquals(tree, SimpleJsonParser.parse(bytes));
+    assertEquals(tree, SimpleJsonParser.parseCompact(bytes));
+    assertEquals(events(new JsonPullParser(new StringReader(json))), events(new Utf8JsonParser(bytes)));
+    assertEquals(1000, ((List<?>) new ObjectMapper().readValue(bytes, Object.class)).size());
+  }
+
+  @Test
+  @Category(Benchmark.class)
+  public void utf8JsonParser_whenPayloadIsLarge_shouldReportThroughputAgainstTheCharacterParserAndJackson() throws IOException {
+    String json = payload(100_000);
+    byte[] bytes = utf8(json);
+    double megabytes = bytes.length / 1e6;
+    ObjectMapper mapper = new ObjectMapper();
+    JsonFactory factory = new JsonFactory();
+
+    double eventsBytes = 0;
+    double treeString = 0;
+    for (int round = 0; round < 2; round++) {
+      treeString = megabytesPerSecond(megabytes, () -> SimpleJsonParser.parse(json));
+      double treeBytes = megabytesPerSecond(megabytes, () -> SimpleJsonParser.parse(bytes));
+      double treeCompact = megabytesPerSecond(megabytes, () -> SimpleJsonParser.parseCompact(bytes));
+      double treeJackson = megabytesPerSecond(megabytes, () -> {
+        try {
+          mapper.readValue(bytes, Object.class);
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      });
+      double eventsChars = megabytesPerSecond(megabytes, () -> {
+        JsonPullParser parser = new JsonPullParser(new StringReader(json));
+        while (parser.next() != null) {
+          // Just the tokens
+        }
+      });
+      eventsBytes = megabytesPerSecond(megabytes, () -> {
+        Utf8JsonParser parser = new Utf8JsonParser(bytes);
+        while (parser.next() != null) {
+          // Just the tokens
+        }
+      });
+      double eventsJackson = megabytesPerSecond(megabytes, () -> {
+        try (JsonParser parser = factory.createParser(bytes)) {
+          while (parser.nextToken() != null) {
+            // Just the tokens
+          }
+        } catch (IOException e) {
+          throw new AssertionError(e);
+        }
+      });
+      System.out.printf("%.0f MB: tree from String %.0f MB/s, from bytes %.0f MB/s, compact %.0f MB/s, Jackson %.0f MB/s;"
+              + " tokens from chars %.0f MB/s, from bytes %.0f MB/s, Jackson %.0f MB/s%n", megabytes, treeString,
+          treeBytes, treeCompact, treeJackson, eventsChars, eventsBytes, eventsJackson);
+    }
+    assertTrue(eventsBytes > treeString);
+  }
+}